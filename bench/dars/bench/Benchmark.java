@@ -0,0 +1,33 @@
+package dars.bench;
+
+/**
+ * A piece of code to be timed by the Runner.
+ *
+ * The runner calls setUp() once, then run() over and over, first to warm up
+ * and then to measure, and tearDown() at the end. Everything run() does is
+ * counted, so the state it works on is built in setUp().
+ */
+public interface Benchmark {
+
+  /**
+   * Returns the name the results are reported under, with the parameters of
+   * the benchmark.
+   */
+  String getName();
+
+  void setUp() throws Exception;
+
+  /**
+   * Do one operation.
+   */
+  void run() throws Exception;
+
+  void tearDown() throws Exception;
+
+  /**
+   * Returns whether run() does all its work on the thread that calls it.
+   * The bytes allocated per operation are counted on that thread only, so
+   * they are not reported for a benchmark that hands work to other threads.
+   */
+  boolean isSingleThreaded();
+}
@@ -0,0 +1,183 @@
+package dars.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dars.EventEngine;
+import dars.Message;
+import dars.NodeId;
+import dars.SimEngine;
+import dars.ThreadedEngine;
+import dars.event.DARSEvent;
+import dars.proto.NodeFactory.NodeType;
+
+/**
+ * Benchmarks of a whole quantum of the simulation engine.
+ *
+ * One operation is a run of SimEngine.MainLoop(): delivering the messages,
+ * ticking the nodes and collecting what they send. Each benchmark builds a
+ * new simulation, lets it run for a number of quanta so the hello messages
+ * and routes settle, and then times the quanta that follow.
+ *
+ * Options, each taking a comma separated list:
+ *
+ * -nodes number of nodes (default 100,1000,10000)
+ * -type AODV, DSDV (default both)
+ * -topology random, for nodes placed at random, or grid, for nodes on a
+ * square grid (default both)
+ * -traffic idle, for no narrative messages, or saturated, for messages
+ * between random nodes at -rate per node per quantum (default both)
+ * -engine step for SimEngine, event for EventEngine or threaded for
+ * ThreadedEngine (default step)
+ *
+ * and -rate (default 0.1) and -settle (default 100).
+ */
+public class EngineBench implements Benchmark {
+
+  // Distance between two grid nodes and the range of every node. A grid node
+  // reaches the eight around it. Random nodes are spread over the same area.
+  private static final int SPACING = 100;
+  private static final int RANGE   = 150;
+
+  private final NodeType   type;
+  private final int        nodes;
+  private final boolean    grid;
+  private final boolean    saturated;
+  private final String     engineType;
+  private final double     rate;
+  private final int        settle;
+
+  private SimEngine        engine;
+  private Random           random;
+  private double           pending;
+
+  public EngineBench(NodeType type, int nodes, boolean grid,
+      boolean saturated, String engineType, double rate, int settle) {
+    this.type = type;
+    this.nodes = nodes;
+    this.grid = grid;
+    this.saturated = saturated;
+    this.engineType = engineType;
+    this.rate = rate;
+    this.settle = settle;
+  }
+
+  public String getName() {
+    return "engine." + type + "." + nodes + "." + (grid ? "grid" : "random")
+        + "." + (saturated ? "saturated" : "idle")
+        + (engineType.equals("step") ? "" : "." + engineType);
+  }
+
+  public void setUp() {
+    if (engineType.equals("event")) {
+      engine = new EventEngine();
+    } else if (engineType.equals("threaded")) {
+      engine = new ThreadedEngine();
+    } else {
+      engine = new SimEngine();
+    }
+    DARSEvent.setSimTimeKeeper(engine);
+    engine.consumeInput(DARSEvent.inNewSim(type));
+
+    random = new Random(42);
+    int side = (int) Math.ceil(Math.sqrt(nodes));
+    for (int i = 0; i < nodes; i++) {
+      int x, y;
+      if (grid) {
+        x = (i % side) * SPACING + SPACING / 2;
+        y = (i / side) * SPACING + SPACING / 2;
+      } else {
+        x = random.nextInt(side * SPACING);
+        y = random.nextInt(side * SPACING);
+      }
+      engine.consumeInput(DARSEvent.inAddNode(x, y, RANGE, false));
+    }
+
+    pending = 0;
+    for (int q = 0; q < settle; q++) {
+      run();
+    }
+  }
+
+  public void run() {
+    if (saturated) {
+      pending += rate * nodes;
+      while (pending >= 1) {
+        pending--;
+        int from = random.nextInt(nodes) + 1;
+        int to = random.nextInt(nodes - 1) + 1;
+        if (to >= from) {
+          to++;
+        }
+        engine.consumeInput(DARSEvent.inInsertMessage(new Message(
+            NodeId.toString(to), NodeId.toString(from), "bench")));
+      }
+    }
+    engine.MainLoop();
+  }
+
+  public void tearDown() {
+    engine.consumeInput(DARSEvent.inClearSim());
+    engine = null;
+  }
+
+  /**
+   * The threaded engine ticks the nodes on threads of their own, where what
+   * they allocate is not counted.
+   */
+  public boolean isSingleThreaded() {
+    return !engineType.equals("threaded");
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    Runner runner;
+    try {
+      Options options = new Options(args);
+      List<Integer> nodeCounts = options.getIntList("nodes", 100, 1000, 10000);
+      List<String> types = options.getList("type", "AODV", "DSDV");
+      List<String> topologies = options.getList("topology", "random", "grid");
+      List<String> traffics = options.getList("traffic", "idle", "saturated");
+      List<String> engines = options.getList("engine", "step");
+      double rate = options.getDouble("rate", 0.1);
+      int settle = options.getInt("settle", 100);
+      runner = new Runner(options, System.out);
+      options.checkUnused();
+
+      for (String t : types) {
+        NodeType type = NodeType.valueOf(t.toUpperCase());
+        for (int n : nodeCounts) {
+          if (n < 2) {
+            throw new IllegalArgumentException("-nodes must be at least 2");
+          }
+          for (String topology : topologies) {
+            if (!topology.equals("random") && !topology.equals("grid")) {
+              throw new IllegalArgumentException("Unknown topology " + topology);
+            }
+            for (String traffic : traffics) {
+              if (!traffic.equals("idle") && !traffic.equals("saturated")) {
+                throw new IllegalArgumentException("Unknown traffic " + traffic);
+              }
+              for (String engine : engines) {
+                if (!engine.equals("step") && !engine.equals("event")
+                    && !engine.equals("threaded")) {
+                  throw new IllegalArgumentException("Unknown engine " + engine);
+                }
+                benchmarks.add(new EngineBench(type, n, topology.equals("grid"),
+                    traffic.equals("saturated"), engine, rate,
+                    settle));
+              }
+            }
+          }
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+    runner.run(benchmarks);
+    System.exit(0);
+  }
+}
@@ -0,0 +1,90 @@
+package dars.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options of a benchmark suite.
+ *
+ * Every option is a name and a value, such as -nodes 100,1000. Options that
+ * list values are split on commas; a suite runs one benchmark for each
+ * combination of the listed values.
+ */
+public class Options {
+
+  private final Map<String, String> values = new HashMap<String, String>();
+  private final List<String>        used   = new ArrayList<String>();
+
+  /**
+   * @param args
+   * @throws IllegalArgumentException
+   *           if an option is not followed by a value.
+   */
+  public Options(String[] args) {
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("-") || i + 1 == args.length) {
+        throw new IllegalArgumentException("Expected an option and a value at "
+            + args[i]);
+      }
+      values.put(args[i].substring(1), args[++i]);
+    }
+  }
+
+  public String get(String name, String defaultValue) {
+    used.add(name);
+    String value = values.get(name);
+    return value == null ? defaultValue : value;
+  }
+
+  public int getInt(String name, int defaultValue) {
+    String value = get(name, null);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  public double getDouble(String name, double defaultValue) {
+    String value = get(name, null);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  /**
+   * Returns the listed values of the option, or the defaults if it was not
+   * given.
+   */
+  public List<String> getList(String name, String... defaultValues) {
+    String value = get(name, null);
+    if (value == null) {
+      return Arrays.asList(defaultValues);
+    }
+    return Arrays.asList(value.split(","));
+  }
+
+  public List<Integer> getIntList(String name, int... defaultValues) {
+    String value = get(name, null);
+    List<Integer> list = new ArrayList<Integer>();
+    if (value == null) {
+      for (int v : defaultValues) {
+        list.add(v);
+      }
+    } else {
+      for (String v : value.split(",")) {
+        list.add(Integer.parseInt(v.trim()));
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if an option was given that nothing asked for.
+   */
+  public void checkUnused() {
+    for (String name : values.keySet()) {
+      if (!used.contains(name)) {
+        throw new IllegalArgumentException("Unknown option -" + name);
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package dars.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Times a list of benchmarks and reports the time and memory allocated per
+ * operation.
+ *
+ * Each benchmark is warmed up for a number of iterations that are thrown
+ * away, so the JIT compiler has settled, and then measured for a number of
+ * iterations. An iteration runs the operation over and over for a fixed
+ * time. The time per operation is reported as the mean over the measured
+ * iterations, with the lowest and highest iteration. The bytes allocated
+ * per operation are taken from the thread's allocation counter, which
+ * counts every object the operation makes whether or not it is garbage
+ * collected later; they are only reported where the JVM keeps the counter
+ * and for benchmarks that do all their work on the calling thread.
+ *
+ * Options common to all suites:
+ *
+ * -warmup n iterations thrown away (default 3)
+ * -iterations n iterations measured (default 5)
+ * -time ms length of an iteration (default 1000)
+ * -format text|csv how the results are printed (default text)
+ */
+public class Runner {
+
+  private final int         warmup;
+  private final int         iterations;
+  private final long        iterationNanos;
+  private final boolean     csv;
+  private final PrintStream out;
+
+  private final com.sun.management.ThreadMXBean threads;
+
+  public Runner(Options options, PrintStream out) {
+    warmup = options.getInt("warmup", 3);
+    iterations = options.getInt("iterations", 5);
+    iterationNanos = options.getInt("time", 1000) * 1000000L;
+    String format = options.get("format", "text");
+    if (!format.equals("text") && !format.equals("csv")) {
+      throw new IllegalArgumentException("Unknown format " + format);
+    }
+    csv = format.equals("csv");
+    this.out = out;
+
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      threads = (com.sun.management.ThreadMXBean) bean;
+      threads.setThreadAllocatedMemoryEnabled(true);
+    } else {
+      threads = null;
+    }
+  }
+
+  /**
+   * Run each benchmark in turn and print its results.
+   */
+  public void run(List<Benchmark> benchmarks) throws Exception {
+    if (csv) {
+      out.println("benchmark,ops,ns_per_op,ns_per_op_min,ns_per_op_max,bytes_per_op");
+    } else {
+      out.printf("%-48s %10s %14s %14s %14s %12s%n", "Benchmark", "Ops",
+          "ns/op", "min", "max", "B/op");
+    }
+    for (Benchmark b : benchmarks) {
+      report(b.getName(), measure(b));
+    }
+  }
+
+  /**
+   * Results of a benchmark: operations counted, mean, lowest and highest
+   * time per operation, and bytes allocated per operation or -1.
+   */
+  private static class Result {
+    long   ops;
+    double mean;
+    double min = Double.MAX_VALUE;
+    double max;
+    double bytes = -1;
+  }
+
+  private Result measure(Benchmark b) throws Exception {
+    b.setUp();
+    try {
+      for (int i = 0; i < warmup; i++) {
+        iteration(b, null);
+      }
+      Result r = new Result();
+      long nanos = 0;
+      long bytes = 0;
+      for (int i = 0; i < iterations; i++) {
+        long[] it = iteration(b, r);
+        nanos += it[0];
+        bytes += it[1];
+      }
+      r.mean = (double) nanos / r.ops;
+      if (threads != null && b.isSingleThreaded()) {
+        r.bytes = (double) bytes / r.ops;
+      }
+      return r;
+    } finally {
+      b.tearDown();
+    }
+  }
+
+  /**
+   * Run the operation for the length of an iteration.
+   *
+   * @return the time taken and the bytes allocated.
+   */
+  private long[] iteration(Benchmark b, Result r) throws Exception {
+    long id = Thread.currentThread().getId();
+    long ops = 0;
+    long bytesBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(id);
+    long start = System.nanoTime();
+    long now;
+    do {
+      b.run();
+      ops++;
+      now = System.nanoTime();
+    } while (now - start < iterationNanos);
+    long bytes = threads == null ? 0 : threads.getThreadAllocatedBytes(id)
+        - bytesBefore;
+
+    if (r != null) {
+      double perOp = (double) (now - start) / ops;
+      r.ops += ops;
+      r.min = Math.min(r.min, perOp);
+      r.max = Math.max(r.max, perOp);
+    }
+    return new long[] { now - start, bytes };
+  }
+
+  private void report(String name, Result r) {
+    if (csv) {
+      out.printf("%s,%d,%.1f,%.1f,%.1f,%.1f%n", name, r.ops, r.mean, r.min,
+          r.max, r.bytes);
+    } else {
+      out.printf("%-48s %10d %14.1f %14.1f %14.1f %12s%n", name, r.ops,
+          r.mean, r.min, r.max, r.bytes < 0 ? "n/a" : String.format("%.1f", r.bytes));
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,140 @@
+package dars.proto.aodv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dars.Message;
+import dars.bench.Benchmark;
+import dars.bench.Options;
+import dars.bench.Runner;
+
+/**
+ * Benchmarks of the handling of one AODV message by Aodv.receiveMessage(),
+ * against a route table filled in by an AodvFixture.
+ *
+ * One operation is one message for each kind:
+ *
+ * RREQ a route request for an unknown destination, which the node passes
+ * on. A request is only handled once, so each operation builds a new one.
+ * RREP a route reply passed back through the node.
+ * HELLO a hello message from a neighbor.
+ * RERR a route error from a neighbor about its own link, which invalidates
+ * every route through it, followed by the hello message that brings the
+ * link back so the next error is handled the same way.
+ * NARR a narrative message the node passes on.
+ *
+ * Options, each taking a comma separated list:
+ *
+ * -kind RREQ, RREP, HELLO, RERR, NARR (default all)
+ * -routes number of routes in the table (default 10,100,1000,5000)
+ *
+ * and -neighbors (default 8).
+ */
+public class AodvBench implements Benchmark {
+
+  public enum Kind { RREQ, RREP, HELLO, RERR, NARR };
+
+  private final Kind   kind;
+  private final int    routes;
+  private final int    neighbors;
+
+  private AodvFixture  fixture;
+  private Message      message;
+  private Message      repair;
+  private int          next;
+
+  public AodvBench(Kind kind, int routes, int neighbors) {
+    this.kind = kind;
+    this.routes = routes;
+    this.neighbors = neighbors;
+  }
+
+  public String getName() {
+    return "aodv." + kind + "." + routes;
+  }
+
+  public void setUp() {
+    fixture = new AodvFixture(routes, neighbors);
+    // Destinations reached through neighbor 0, or the neighbor itself if
+    // there are no others.
+    String far = fixture.destination(routes > neighbors ? neighbors : 0);
+    switch (kind) {
+    case RREP:
+      message = fixture.rrep(fixture.neighbor(0), far,
+          fixture.destination(routes - 1));
+      break;
+    case HELLO:
+      message = fixture.hello(fixture.neighbor(0));
+      break;
+    case RERR:
+      message = fixture.rerr(fixture.neighbor(0), fixture.neighbor(0));
+      repair = fixture.hello(fixture.neighbor(0));
+      break;
+    case NARR:
+      message = fixture.narr(fixture.neighbor(1), fixture.neighbor(1), far);
+      break;
+    }
+  }
+
+  public void run() {
+    switch (kind) {
+    case RREQ:
+      // Requests from each destination in turn, so the history of request
+      // ids grows to the size of the table as it would in a network.
+      fixture.receive(fixture.rreq(fixture.neighbor(next),
+          fixture.destination(next), fixture.unknown()));
+      next = (next + 1) % routes;
+      break;
+    case RERR:
+      fixture.receive(message);
+      fixture.receive(repair);
+      break;
+    default:
+      fixture.receive(message);
+      break;
+    }
+  }
+
+  public void tearDown() {
+    fixture = null;
+  }
+
+  public boolean isSingleThreaded() {
+    return true;
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    Runner runner;
+    try {
+      Options options = new Options(args);
+      List<String> kinds = options.getList("kind", "RREQ", "RREP", "HELLO",
+          "RERR", "NARR");
+      List<Integer> routeCounts = options.getIntList("routes", 10, 100, 1000,
+          5000);
+      int neighbors = options.getInt("neighbors", 8);
+      if (neighbors < 1) {
+        throw new IllegalArgumentException("-neighbors must be at least 1");
+      }
+      runner = new Runner(options, System.out);
+      options.checkUnused();
+
+      for (String k : kinds) {
+        Kind kind = Kind.valueOf(k.toUpperCase());
+        for (int routes : routeCounts) {
+          if (routes < Math.max(neighbors, 2)) {
+            throw new IllegalArgumentException(
+                "-routes must be at least -neighbors and 2");
+          }
+          benchmarks.add(new AodvBench(kind, routes, neighbors));
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+    runner.run(benchmarks);
+    System.exit(0);
+  }
+}
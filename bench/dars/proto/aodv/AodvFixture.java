@@ -0,0 +1,134 @@
+package dars.proto.aodv;
+
+import dars.Message;
+import dars.NodeAttributes;
+import dars.NodeId;
+
+/**
+ * An AODV node with a route table filled in, for benchmarks of its message
+ * handling.
+ *
+ * The node is node A. Its neighbors are the nodes that follow it, and every
+ * other destination is reached through one of them. The routes are learned
+ * the way a running node would learn them: a hello message from each
+ * neighbor, then a route request from each other destination, passed on by
+ * its neighbor. The node's own clock is never ticked, so none of the routes
+ * expire.
+ */
+public class AodvFixture {
+
+  private final Aodv node;
+  private final int  neighbors;
+  private final int  routes;
+  private int        rreqID = 1;
+
+  /**
+   * @param routes
+   *          number of destinations in the route table, at least the number
+   *          of neighbors.
+   * @param neighbors
+   *          number of neighbors the routes go through.
+   */
+  public AodvFixture(int routes, int neighbors) {
+    if (neighbors < 1 || routes < neighbors) {
+      throw new IllegalArgumentException("Need 1 to " + routes + " neighbors");
+    }
+    this.neighbors = neighbors;
+    this.routes = routes;
+    node = new Aodv(new NodeAttributes(NodeId.toString(1), 0, 0, 100, false));
+
+    for (int i = 0; i < neighbors; i++) {
+      receive(hello(neighbor(i)));
+    }
+    for (int i = neighbors; i < routes; i++) {
+      receive(rreq(neighbor(i % neighbors), destination(i), unknown()));
+    }
+  }
+
+  public Aodv getNode() {
+    return node;
+  }
+
+  /**
+   * Returns the id of the node.
+   */
+  public String self() {
+    return NodeId.toString(1);
+  }
+
+  /**
+   * Returns the id of the k'th neighbor.
+   */
+  public String neighbor(int k) {
+    return NodeId.toString(2 + k % neighbors);
+  }
+
+  /**
+   * Returns the id of the k'th destination in the route table. The first
+   * ones are the neighbors; destination k is reached through neighbor k.
+   */
+  public String destination(int k) {
+    return NodeId.toString(2 + k % routes);
+  }
+
+  /**
+   * Returns the id of a node that is not in the route table.
+   */
+  public String unknown() {
+    return NodeId.toString(2 + routes);
+  }
+
+  /**
+   * Hand the message to the node and throw away whatever it sends.
+   */
+  public void receive(Message message) {
+    node.receiveMessage(message);
+    while (node.messageToNetwork() != null) {
+    }
+  }
+
+  /**
+   * Returns a hello message from the neighbor.
+   */
+  public Message hello(String neighbor) {
+    return new Message(Message.BCAST_STRING, neighbor, AodvPacket.rrep("", 0,
+        neighbor, 1, neighbor, Aodv.ALLOWED_HELLO_LOSS * Aodv.HELLO_INTERVAL));
+  }
+
+  /**
+   * Returns a route request from the source for the destination, passed on
+   * by the neighbor. Every request has a new id, so the node never takes one
+   * for a request it has seen.
+   */
+  public Message rreq(String neighbor, String source, String destination) {
+    return new Message(Message.BCAST_STRING, neighbor, AodvPacket.rreq("",
+        Aodv.TTL_START, 1, rreqID++, destination, 0, source, 1));
+  }
+
+  /**
+   * Returns a route reply from the destination for the originator of a
+   * request, passed back by the neighbor.
+   */
+  public Message rrep(String neighbor, String destination, String originator) {
+    return new Message(self(), neighbor, AodvPacket.rrep("", 1, destination,
+        1, originator, Aodv.MY_ROUTE_TIMEOUT));
+  }
+
+  /**
+   * Returns a route error from the neighbor for the destination, which the
+   * node reaches through that neighbor.
+   */
+  public Message rerr(String neighbor, String destination) {
+    return new Message(Message.BCAST_STRING, neighbor, AodvPacket.rerr("",
+        new String[] { destination }, new int[] { 1 }));
+  }
+
+  /**
+   * Returns a narrative message for the destination, passed on by the
+   * neighbor.
+   */
+  public Message narr(String neighbor, String origin, String destination) {
+    return new Message(self(), neighbor, AodvPacket.narr("", Aodv.TTL_START,
+        destination, origin, "bench"));
+  }
+}
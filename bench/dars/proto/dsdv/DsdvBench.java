@@ -0,0 +1,96 @@
+package dars.proto.dsdv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dars.bench.Benchmark;
+import dars.bench.Options;
+import dars.bench.Runner;
+
+/**
+ * Benchmarks of DSDV route updates, against a route table filled in by a
+ * DsdvFixture.
+ *
+ * One operation is, for each kind:
+ *
+ * SEND a full dump of the route table by Dsdv.sendFullUpdates(), the
+ * messages it queues included.
+ * RECEIVE the messages of a neighbor's full dump handed to
+ * Dsdv.receiveMessage(), for a table that is already up to date.
+ *
+ * Options, each taking a comma separated list:
+ *
+ * -kind SEND, RECEIVE (default both)
+ * -routes number of routes in the table (default 10,100,1000,5000)
+ */
+public class DsdvBench implements Benchmark {
+
+  public enum Kind { SEND, RECEIVE };
+
+  private final Kind  kind;
+  private final int   routes;
+
+  private DsdvFixture fixture;
+
+  public DsdvBench(Kind kind, int routes) {
+    this.kind = kind;
+    this.routes = routes;
+  }
+
+  public String getName() {
+    return "dsdv." + kind + "." + routes;
+  }
+
+  public void setUp() {
+    fixture = new DsdvFixture(routes);
+  }
+
+  public void run() {
+    switch (kind) {
+    case SEND:
+      fixture.getNode().sendFullUpdates();
+      fixture.drain();
+      break;
+    case RECEIVE:
+      fixture.receive(fixture.getDump());
+      break;
+    }
+  }
+
+  public void tearDown() {
+    fixture = null;
+  }
+
+  public boolean isSingleThreaded() {
+    return true;
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    Runner runner;
+    try {
+      Options options = new Options(args);
+      List<String> kinds = options.getList("kind", "SEND", "RECEIVE");
+      List<Integer> routeCounts = options.getIntList("routes", 10, 100, 1000,
+          5000);
+      runner = new Runner(options, System.out);
+      options.checkUnused();
+
+      for (String k : kinds) {
+        Kind kind = Kind.valueOf(k.toUpperCase());
+        for (int routes : routeCounts) {
+          if (routes < 2) {
+            throw new IllegalArgumentException("-routes must be at least 2");
+          }
+          benchmarks.add(new DsdvBench(kind, routes));
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return;
+    }
+    runner.run(benchmarks);
+    System.exit(0);
+  }
+}
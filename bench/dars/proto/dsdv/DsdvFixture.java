@@ -0,0 +1,93 @@
+package dars.proto.dsdv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dars.Message;
+import dars.NodeAttributes;
+import dars.NodeId;
+
+/**
+ * A DSDV node with a route table filled in, for benchmarks of its message
+ * handling.
+ *
+ * The node is node A and has a single neighbor, node B, through which it
+ * reaches every other destination. The routes are learned the way a running
+ * node would learn them, from a full dump of B's route table. The node's own
+ * clock is never ticked, so it sends no updates of its own.
+ */
+public class DsdvFixture {
+
+  private final Dsdv          node;
+  private final List<Message> dump;
+
+  /**
+   * @param routes
+   *          number of routes in the table, the node's route to itself
+   *          included.
+   */
+  public DsdvFixture(int routes) {
+    if (routes < 2) {
+      throw new IllegalArgumentException("Need at least 2 routes");
+    }
+    node = new Dsdv(new NodeAttributes(NodeId.toString(1), 0, 0, 100, false));
+    dump = buildDump(NodeId.toString(2), routes);
+    receive(dump);
+  }
+
+  public Dsdv getNode() {
+    return node;
+  }
+
+  /**
+   * Returns the messages of the full dump the node learned its routes from.
+   * Handing them to the node again changes nothing, as when a neighbor sends
+   * its periodic full dump of a table that is up to date.
+   */
+  public List<Message> getDump() {
+    return dump;
+  }
+
+  /**
+   * Hand the messages to the node and throw away whatever it sends.
+   */
+  public void receive(List<Message> messages) {
+    for (int i = 0; i < messages.size(); i++) {
+      node.receiveMessage(messages.get(i));
+    }
+    drain();
+  }
+
+  /**
+   * Throw away the messages the node has queued to send.
+   */
+  public void drain() {
+    while (node.messageToNetwork() != null) {
+    }
+  }
+
+  /**
+   * Returns the full dump of a neighbor that reaches every node but the
+   * fixture's, split into messages of at most Dsdv.MAX_NPDU entries as
+   * Dsdv.sendFullUpdates() does.
+   */
+  private static List<Message> buildDump(String neighbor, int routes) {
+    List<Message> messages = new ArrayList<Message>();
+    // The neighbor itself is destination 2, at no hops.
+    int count = routes - 1;
+    for (int first = 0; first < count; first += Dsdv.MAX_NPDU) {
+      int size = Math.min(Dsdv.MAX_NPDU, count - first);
+      String[] ids = new String[size];
+      int[] seqNums = new int[size];
+      int[] hopCounts = new int[size];
+      for (int i = 0; i < size; i++) {
+        ids[i] = NodeId.toString(2 + first + i);
+        seqNums[i] = 2;
+        hopCounts[i] = first + i == 0 ? 0 : 1;
+      }
+      messages.add(new Message(Message.BCAST_STRING, neighbor,
+          new RouteUpdate("", ids, seqNums, hopCounts)));
+    }
+    return messages;
+  }
+}
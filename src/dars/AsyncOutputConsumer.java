@@ -0,0 +1,470 @@
+package dars;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import dars.event.DARSEvent;
+import dars.event.DARSEvent.EventType;
+
+/**
+ * Output consumer that hands events to another consumer on its own thread.
+ *
+ * Events are published into a pre-allocated ring buffer and a dedicated
+ * thread feeds them to the wrapped consumer in order, so the thread that
+ * dispatches an event (normally the simulation thread, inside
+ * SimEngine.lock) never waits for file or screen I/O. A publisher claims a
+ * slot by moving the claim sequence on, fills the slot and then publishes it
+ * by storing its sequence in the slot, so publishing takes no lock even when
+ * the GUI thread publishes input events alongside the simulation thread. The
+ * lock is only taken to wait, by a publisher when the ring is full and by
+ * the consumer thread when it is empty.
+ *
+ * When the consumer falls behind and the ring fills up, the Backpressure
+ * policy decides what happens to new events:
+ *
+ * BLOCK - the publisher waits for room. No event is lost.
+ *
+ * DROP_DEBUG_FIRST - debug events are dropped once the ring is three
+ * quarters full, so the remaining room is kept for everything else. Other
+ * events block as with BLOCK.
+ *
+ * COALESCE - message traffic and debug events that do not fit are counted
+ * instead of queued. Once there is room again, a single error event
+ * reporting how many events were skipped is queued in their place. Input
+ * events and the other output events, which the consumer needs to keep up
+ * with the simulation, block as with BLOCK.
+ *
+ * If the wrapped consumer is also an InputConsumer, input events can be sent
+ * through the same ring by registering this object with the InputHandler.
+ * Input and output events then reach the consumer in the order they were
+ * claimed, which is what the Logger needs.
+ */
+public class AsyncOutputConsumer implements OutputConsumer, InputConsumer {
+
+  public enum Backpressure { BLOCK, DROP_DEBUG_FIRST, COALESCE };
+
+  private final OutputConsumer target;
+  private final Backpressure backpressure;
+
+  // The ring. A slot holds the event, whether it is an input event and the
+  // time it was published, and the sequence of the event once it has been
+  // published.
+  private final DARSEvent[] events;
+  private final boolean[] inputs;
+  private final long[] publishTimes;
+  private final AtomicLongArray sequences;
+  private final int mask;
+
+  // Sequence of the next slot to claim and of the next event to consume.
+  // Only the consumer thread moves tail on, or after it has stopped whoever
+  // holds lock. tail is set lazily; a wake up that is missed because of it
+  // costs no more than the timeout of the wait.
+  private final AtomicLong next = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  // Publishers and the consumer thread wait on this when the ring is full or
+  // empty.
+  private final Object lock = new Object();
+  private volatile int producersWaiting = 0;
+  private volatile boolean consumerWaiting = false;
+  private volatile boolean running = true;
+  // Set by the consumer thread when it finishes. The remaining events are
+  // then consumed by the publishers, holding lock.
+  private volatile boolean stopped = false;
+  private final Thread thread;
+
+  // Number of events skipped since the last coalesce summary. Whoever takes
+  // it queues the summary.
+  private final AtomicLong skipped = new AtomicLong();
+
+  // Metrics
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private volatile long maxLag = 0;
+  private volatile long lastLatency = 0;
+  private volatile long maxLatency = 0;
+
+  /**
+   * @param target
+   *          the consumer to feed.
+   * @param capacity
+   *          number of events the ring holds. Rounded up to a power of two.
+   * @param backpressure
+   *          what to do with new events when the ring is full.
+   */
+  public AsyncOutputConsumer(OutputConsumer target, int capacity,
+      Backpressure backpressure) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.target = target;
+    this.backpressure = backpressure;
+    this.events = new DARSEvent[size];
+    this.inputs = new boolean[size];
+    this.publishTimes = new long[size];
+    this.sequences = new AtomicLongArray(size);
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, -1);
+    }
+
+    thread = new Thread(new Runnable() {
+      public void run() {
+        consumeLoop();
+      }
+    }, "DARS output " + target.getClass().getSimpleName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public OutputConsumer getTarget() {
+    return target;
+  }
+
+  @Override
+  public void consumeOutput(DARSEvent e) {
+    publish(e, false);
+  }
+
+  @Override
+  public void consumeInput(DARSEvent e) {
+    if (target instanceof InputConsumer) {
+      publish(e, true);
+    }
+  }
+
+  private void publish(DARSEvent e, boolean isInput) {
+    // After shutdown the events are handed over directly.
+    if (stopped) {
+      deliverAfterShutdown(e, isInput);
+      return;
+    }
+
+    int capacity = events.length;
+    long seq;
+    switch (backpressure) {
+    case DROP_DEBUG_FIRST:
+      if (e.eventType == EventType.OUT_DEBUG
+          && next.get() - tail.get() >= capacity - capacity / 4) {
+        dropped.incrementAndGet();
+        return;
+      }
+      seq = claim(1, true);
+      break;
+
+    case COALESCE:
+      // Room is needed for the summary as well as the event.
+      boolean skippable = !isInput && isSkippable(e.eventType);
+      long s = skipped.getAndSet(0);
+      seq = claim(s > 0 ? 2 : 1, !skippable);
+      if (seq < 0 && skippable && !stopped) {
+        skipped.addAndGet(s + 1);
+        coalesced.incrementAndGet();
+        return;
+      }
+      if (seq >= 0 && s > 0) {
+        put(seq++, DARSEvent.outError("Output fell behind, " + s
+            + " events were not shown."), false);
+      }
+      break;
+
+    default:
+      seq = claim(1, true);
+      break;
+    }
+
+    if (seq < 0) {
+      // The consumer thread stopped while this waited for room.
+      deliverAfterShutdown(e, isInput);
+      return;
+    }
+    put(seq, e, isInput);
+
+    if (consumerWaiting) {
+      synchronized (lock) {
+        lock.notifyAll();
+      }
+    }
+    // The consumer thread may have stopped before it got to the event.
+    if (stopped) {
+      synchronized (lock) {
+        consumeRemaining();
+      }
+    }
+  }
+
+  /**
+   * Returns whether COALESCE may skip an output event of the given type.
+   */
+  private static boolean isSkippable(EventType type) {
+    switch (type) {
+    case OUT_MSG_TRANSMITTED:
+    case OUT_MSG_RECEIVED:
+    case OUT_CONTROLMSG_TRANSMITTED:
+    case OUT_CONTROLMSG_RECEIVED:
+    case OUT_NARRMSG_TRANSMITTED:
+    case OUT_NARRMSG_RECEIVED:
+    case OUT_DEBUG:
+    case OUT_NODE_INFO:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Claim slots in the ring.
+   *
+   * @param n
+   *          the number of slots.
+   * @param block
+   *          whether to wait for room.
+   *
+   * @return the sequence of the first slot, or -1 if there is no room and
+   *         block is false, or the consumer thread has stopped.
+   */
+  private long claim(int n, boolean block) {
+    while (true) {
+      long seq = next.get();
+      if (seq + n - tail.get() <= events.length) {
+        if (next.compareAndSet(seq, seq + n)) {
+          return seq;
+        }
+      } else if (stopped || !block || !waitForRoom(seq + n)) {
+        return -1;
+      }
+    }
+  }
+
+  // Wait until the ring has room up to end. Returns false if the consumer
+  // thread stopped.
+  private boolean waitForRoom(long end) {
+    boolean interrupted = false;
+    synchronized (lock) {
+      producersWaiting++;
+      try {
+        while (end - tail.get() > events.length) {
+          if (stopped) {
+            return false;
+          }
+          try {
+            lock.wait(10);
+          } catch (InterruptedException e) {
+            // No event is lost, so keep waiting.
+            interrupted = true;
+          }
+        }
+      } finally {
+        producersWaiting--;
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    return true;
+  }
+
+  // Fill a claimed slot and publish it.
+  private void put(long seq, DARSEvent e, boolean isInput) {
+    int idx = (int) seq & mask;
+    events[idx] = e;
+    inputs[idx] = isInput;
+    publishTimes[idx] = System.nanoTime();
+    sequences.set(idx, seq);
+
+    long lag = seq + 1 - tail.get();
+    if (lag > maxLag) {
+      maxLag = lag;
+    }
+  }
+
+  private void consumeLoop() {
+    while (true) {
+      long seq = tail.get();
+      int idx = (int) seq & mask;
+      if (sequences.get(idx) != seq) {
+        synchronized (lock) {
+          consumerWaiting = true;
+          try {
+            while (sequences.get(idx) != seq && running) {
+              try {
+                lock.wait(10);
+              } catch (InterruptedException e) {
+                // Keep going until shut down.
+              }
+            }
+          } finally {
+            consumerWaiting = false;
+          }
+          if (sequences.get(idx) != seq) {
+            stopped = true;
+            consumeRemaining();
+            lock.notifyAll();
+            return;
+          }
+        }
+      }
+
+      // Feed the event to the target without holding the lock.
+      consume(seq);
+      if (producersWaiting > 0) {
+        synchronized (lock) {
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  // Hand the event in a published slot to the target and move tail on.
+  private void consume(long seq) {
+    int idx = (int) seq & mask;
+    DARSEvent e = events[idx];
+    boolean isInput = inputs[idx];
+    long latency = System.nanoTime() - publishTimes[idx];
+    events[idx] = null;
+
+    deliver(e, isInput);
+
+    lastLatency = latency;
+    if (latency > maxLatency) {
+      maxLatency = latency;
+    }
+    tail.lazySet(seq + 1);
+  }
+
+  // Called with lock held once the consumer thread has stopped. Consume the
+  // events that were published in the meantime, in order.
+  private void consumeRemaining() {
+    while (true) {
+      long seq = tail.get();
+      if (sequences.get((int) seq & mask) != seq) {
+        return;
+      }
+      consume(seq);
+    }
+  }
+
+  private void deliverAfterShutdown(DARSEvent e, boolean isInput) {
+    synchronized (lock) {
+      consumeRemaining();
+      deliver(e, isInput);
+    }
+  }
+
+  private void deliver(DARSEvent e, boolean isInput) {
+    try {
+      if (isInput) {
+        ((InputConsumer) target).consumeInput(e);
+      } else {
+        target.consumeOutput(e);
+      }
+    } catch (RuntimeException ex) {
+      // Don't let one bad event stop the consumer thread.
+      ex.printStackTrace();
+    }
+  }
+
+  /**
+   * Wait until every event published so far has been consumed.
+   */
+  public void drain() {
+    if (Thread.currentThread() == thread) {
+      return;
+    }
+    long target = next.get();
+    if (tail.get() >= target) {
+      return;
+    }
+    synchronized (lock) {
+      producersWaiting++;
+      try {
+        while (tail.get() < target && thread.isAlive()) {
+          try {
+            lock.wait(10);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      } finally {
+        producersWaiting--;
+      }
+    }
+  }
+
+  /**
+   * Consume the remaining events and stop the consumer thread. Events
+   * published afterwards are handed to the consumer directly.
+   */
+  public void shutdown() {
+    drain();
+    synchronized (lock) {
+      running = false;
+      lock.notifyAll();
+    }
+    if (Thread.currentThread() != thread) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of events published but not yet consumed.
+   */
+  public long getLag() {
+    return next.get() - tail.get();
+  }
+
+  /**
+   * Returns the largest number of events that have been waiting at once.
+   */
+  public long getMaxLag() {
+    return maxLag;
+  }
+
+  /**
+   * Returns the time the last consumed event spent in the ring, in
+   * nanoseconds.
+   */
+  public long getLatency() {
+    return lastLatency;
+  }
+
+  /**
+   * Returns the longest time an event has spent in the ring, in nanoseconds.
+   */
+  public long getMaxLatency() {
+    return maxLatency;
+  }
+
+  public long getPublished() {
+    return next.get();
+  }
+
+  public long getConsumed() {
+    return tail.get();
+  }
+
+  /**
+   * Returns the number of debug events dropped by DROP_DEBUG_FIRST.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Returns the number of events skipped by COALESCE.
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  public Backpressure getBackpressure() {
+    return backpressure;
+  }
+
+  public int getCapacity() {
+    return events.length;
+  }
+}
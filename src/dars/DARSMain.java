@@ -4,6 +4,8 @@
 package dars;
 
 import java.awt.SplashScreen;
+import java.io.IOException;
+import javax.management.JMException;
 import javax.swing.SwingUtilities;
 import dars.event.DARSEvent;
 import dars.gui.GUI;
@@ -35,11 +37,53 @@ public class DARSMain {
     // Setup the logger to consume DARSEvents from both the input handler and
     // the output handler. From henceforth, all DARSEvents that pass through
     // the Input and Output handlers will be logged.
-    InputHandler.addInputConsumer(Logger.getInstance());
-    OutputHandler.addOutputConsumer(Logger.getInstance());
+    // The logger writes on its own thread so the simulation never waits on
+    // the disk. Its input and output events share one buffer and keep their
+    // order.
+    if(Defaults.ASYNC_LOGGER) {
+      AsyncOutputConsumer asyncLogger = OutputHandler.addAsyncOutputConsumer(
+          Logger.getInstance(), Defaults.ASYNC_BUFFER_SIZE,
+          AsyncOutputConsumer.Backpressure.BLOCK);
+      InputHandler.addInputConsumer(asyncLogger);
+    } else {
+      InputHandler.addInputConsumer(Logger.getInstance());
+      OutputHandler.addOutputConsumer(Logger.getInstance());
+    }
 
     // Instantiate the simulator engine
-    SimEngine s = new SimEngine();
+    SimEngine s;
+    if (Defaults.THREADED_ENGINE) {
+      s = new ThreadedEngine();
+    } else if (Defaults.EVENT_ENGINE) {
+      s = new EventEngine();
+    } else {
+      s = new SimEngine();
+    }
+    
+    // Serve the profile over JMX if the engine profiles from the start
+    if (Defaults.PROFILE) {
+      try {
+        s.getProfiler().registerMBean();
+      } catch (JMException e) {
+        e.printStackTrace();
+      }
+    }
+    
+    // Export the health of the simulation if asked to
+    if (Defaults.EXPORT_METRICS) {
+      MetricsExporter exporter = new MetricsExporter(s);
+      OutputHandler.addOutputConsumer(exporter);
+      try {
+        exporter.registerMBean();
+        if (Defaults.METRICS_HTTP_PORT > 0) {
+          exporter.startHttpServer(Defaults.METRICS_HTTP_PORT);
+        }
+      } catch (JMException e) {
+        e.printStackTrace();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
     
     // Make the time keeping component of the simulator engine viewable to DARSEvents
     DARSEvent.setSimTimeKeeper( (SimulationTimeKeeper) s);
@@ -63,6 +107,10 @@ public class DARSMain {
     // simulation, where it can view node attributes
     g.setNodeInspector(s);
     
+    // The gui runs replays, which fast forward by changing how the engine
+    // runs.
+    g.setSimEngine(s);
+    
     // Name the GUI as an output consumer
     OutputHandler.addOutputConsumer(g);
     
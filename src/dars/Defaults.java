@@ -11,6 +11,47 @@ public class Defaults {
   public static final int Y = 100;
   public static final boolean IS_PROMISCUOUS = false;
   public static final int RANGE = 150;
+  
+  //Side length of a cell in the node store's spatial grid. Roughly the
+  //typical node range, so a broadcast only visits a handful of cells.
+  public static final int GRID_CELL_SIZE = 150;
+  
+  //Whether the engine ticks nodes on a fork-join pool, and the number of
+  //nodes a single task ticks before it stops splitting.
+  public static final boolean PARALLEL_TICK = false;
+  public static final int PARALLEL_TICK_GRAIN = 64;
+  
+  //Whether the engine only ticks the nodes that have something to do in a
+  //quantum instead of every node, see EventEngine.
+  public static final boolean EVENT_ENGINE = false;
+  
+  //Whether every node runs on a thread of its own, see ThreadedEngine.
+  //Experimental.
+  public static final boolean THREADED_ENGINE = false;
+  
+  //Whether the engine profiles its quanta from the start, and the number of
+  //quanta between the metrics events it sends while it does. See
+  //TickProfiler.
+  public static final boolean PROFILE = false;
+  public static final int METRICS_INTERVAL = 100;
+  
+  //Whether the health of the simulation is exported over JMX from the
+  //start, and the loopback port that also serves it as Prometheus text, or
+  //0 for none. See MetricsExporter.
+  public static final boolean EXPORT_METRICS = false;
+  public static final int METRICS_HTTP_PORT = 0;
+  
+  //Whether the logger writes on its own thread, and the number of events
+  //that can be waiting for it before the simulation has to wait.
+  public static final boolean ASYNC_LOGGER = true;
+  public static final int ASYNC_BUFFER_SIZE = 65536;
+  
+  //Whether the event log is written in the binary format instead of CSV.
+  public static final boolean BINARY_LOG = true;
+  
+  //Number of quanta between the entries of the log index, which lets a
+  //replay be started part way through a log.
+  public static final int LOG_INDEX_INTERVAL = 100;
   public static final FontUIResource FONT = new FontUIResource(new Font("tahoma", Font.PLAIN, 12 ));
   public static final FontUIResource BOLDFACED_FONT = new FontUIResource(new Font("tahoma", Font.BOLD, 12 ));
   public static final Color NARRMSG_COLOR = new Color(0,0,0);
@@ -0,0 +1,193 @@
+package dars;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import dars.proto.Node;
+import dars.proto.TimerWheel;
+
+/**
+ * Simulation engine that only ticks the nodes that have something to do.
+ *
+ * SimEngine ticks every node every quantum. Most of those ticks do nothing
+ * but count: the node has received no message and none of its timers is
+ * due. This engine asks each node after its tick how many quanta it will
+ * stay idle, see Node.getIdleTicks(), and sets a wake up timer for the
+ * quantum after that. A quantum only ticks the nodes whose timer is due and
+ * the nodes a message was handed to. A node that was skipped is caught up
+ * with Node.skipTicks() before it is next handed a message, ticked or looked
+ * at, so the work of a quantum is in proportion to the active nodes, not to
+ * all of them.
+ *
+ * The active nodes are ticked and their messages collected in store order,
+ * and skipped ticks dispatch no events, so the output of a simulation is the
+ * same as with SimEngine. The nodes are always ticked serially; the parallel
+ * tick is not used.
+ */
+public class EventEngine extends SimEngine {
+
+  // Wake up timers of the idle nodes, keyed on quantum. A turn of the wheel
+  // covers the longest protocol interval.
+  private final TimerWheel<Node> wakeups = new TimerWheel<Node>(256);
+
+  // Number of times the main loop was run since the simulation was reset.
+  // The clocks below count in these, so that the main loop can also be run
+  // directly, without the sim time going up.
+  private int                    quantum  = 0;
+
+  // Per handle: the last quantum the node was ticked or caught up to, the
+  // quantum its current wake up timer is due, and whether it is ticked in
+  // this quantum.
+  private int[]                  clocks   = new int[64];
+  private int[]                  wakeAt   = new int[64];
+  private boolean[]              isActive = new boolean[64];
+
+  // The nodes to tick in this quantum, and the nodes whose timers came due.
+  private final ArrayList<Node>  active   = new ArrayList<Node>();
+  private final ArrayList<Node>  due      = new ArrayList<Node>();
+
+  private static final Comparator<Node> STORE_ORDER = new Comparator<Node>() {
+    public int compare(Node a, Node b) {
+      return a.getHandle() < b.getHandle() ? -1
+          : (a.getHandle() == b.getHandle() ? 0 : 1);
+    }
+  };
+
+  /**
+   * The nodes are ticked serially, so the parallel tick is never turned on.
+   */
+  @Override
+  public void setParallelTick(boolean parallel) {
+    super.setParallelTick(false);
+  }
+
+  @Override
+  public void MainLoop() {
+    quantum++;
+    super.MainLoop();
+  }
+
+  @Override
+  protected void nodeInput(Node node) {
+    activate(node, quantum);
+  }
+
+  @Override
+  protected void nodeAdded(Node node) {
+    int h = node.getHandle();
+    ensureCapacity(h);
+    clocks[h] = quantum;
+    if (!isActive[h]) {
+      isActive[h] = true;
+      active.add(node);
+    }
+  }
+
+  @Override
+  protected void simulationReset() {
+    quantum = 0;
+    wakeups.clear(quantum);
+    Arrays.fill(clocks, 0);
+    Arrays.fill(wakeAt, 0);
+    Arrays.fill(isActive, false);
+    active.clear();
+    due.clear();
+  }
+
+  @Override
+  protected void syncNode(Node node) {
+    int h = node.getHandle();
+    if (h >= clocks.length || isActive[h]) {
+      return;
+    }
+    catchUp(node, quantum);
+  }
+
+  /**
+   * Tick the nodes whose wake up timer is due and the nodes that were handed
+   * a message, in store order.
+   */
+  @Override
+  protected void tickNodes() {
+    int now = quantum;
+    wakeups.advance(now, due);
+    for (int k = 0; k < due.size(); k++) {
+      Node node = due.get(k);
+      int h = node.getHandle();
+      // Skip timers that were replaced or whose node was deleted.
+      if (wakeAt[h] == now && store.getNode(h) == node) {
+        activate(node, now);
+      }
+    }
+    due.clear();
+
+    Collections.sort(active, STORE_ORDER);
+    for (int k = 0; k < active.size(); k++) {
+      Node node = active.get(k);
+      if (store.getNode(node.getHandle()) != node) {
+        continue;
+      }
+      node.clockTick();
+      clocks[node.getHandle()] = now;
+    }
+  }
+
+  /**
+   * Gather the messages of the nodes that were ticked, in store order, and
+   * set their wake up timers.
+   */
+  @Override
+  protected void collectMessages() {
+    int now = quantum;
+    Message message = null;
+    for (int k = 0; k < active.size(); k++) {
+      Node node = active.get(k);
+      int h = node.getHandle();
+      isActive[h] = false;
+      if (store.getNode(h) != node) {
+        continue;
+      }
+      while ((message = node.messageToNetwork()) != null) {
+        messageQueue.add(message);
+      }
+      long wake = (long) now + node.getIdleTicks() + 1;
+      wakeAt[h] = wakeups.schedule(node, (int) Math.min(wake, Integer.MAX_VALUE));
+    }
+    active.clear();
+  }
+
+  /**
+   * Have the node ticked in this quantum, catching it up to the quantum
+   * before.
+   */
+  private void activate(Node node, int now) {
+    int h = node.getHandle();
+    ensureCapacity(h);
+    if (isActive[h]) {
+      return;
+    }
+    catchUp(node, now - 1);
+    isActive[h] = true;
+    active.add(node);
+  }
+
+  // Pass the ticks the node was skipped for, up to the given quantum.
+  private void catchUp(Node node, int upTo) {
+    int h = node.getHandle();
+    if (upTo > clocks[h]) {
+      node.skipTicks(upTo - clocks[h]);
+      clocks[h] = upTo;
+    }
+  }
+
+  private void ensureCapacity(int handle) {
+    if (handle >= clocks.length) {
+      int length = Math.max(clocks.length * 2, handle + 1);
+      clocks = Arrays.copyOf(clocks, length);
+      wakeAt = Arrays.copyOf(wakeAt, length);
+      isActive = Arrays.copyOf(isActive, length);
+    }
+  }
+}
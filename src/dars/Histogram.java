@@ -0,0 +1,121 @@
+package dars;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values, such as times in nanoseconds or
+ * queue lengths.
+ *
+ * Values are counted in buckets whose width grows with the value, as in an
+ * HDR histogram: values below SUB_BUCKETS are counted exactly, and above
+ * that each power of two is split into SUB_BUCKETS / 2 buckets of equal
+ * width. A percentile is reported as the highest value of its bucket, so it
+ * is never below the true value and at most about 3% above it. Memory is a
+ * fixed few KB however many values are recorded.
+ *
+ * The methods are synchronized so the histogram can be read, for example
+ * over JMX, while the simulation thread records into it.
+ */
+public class Histogram {
+
+  // Number of buckets per power of two, doubled. A power of two.
+  private static final int SUB_BUCKETS = 64;
+  private static final int SUB_BITS    = 6;
+
+  private final long[]     counts      = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS / 2 + SUB_BUCKETS / 2];
+  private long             count;
+  private long             sum;
+  private long             min         = Long.MAX_VALUE;
+  private long             max;
+
+  /**
+   * Count a value. Negative values are counted as 0.
+   */
+  public synchronized void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts[bucket(value)]++;
+    count++;
+    sum += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  public synchronized long getMax() {
+    return max;
+  }
+
+  public synchronized double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Returns the value that the given percentage of the values are at or
+   * below, or 0 if nothing was recorded.
+   *
+   * @param percentile
+   *          from 0 to 100.
+   */
+  public synchronized long getValueAtPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count);
+    rank = Math.max(rank, 1);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  public synchronized void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  /**
+   * Returns a one line summary: count, mean, 50th, 90th and 99th percentile
+   * and max.
+   */
+  public synchronized String toString() {
+    return String.format("n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", count,
+        getMean(), getValueAtPercentile(50), getValueAtPercentile(90),
+        getValueAtPercentile(99), max);
+  }
+
+  // Values below SUB_BUCKETS have a bucket each. Above that, the bucket is
+  // picked by the power of two and the SUB_BITS - 1 bits below the top bit.
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+    int sub = (int) (value >>> magnitude) - SUB_BUCKETS / 2;
+    return SUB_BUCKETS + (magnitude - 1) * (SUB_BUCKETS / 2) + sub;
+  }
+
+  private static long highestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int magnitude = (bucket - SUB_BUCKETS) / (SUB_BUCKETS / 2) + 1;
+    long sub = (bucket - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+    return ((sub + 1) << magnitude) - 1;
+  }
+}
@@ -1,9 +1,22 @@
 package dars;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class Message {
+   /**
+    * The message string. For a message built from a payload this is null
+    * until the payload is rendered, so read it through getMessage().
+    */
    public String message;
    public String destinationId;
    public String originId;
+
+   // Handles of the destination and origin, see NodeId.
+   private final int destinationHandle;
+   private final int originHandle;
+   private MessagePayload payload;
 /**
  * This Message constructor takes 3 parameters, if the DestinationId is set 
  * to the value contained in BCAST_STRING a broadcast message will be assumed.
@@ -15,6 +28,98 @@ public class Message {
        message = Message;
        destinationId = DestinationId;
        originId = OriginId;
+       destinationHandle = NodeId.parse(DestinationId);
+       originHandle = NodeId.parse(OriginId);
+   }
+   
+   /**
+    * Build a message from a structured payload. The message string is only
+    * rendered from the payload when it is asked for, so a protocol can pass
+    * payloads between nodes without building or parsing strings.
+    * 
+    * @param DestinationId
+    * @param OriginId
+    * @param Payload
+    */
+   public Message(String DestinationId, String OriginId, MessagePayload Payload){
+       payload = Payload;
+       destinationId = DestinationId;
+       originId = OriginId;
+       destinationHandle = NodeId.parse(DestinationId);
+       originHandle = NodeId.parse(OriginId);
+   }
+   
+   /**
+    * Returns the handle of the destination node, or NodeId.NONE for a
+    * broadcast.
+    */
+   public int getDestinationHandle() {
+     return destinationHandle;
+   }
+
+   /**
+    * Returns the handle of the origin node.
+    */
+   public int getOriginHandle() {
+     return originHandle;
+   }
+
+   /**
+    * Returns the message string, rendering it from the payload the first time
+    * it is needed.
+    */
+   public String getMessage() {
+     // Rendering is idempotent, so two threads racing here at worst both
+     // render the same string.
+     if (message == null && payload != null) {
+       message = payload.render();
+     }
+     return message;
+   }
+   
+   /**
+    * Returns the structured payload of the message, or null if the message
+    * was built from a string.
+    */
+   public MessagePayload getPayload() {
+     return payload;
+   }
+   
+   /**
+    * Attach a payload parsed from the message string, so that the string does
+    * not have to be parsed again by the next node that receives the message.
+    * 
+    * @param Payload
+    */
+   public void setPayload(MessagePayload Payload) {
+     payload = Payload;
+   }
+   
+   /**
+    * Write the message for a snapshot of the simulation. The payload is
+    * written in its string form; the receiving protocol parses it again.
+    * 
+    * @param out
+    */
+   public void writeTo(DataOutput out) throws IOException {
+       // Broadcasts are told apart by reference, see SimEngine.
+       out.writeBoolean(destinationId == BCAST_STRING);
+       Snapshot.writeString(out, destinationId);
+       Snapshot.writeString(out, originId);
+       Snapshot.writeString(out, getMessage());
+   }
+   
+   /**
+    * Read a message written by writeTo().
+    * 
+    * @param in
+    */
+   public static Message readFrom(DataInput in) throws IOException {
+       boolean broadcast = in.readBoolean();
+       String destination = Snapshot.readString(in);
+       String origin = Snapshot.readString(in);
+       String text = Snapshot.readString(in);
+       return new Message(broadcast ? BCAST_STRING : destination, origin, text);
    }
    
    /**
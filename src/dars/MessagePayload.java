@@ -0,0 +1,18 @@
+package dars;
+
+/**
+ * Structured body of a Message.
+ * 
+ * A protocol can attach a payload to a message instead of encoding it into
+ * the message string. Nodes that receive the message read the payload
+ * directly and the string form is only rendered for the log and the GUI.
+ * Payloads are shared by every node that hears a message and must not be
+ * modified once the message has been sent.
+ */
+public interface MessagePayload {
+  /**
+   * Returns the string form of the payload, as it appears in the message
+   * string.
+   */
+  String render();
+}
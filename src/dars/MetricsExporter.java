@@ -0,0 +1,291 @@
+package dars;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import dars.event.DARSEvent;
+import dars.logger.Logger;
+
+/**
+ * Output consumer that exports the health of a running simulation.
+ *
+ * It counts the quanta, the output events and the control and narrative
+ * messages transmitted and received as the events go by, and works out
+ * their rates when they are read, along with the rate the Logger writes
+ * at. The number of nodes and the sizes of their route tables are taken
+ * from the engine when they are read.
+ *
+ * The metrics can be read over JMX once registerMBean() is called, and as
+ * Prometheus text from http://127.0.0.1:port/metrics once startHttpServer()
+ * is called. The server only listens on the loopback address.
+ *
+ * Nothing is counted unless the exporter is added as an output consumer, so
+ * a simulation without it pays nothing.
+ */
+public class MetricsExporter implements OutputConsumer, MetricsExporterMBean {
+
+  public enum Counter {
+    QUANTA("dars_quanta_total", "", "Quanta run."),
+    EVENTS("dars_events_total", "", "Output events dispatched."),
+    CONTROL_TRANSMITTED("dars_messages_total",
+        "kind=\"control\",direction=\"transmitted\"", "Messages sent or received."),
+    CONTROL_RECEIVED("dars_messages_total",
+        "kind=\"control\",direction=\"received\"", null),
+    NARRATIVE_TRANSMITTED("dars_messages_total",
+        "kind=\"narrative\",direction=\"transmitted\"", null),
+    NARRATIVE_RECEIVED("dars_messages_total",
+        "kind=\"narrative\",direction=\"received\"", null),
+    LOG_BYTES("dars_log_bytes_total", "", "Bytes written to the event log.");
+
+    // Metric name and labels in the Prometheus text, and its help. Only the
+    // first counter of a metric has the help.
+    final String metric;
+    final String labels;
+    final String help;
+
+    Counter(String metric, String labels, String help) {
+      this.metric = metric;
+      this.labels = labels;
+      this.help = help;
+    }
+  };
+
+  private static final String OBJECT_NAME  = "dars:type=MetricsExporter";
+
+  // Shortest time the rates are worked out over.
+  private static final long   WINDOW_NANOS = 1000000000L;
+
+  private final SimEngine     engine;
+  private final AtomicLongArray counts     = new AtomicLongArray(Counter.values().length);
+
+  // Counts at the start of the current window and the rates over the last
+  // one. Guarded by this.
+  private final long[]        windowCounts = new long[Counter.values().length];
+  private final double[]      rates        = new double[Counter.values().length];
+  private long                windowStart  = System.nanoTime();
+
+  private HttpServer          server       = null;
+
+  /**
+   * @param engine
+   *          the engine to take the node count and route tables from.
+   */
+  public MetricsExporter(SimEngine engine) {
+    this.engine = engine;
+    windowCounts[Counter.LOG_BYTES.ordinal()] = Logger.getBytesWritten();
+  }
+
+  public void consumeOutput(DARSEvent e) {
+    counts.incrementAndGet(Counter.EVENTS.ordinal());
+    switch (e.eventType) {
+    case OUT_QUANTUM_ELAPSED:
+      counts.incrementAndGet(Counter.QUANTA.ordinal());
+      break;
+    case OUT_CONTROLMSG_TRANSMITTED:
+      counts.incrementAndGet(Counter.CONTROL_TRANSMITTED.ordinal());
+      break;
+    case OUT_CONTROLMSG_RECEIVED:
+      counts.incrementAndGet(Counter.CONTROL_RECEIVED.ordinal());
+      break;
+    case OUT_NARRMSG_TRANSMITTED:
+      counts.incrementAndGet(Counter.NARRATIVE_TRANSMITTED.ordinal());
+      break;
+    case OUT_NARRMSG_RECEIVED:
+      counts.incrementAndGet(Counter.NARRATIVE_RECEIVED.ordinal());
+      break;
+    }
+  }
+
+  public long getCount(Counter counter) {
+    if (counter == Counter.LOG_BYTES) {
+      return Logger.getBytesWritten();
+    }
+    return counts.get(counter.ordinal());
+  }
+
+  /**
+   * Returns the average rate of the counter per second since the rates were
+   * last worked out. They are worked out again if that was at least a
+   * second ago.
+   */
+  public synchronized double getRate(Counter counter) {
+    long now = System.nanoTime();
+    long elapsed = now - windowStart;
+    if (elapsed >= WINDOW_NANOS) {
+      for (Counter c : Counter.values()) {
+        long count = getCount(c);
+        rates[c.ordinal()] = (count - windowCounts[c.ordinal()]) * 1e9 / elapsed;
+        windowCounts[c.ordinal()] = count;
+      }
+      windowStart = now;
+    }
+    return rates[counter.ordinal()];
+  }
+
+  public long getCount(String counter) {
+    return getCount(Counter.valueOf(counter));
+  }
+
+  public double getRate(String counter) {
+    return getRate(Counter.valueOf(counter));
+  }
+
+  public double getQuantaPerSecond() {
+    return getRate(Counter.QUANTA);
+  }
+
+  public double getEventsPerSecond() {
+    return getRate(Counter.EVENTS);
+  }
+
+  public double getControlMessagesPerSecond() {
+    return getRate(Counter.CONTROL_TRANSMITTED);
+  }
+
+  public double getNarrativeMessagesPerSecond() {
+    return getRate(Counter.NARRATIVE_TRANSMITTED);
+  }
+
+  public double getLogBytesPerSecond() {
+    return getRate(Counter.LOG_BYTES);
+  }
+
+  public int getNodeCount() {
+    return engine.getRouteCounts().length;
+  }
+
+  public long getRouteCount() {
+    long total = 0;
+    for (int c : engine.getRouteCounts()) {
+      total += c;
+    }
+    return total;
+  }
+
+  public int getMaxRouteCount() {
+    int max = 0;
+    for (int c : engine.getRouteCounts()) {
+      max = Math.max(max, c);
+    }
+    return max;
+  }
+
+  /**
+   * Returns the metrics in the Prometheus text exposition format: a counter
+   * and a rate for each Counter, and gauges of the nodes and their routes.
+   */
+  public String getSummary() {
+    StringBuilder sb = new StringBuilder(2048);
+    for (Counter c : Counter.values()) {
+      appendSample(sb, c.metric, "counter", c.help, c.labels, getCount(c));
+    }
+    for (Counter c : Counter.values()) {
+      String metric = c.metric.replace("_total", "_per_second");
+      String help = c.help == null ? null : c.help.replace(".", " per second.");
+      appendSample(sb, metric, "gauge", help, c.labels, getRate(c));
+    }
+
+    // Take the route tables once, so the gauges agree with each other.
+    int[] routes = engine.getRouteCounts();
+    long total = 0;
+    int max = 0;
+    for (int r : routes) {
+      total += r;
+      max = Math.max(max, r);
+    }
+    appendSample(sb, "dars_nodes", "gauge", "Nodes in the simulation.", "",
+        routes.length);
+    appendSample(sb, "dars_routes", "gauge",
+        "Routes in all the nodes' route tables.", "", total);
+    appendSample(sb, "dars_routes_max", "gauge",
+        "Routes in the largest route table.", "", max);
+    return sb.toString();
+  }
+
+  // A sample with its HELP and TYPE lines, which are left out if help is
+  // null because they were written with an earlier sample of the metric.
+  private static void appendSample(StringBuilder sb, String metric,
+      String type, String help, String labels, double value) {
+    if (help != null) {
+      sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+      sb.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+    sb.append(metric);
+    if (labels.length() > 0) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ');
+    if (value == (long) value) {
+      sb.append((long) value);
+    } else {
+      sb.append(value);
+    }
+    sb.append('\n');
+  }
+
+  /**
+   * Register the exporter with the platform MBean server, in place of any
+   * exporter registered before.
+   */
+  public void registerMBean() throws JMException {
+    MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (mbs.isRegistered(name)) {
+      mbs.unregisterMBean(name);
+    }
+    mbs.registerMBean(this, name);
+  }
+
+  /**
+   * Serve getSummary() at http://127.0.0.1:port/metrics, on a thread of the
+   * server's own.
+   *
+   * @param port
+   *          the port to listen on, or 0 for any free port.
+   *
+   * @return the port the server listens on.
+   *
+   * @throws IOException
+   *           if the port can not be listened on.
+   */
+  public synchronized int startHttpServer(int port) throws IOException {
+    stopHttpServer();
+    server = HttpServer.create(new InetSocketAddress(
+        InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/metrics", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = getSummary().getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type",
+            "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+          out.write(body);
+        } finally {
+          out.close();
+        }
+      }
+    });
+    server.start();
+    return server.getAddress().getPort();
+  }
+
+  public synchronized void stopHttpServer() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package dars;
+
+/**
+ * Management interface of the MetricsExporter, registered with the platform
+ * MBean server as dars:type=MetricsExporter.
+ *
+ * The counters are named as in MetricsExporter.Counter, for example
+ * CONTROL_RECEIVED. A rate is the average per second since the rates were
+ * last worked out, at least a second before.
+ */
+public interface MetricsExporterMBean {
+
+  public long getCount(String counter);
+
+  public double getRate(String counter);
+
+  public double getQuantaPerSecond();
+
+  public double getEventsPerSecond();
+
+  /**
+   * Returns the control messages transmitted per second.
+   */
+  public double getControlMessagesPerSecond();
+
+  /**
+   * Returns the narrative messages transmitted per second.
+   */
+  public double getNarrativeMessagesPerSecond();
+
+  public double getLogBytesPerSecond();
+
+  public int getNodeCount();
+
+  /**
+   * Returns the number of routes in all the nodes' route tables.
+   */
+  public long getRouteCount();
+
+  /**
+   * Returns the number of routes in the largest route table.
+   */
+  public int getMaxRouteCount();
+
+  /**
+   * Returns the metrics in the Prometheus text format.
+   */
+  public String getSummary();
+}
@@ -0,0 +1,262 @@
+package dars;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import dars.proto.Node;
+
+/**
+ * Cached neighbor graph of the simulation.
+ *
+ * Two nodes are neighbors when each is within the other's range. The relation
+ * is symmetric, so when a node moves or changes range only that node's
+ * adjacency has to be rebuilt; it is detached from its old neighbors and
+ * attached to its new ones. Changes are only marked dirty when they happen
+ * and are applied the next time the graph is read, so a node dragged across
+ * the canvas within one quantum is rebuilt once.
+ *
+ * The cache is owned by the simulation engine and is only touched while
+ * holding SimEngine.lock.
+ */
+class NeighborCache {
+
+  private final NodeStore store;
+
+  // Adjacency sets indexed by node handle, see NodeId.
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private LinkedHashSet<Node>[] neighbors = new LinkedHashSet[64];
+
+  // Nodes whose adjacency has to be rebuilt.
+  private final LinkedHashSet<Node> dirty = new LinkedHashSet<Node>();
+
+  NeighborCache(NodeStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Mark a node's adjacency as stale. Call this after a node is added, moved
+   * or has its range changed.
+   *
+   * @param node
+   */
+  void invalidate(Node node) {
+    dirty.add(node);
+  }
+
+  /**
+   * Remove a node that has been deleted from the store.
+   *
+   * @param node
+   */
+  void nodeDeleted(Node node) {
+    detach(node);
+    dirty.remove(node);
+  }
+
+  void clear() {
+    Arrays.fill(neighbors, null);
+    dirty.clear();
+  }
+
+  /**
+   * Returns the live neighbor set of a node. The returned collection must not
+   * be modified and is only valid until the next topology change.
+   *
+   * @param handle
+   */
+  Collection<Node> getNeighbors(int handle) {
+    refresh();
+    LinkedHashSet<Node> set = get(handle);
+    if (set == null) {
+      return Collections.emptySet();
+    }
+    return set;
+  }
+
+  /**
+   * Returns a copy of the ids of a node's neighbors.
+   *
+   * @param id
+   */
+  List<String> getNeighborIds(String id) {
+    Collection<Node> set = getNeighbors(NodeId.parse(id));
+    ArrayList<String> ids = new ArrayList<String>(set.size());
+    for (Node n : set) {
+      ids.add(n.getAttributes().id);
+    }
+    return ids;
+  }
+
+  /**
+   * Returns true if the two nodes can hear each other. A node can always hear
+   * itself, though it is not in its own neighbor list.
+   *
+   * @param origin
+   *          the handle of one node.
+   * @param destination
+   *          the handle of the other.
+   */
+  boolean areNeighbors(int origin, int destination) {
+    if (origin == destination) {
+      return store.getNode(origin) != null;
+    }
+    refresh();
+    LinkedHashSet<Node> set = get(origin);
+    if (set == null) {
+      return false;
+    }
+    Node dest = store.getNode(destination);
+    return dest != null && set.contains(dest);
+  }
+
+  /**
+   * This method is used for determining if a node can send a message to
+   * another node.
+   *
+   * @param origin
+   * @param destination
+   *
+   * @return boolean
+   */
+  static boolean canCommunicate(NodeAttributes origin, NodeAttributes destination) {
+    double dx = origin.x - destination.x;
+    double dy = origin.y - destination.y;
+    double distance = Math.sqrt(dx * dx + dy * dy);
+    if (distance > origin.range || distance > destination.range) {
+      return false;
+    } else
+      return true;
+  }
+
+  /**
+   * Write the cache for a snapshot of the simulation. Pending invalidations
+   * are written as they are rather than applied, since applying them earlier
+   * than the original run would can change the order of the neighbor sets.
+   *
+   * @param out
+   */
+  void writeTo(DataOutput out) throws IOException {
+    int count = 0;
+    for (LinkedHashSet<Node> set : neighbors) {
+      if (set != null) {
+        count++;
+      }
+    }
+    out.writeInt(count);
+    for (int h = 0; h < neighbors.length; h++) {
+      if (neighbors[h] == null) {
+        continue;
+      }
+      Snapshot.writeString(out, NodeId.toString(h));
+      out.writeInt(neighbors[h].size());
+      for (Node n : neighbors[h]) {
+        Snapshot.writeString(out, n.getAttributes().id);
+      }
+    }
+    out.writeInt(dirty.size());
+    for (Node n : dirty) {
+      Snapshot.writeString(out, n.getAttributes().id);
+    }
+  }
+
+  /**
+   * Replace the cache with the one written by writeTo(). The store must
+   * already hold the nodes.
+   *
+   * @param in
+   */
+  void readFrom(DataInput in) throws IOException {
+    clear();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      int handle = NodeId.parse(Snapshot.readString(in));
+      if (handle == NodeId.NONE) {
+        throw new IOException("Snapshot has a bad node id.");
+      }
+      LinkedHashSet<Node> set = getOrCreate(handle);
+      int size = in.readInt();
+      for (int j = 0; j < size; j++) {
+        set.add(store.readNode(in));
+      }
+    }
+    int dirtyCount = in.readInt();
+    for (int i = 0; i < dirtyCount; i++) {
+      dirty.add(store.readNode(in));
+    }
+  }
+
+  // Apply the pending invalidations.
+  private void refresh() {
+    if (dirty.isEmpty()) {
+      return;
+    }
+
+    // Detach every dirty node first so no adjacency set refers to a stale
+    // position, then rebuild them.
+    for (Node node : dirty) {
+      detach(node);
+    }
+    for (Node node : dirty) {
+      attach(node);
+    }
+    dirty.clear();
+  }
+
+  private void detach(Node node) {
+    int handle = node.getHandle();
+    LinkedHashSet<Node> set = get(handle);
+    if (set == null) {
+      return;
+    }
+    neighbors[handle] = null;
+    for (Node n : set) {
+      LinkedHashSet<Node> other = get(n.getHandle());
+      if (other != null) {
+        other.remove(node);
+      }
+    }
+  }
+
+  private void attach(Node node) {
+    NodeAttributes att = node.getAttributes();
+    LinkedHashSet<Node> set = getOrCreate(node.getHandle());
+
+    // Only the grid cells around the node can hold a neighbor.
+    Iterator<Node> i = store.getNodesNear(att.x, att.y, att.range);
+    while (i.hasNext()) {
+      Node n = i.next();
+      if (n == node || !canCommunicate(att, n.getAttributes())) {
+        continue;
+      }
+      set.add(n);
+      getOrCreate(n.getHandle()).add(node);
+    }
+  }
+
+  private LinkedHashSet<Node> get(int handle) {
+    if (handle <= 0 || handle >= neighbors.length) {
+      return null;
+    }
+    return neighbors[handle];
+  }
+
+  private LinkedHashSet<Node> getOrCreate(int handle) {
+    if (handle >= neighbors.length) {
+      neighbors = Arrays.copyOf(neighbors, Math.max(neighbors.length * 2, handle + 1));
+    }
+    LinkedHashSet<Node> set = neighbors[handle];
+    if (set == null) {
+      set = new LinkedHashSet<Node>();
+      neighbors[handle] = set;
+    }
+    return set;
+  }
+}
@@ -0,0 +1,113 @@
+package dars;
+
+/**
+ * Conversion between node ids and node handles.
+ *
+ * The simulation engine names nodes A, B, ... Y, AA, AB, ... in the order they
+ * are added, see SimEngine.assignNodeId(). The handle of a node is its place
+ * in that sequence, starting at 1, so handles are small dense integers that
+ * can index arrays. The engine works with handles; the letter id is what is
+ * shown to the user and written to the log.
+ */
+public final class NodeId {
+
+  /**
+   * Handle of anything that is not a node id, such as Message.BCAST_STRING.
+   */
+  public static final int NONE = 0;
+
+  // Length of the id of the largest handle.
+  private static final int MAX_LENGTH = 7;
+
+  // Handles up to this one have their id kept, see toString().
+  private static final int MAX_CACHED = 1 << 20;
+
+  // The ids of the handles asked for so far, indexed by handle.
+  private static volatile String[] ids = new String[64];
+
+  private NodeId() {
+  }
+
+  /**
+   * Returns the id of the node with the given handle.
+   *
+   * The same string is returned every time for a handle, so the protocols can
+   * keep handles in their tables and turn them back into ids without
+   * building a string each time.
+   *
+   * @param handle
+   *          a handle greater than 0.
+   */
+  public static String toString(int handle) {
+    String[] cache = ids;
+    if (handle > 0 && handle < cache.length && cache[handle] != null) {
+      return cache[handle];
+    }
+    return cache(handle);
+  }
+
+  private static synchronized String cache(int handle) {
+    if (handle <= 0) {
+      throw new IllegalArgumentException("Not a node handle: " + handle);
+    }
+    if (handle >= MAX_CACHED) {
+      return format(handle);
+    }
+    String[] cache = ids;
+    if (handle >= cache.length) {
+      String[] larger = new String[Math.min(Math.max(cache.length * 2, handle + 1), MAX_CACHED)];
+      System.arraycopy(cache, 0, larger, 0, cache.length);
+      cache = larger;
+    }
+    if (cache[handle] == null) {
+      cache[handle] = format(handle);
+    }
+    // Strings are immutable, so other threads may safely pick the new ids up
+    // late and compute them again under the lock.
+    ids = cache;
+    return cache[handle];
+  }
+
+  private static String format(int handle) {
+    char[] digits = new char[MAX_LENGTH];
+    int start = digits.length;
+    while (handle != 0) {
+      digits[--start] = (char) ('A' + handle % 26);
+      handle /= 26;
+    }
+    // There is no zero digit, the leading digit counts from A instead of B.
+    digits[start]--;
+    return new String(digits, start, digits.length - start);
+  }
+
+  /**
+   * Returns the handle of the node with the given id, or NONE if the string
+   * is not a node id.
+   *
+   * @param id
+   */
+  public static int parse(String id) {
+    if (id == null) {
+      return NONE;
+    }
+    int length = id.length();
+    if (length == 0 || length > MAX_LENGTH) {
+      return NONE;
+    }
+    long handle = 0;
+    for (int i = 0; i < length; i++) {
+      int digit = id.charAt(i) - 'A';
+      if (i == 0) {
+        digit++;
+      }
+      if (digit < 0 || digit > 25 || (i == 0 && digit == 0)) {
+        return NONE;
+      }
+      handle = handle * 26 + digit;
+    }
+    if (handle > Integer.MAX_VALUE) {
+      return NONE;
+    }
+    return (int) handle;
+  }
+}
@@ -4,8 +4,18 @@
 package dars;
 
 import dars.proto.*;
+import dars.proto.NodeFactory.NodeType;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * @author Kenny
@@ -13,12 +23,25 @@ import java.util.Iterator;
  */
 public class NodeStore  {
 
-// Hash map of nodes.
-private HashMap<String, Node> store = new HashMap<String, Node>();
+// Nodes indexed by handle, see NodeId. Handles are handed out in order and
+// are not reused until the simulation is cleared, so a deleted node leaves a
+// null behind.
+private Node[] store = new Node[64];
 
+// One past the highest handle in the store.
+private int limit = 0;
+
+// Uniform grid of nodes keyed by cell. Used to find the nodes that are close
+// to a given point without walking the whole store.
+private HashMap<Long, ArrayList<Node>> grid = new HashMap<Long, ArrayList<Node>>();
+
+// Smallest and largest cell coordinates that hold nodes. Worked out again
+// when a cell is emptied, the next time they are needed.
+private int minCellX, minCellY, maxCellX, maxCellY;
+private boolean boundsStale = true;
 
 public NodeAttributes getNodeAttributes(String nodeId) {
-   Node node = store.get(nodeId);
+   Node node = getNode(nodeId);
    
    if(node == null) {
      return null;
@@ -27,15 +50,30 @@ public NodeAttributes getNodeAttributes(String nodeId) {
 }
 
 public void clear() {
-   store.clear();
+   Arrays.fill(store, 0, limit, null);
+   limit = 0;
+   grid.clear();
+   boundsStale = true;
 }
 
 
 public Node getNode(String nodeId) {
-  return store.get(nodeId);
+  return getNode(NodeId.parse(nodeId));
   
 }
 
+/**
+ * Returns the node with the given handle, or null if there is none.
+ * 
+ * @param handle
+ */
+public Node getNode(int handle) {
+  if(handle <= 0 || handle >= limit) {
+    return null;
+  }
+  return store[handle];
+}
+
 /**
  * Function will be add a Node to the NodeStore.
  * 
@@ -47,7 +85,20 @@ public Node getNode(String nodeId) {
  */
 
 public void addNode(Node node) {
-      store.put(node.getAttributes().id, node);
+      put(node);
+      addToGrid(node);
+}
+
+private void put(Node node) {
+   int handle = node.getHandle();
+   if(handle == NodeId.NONE) {
+     throw new IllegalArgumentException("Not a node id: " + node.getAttributes().id);
+   }
+   if(handle >= store.length) {
+     store = Arrays.copyOf(store, Math.max(store.length * 2, handle + 1));
+   }
+   store[handle] = node;
+   limit = Math.max(limit, handle + 1);
 }
 
 /**
@@ -60,12 +111,389 @@ public void addNode(Node node) {
  * @param name
  */
 public boolean deleteNode(String id) {
-   return (store.remove(id) != null);
+   Node node = getNode(id);
+   if(node == null) {
+     return false;
+   }
+   store[node.getHandle()] = null;
+   removeFromGrid(node);
+   return true;
+}
+
+/**
+ * Move a node to new coordinates.
+ * 
+ * Nodes must be moved through the store so that the grid index stays in step
+ * with the node's attributes.
+ * 
+ * @param id
+ * @param x
+ * @param y
+ * @return false if the node does not exist.
+ */
+public boolean moveNode(String id, int x, int y) {
+   Node node = getNode(id);
+   if(node == null) {
+     return false;
+   }
+   removeFromGrid(node);
+   node.setXY(x, y);
+   addToGrid(node);
+   return true;
 }
 
-// Returns an iterator for all of the nodes in the store.
+/**
+ * Set the range of a node.
+ * 
+ * The grid is keyed on position only, so a range change does not move the
+ * node between cells. Range is applied at query time by getNodesNear.
+ * 
+ * @param id
+ * @param range
+ * @return false if the node does not exist.
+ */
+public boolean setNodeRange(String id, int range) {
+   Node node = getNode(id);
+   if(node == null) {
+     return false;
+   }
+   node.setRange(range);
+   return true;
+}
+
+// Returns an iterator for all of the nodes in the store, in the order they
+// were added.
 public Iterator<Node> getNodes() {
-   return store.values().iterator();
+   return new StoreIterator();
+}
+
+/**
+ * Returns an iterator over the nodes that may be within range of the given
+ * point.
+ * 
+ * Only the grid cells overlapping the square around (x, y) are visited, so
+ * the result is a superset of the nodes actually in range. Callers still have
+ * to check the distance. The cells are visited row by row whatever the range,
+ * so the nodes always come in the same order.
+ * 
+ * @param x
+ * @param y
+ * @param range
+ */
+public Iterator<Node> getNodesNear(int x, int y, int range) {
+   if(grid.isEmpty()) {
+     return Collections.<Node>emptyList().iterator();
+   }
+   updateBounds();
+
+   // Only the part of the square that holds nodes is of interest.
+   int minX = (int) Math.max(cellOf((long) x - range), minCellX);
+   int minY = (int) Math.max(cellOf((long) y - range), minCellY);
+   int maxX = (int) Math.min(cellOf((long) x + range), maxCellX);
+   int maxY = (int) Math.min(cellOf((long) y + range), maxCellY);
+   if(minX > maxX || minY > maxY) {
+     return Collections.<Node>emptyList().iterator();
+   }
+
+   // With a large range it is cheaper to go through the cells that hold
+   // nodes than to look up every cell of the square.
+   long cells = ((long) maxX - minX + 1) * ((long) maxY - minY + 1);
+   if(cells > grid.size()) {
+     return new CellListIterator(occupiedCells(minX, minY, maxX, maxY));
+   }
+   return new GridIterator(minX, minY, maxX, maxY);
+}
+
+private static long cellOf(long coord) {
+   return (long) Math.floor((double) coord / Defaults.GRID_CELL_SIZE);
+}
+
+private static int cellX(long key) {
+   return (int) (key >> 32);
+}
+
+private static int cellY(long key) {
+   return (int) key;
+}
+
+// Work out the bounds of the occupied cells if a cell has been emptied.
+private void updateBounds() {
+   if(!boundsStale) {
+     return;
+   }
+   minCellX = minCellY = Integer.MAX_VALUE;
+   maxCellX = maxCellY = Integer.MIN_VALUE;
+   for(Long key : grid.keySet()) {
+     extendBounds(cellX(key), cellY(key));
+   }
+   boundsStale = false;
+}
+
+private void extendBounds(int cx, int cy) {
+   minCellX = Math.min(minCellX, cx);
+   minCellY = Math.min(minCellY, cy);
+   maxCellX = Math.max(maxCellX, cx);
+   maxCellY = Math.max(maxCellY, cy);
+}
+
+// Returns the occupied cells of a rectangle of the grid, row by row.
+private ArrayList<ArrayList<Node>> occupiedCells(int minX, int minY, int maxX,
+    int maxY) {
+   ArrayList<Long> keys = new ArrayList<Long>();
+   for(Long key : grid.keySet()) {
+     int cx = cellX(key);
+     int cy = cellY(key);
+     if(cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+       keys.add(key);
+     }
+   }
+   Collections.sort(keys, ROW_ORDER);
+   ArrayList<ArrayList<Node>> cells = new ArrayList<ArrayList<Node>>(keys.size());
+   for(Long key : keys) {
+     cells.add(grid.get(key));
+   }
+   return cells;
+}
+
+// Orders cell keys row by row, as GridIterator visits the cells.
+private static final Comparator<Long> ROW_ORDER = new Comparator<Long>() {
+   public int compare(Long a, Long b) {
+     int ya = cellY(a);
+     int yb = cellY(b);
+     if(ya != yb) {
+       return ya < yb ? -1 : 1;
+     }
+     int xa = cellX(a);
+     int xb = cellX(b);
+     return xa < xb ? -1 : (xa == xb ? 0 : 1);
+   }
+};
+
+private static Long cellKey(int cx, int cy) {
+   return Long.valueOf(((long) cx << 32) | (cy & 0xffffffffL));
+}
+
+private void addToGrid(Node node) {
+   NodeAttributes att = node.getAttributes();
+   int cx = (int) cellOf(att.x);
+   int cy = (int) cellOf(att.y);
+   Long key = cellKey(cx, cy);
+   ArrayList<Node> cell = grid.get(key);
+   if(cell == null) {
+     cell = new ArrayList<Node>();
+     grid.put(key, cell);
+     if(!boundsStale) {
+       extendBounds(cx, cy);
+     }
+   }
+   cell.add(node);
+}
+
+private void removeFromGrid(Node node) {
+   NodeAttributes att = node.getAttributes();
+   Long key = cellKey((int) cellOf(att.x), (int) cellOf(att.y));
+   ArrayList<Node> cell = grid.get(key);
+   if(cell == null) {
+     return;
+   }
+   cell.remove(node);
+   if(cell.isEmpty()) {
+     grid.remove(key);
+     boundsStale = true;
+   }
+}
+
+/**
+ * Write the nodes for a snapshot of the simulation, see
+ * SimEngine.saveSnapshot(). The nodes are written in the order getNodes()
+ * walks them, each with its attributes and protocol state, followed by the
+ * order of the nodes in each grid cell.
+ * 
+ * @param out
+ */
+void writeTo(DataOutput out) throws IOException {
+   int count = 0;
+   for (int h = 0; h < limit; h++) {
+     if (store[h] != null) {
+       count++;
+     }
+   }
+   out.writeInt(count);
+   Iterator<Node> i = getNodes();
+   while (i.hasNext()) {
+     Node node = i.next();
+     NodeAttributes att = node.getAttributes();
+     Snapshot.writeString(out, att.id);
+     out.writeInt(att.x);
+     out.writeInt(att.y);
+     out.writeInt(att.range);
+     out.writeBoolean(att.isPromiscuous);
+     node.writeState(out);
+   }
+
+   out.writeInt(grid.size());
+   for (Map.Entry<Long, ArrayList<Node>> cell : grid.entrySet()) {
+     out.writeLong(cell.getKey());
+     out.writeInt(cell.getValue().size());
+     for (Node node : cell.getValue()) {
+       Snapshot.writeString(out, node.getAttributes().id);
+     }
+   }
+}
+
+/**
+ * Replace the nodes with the ones written by writeTo().
+ * 
+ * @param in
+ * @param type
+ *          the type of the nodes.
+ */
+void readFrom(DataInput in, NodeType type) throws IOException {
+   clear();
+   int count = in.readInt();
+   for (int i = 0; i < count; i++) {
+     NodeAttributes att = new NodeAttributes(Snapshot.readString(in),
+         in.readInt(), in.readInt(), in.readInt(), in.readBoolean());
+     Node node = NodeFactory.makeNewNode(type, att);
+     if (node == null) {
+       throw new IOException("Snapshot has nodes of an unknown type.");
+     }
+     node.readState(in);
+     if (node.getHandle() == NodeId.NONE) {
+       throw new IOException("Snapshot has a node with a bad id " + att.id);
+     }
+     put(node);
+   }
+
+   grid = new HashMap<Long, ArrayList<Node>>();
+   boundsStale = true;
+   int cells = in.readInt();
+   for (int i = 0; i < cells; i++) {
+     Long key = Long.valueOf(in.readLong());
+     int size = in.readInt();
+     if (size < 0) {
+       throw new IOException("Snapshot has a bad grid cell.");
+     }
+     ArrayList<Node> cell = new ArrayList<Node>(Math.min(size, 16));
+     for (int j = 0; j < size; j++) {
+       cell.add(readNode(in));
+     }
+     grid.put(key, cell);
+   }
+}
+
+/**
+ * Read a node ID and return the node, which must be in the store.
+ * 
+ * @param in
+ */
+Node readNode(DataInput in) throws IOException {
+   String id = Snapshot.readString(in);
+   Node node = getNode(id);
+   if (node == null) {
+     throw new IOException("Snapshot refers to a missing node " + id);
+   }
+   return node;
+}
+
+// Walks the store in handle order, skipping deleted nodes.
+private class StoreIterator implements Iterator<Node> {
+   private int next = 0;
+
+   public boolean hasNext() {
+     while(next < limit && store[next] == null) {
+       next++;
+     }
+     return next < limit;
+   }
+
+   public Node next() {
+     if(!hasNext()) {
+       throw new NoSuchElementException();
+     }
+     return store[next++];
+   }
+
+   public void remove() {
+     throw new UnsupportedOperationException();
+   }
+}
+
+// Walks the cells of a rectangle of the grid, row by row.
+private class GridIterator implements Iterator<Node> {
+   private final int minX, maxX, maxY;
+   private int cx, cy;
+   private ArrayList<Node> cell;
+   private int idx;
+
+   GridIterator(int minX, int minY, int maxX, int maxY) {
+     this.minX = minX;
+     this.maxX = maxX;
+     this.maxY = maxY;
+     this.cx = minX - 1;
+     this.cy = minY;
+   }
+
+   public boolean hasNext() {
+     while(cell == null || idx >= cell.size()) {
+       cx++;
+       if(cx > maxX) {
+         cx = minX;
+         cy++;
+       }
+       if(cy > maxY) {
+         return false;
+       }
+       cell = grid.get(cellKey(cx, cy));
+       idx = 0;
+     }
+     return true;
+   }
+
+   public Node next() {
+     if(!hasNext()) {
+       throw new NoSuchElementException();
+     }
+     return cell.get(idx++);
+   }
+
+   public void remove() {
+     throw new UnsupportedOperationException();
+   }
+}
+
+// Walks the nodes of a list of cells.
+private static class CellListIterator implements Iterator<Node> {
+   private final ArrayList<ArrayList<Node>> cells;
+   private int next = 0;
+   private ArrayList<Node> cell;
+   private int idx;
+
+   CellListIterator(ArrayList<ArrayList<Node>> cells) {
+     this.cells = cells;
+   }
+
+   public boolean hasNext() {
+     while(cell == null || idx >= cell.size()) {
+       if(next >= cells.size()) {
+         return false;
+       }
+       cell = cells.get(next++);
+       idx = 0;
+     }
+     return true;
+   }
+
+   public Node next() {
+     if(!hasNext()) {
+       throw new NoSuchElementException();
+     }
+     return cell.get(idx++);
+   }
+
+   public void remove() {
+     throw new UnsupportedOperationException();
+   }
 }
 
 
@@ -3,6 +3,7 @@
  */
 package dars;
 
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -20,17 +21,76 @@ public class OutputHandler {
 
   public static void removeOutputConsumer(OutputConsumer c) {
     consumers.remove(c);
+    
+    // Also stop any asynchronous wrapper around the consumer.
+    for (OutputConsumer o : consumers) {
+      if (o instanceof AsyncOutputConsumer
+          && ((AsyncOutputConsumer) o).getTarget() == c) {
+        consumers.remove(o);
+        ((AsyncOutputConsumer) o).shutdown();
+      }
+    }
   }
 
   public static void addOutputConsumer(OutputConsumer c) {
     consumers.add(c);
   }
+  
+  /**
+   * Add a consumer that is fed on its own thread, so that dispatching an
+   * event never waits for it.
+   * 
+   * @param c
+   *          the consumer.
+   * @param capacity
+   *          number of events that can be waiting for the consumer.
+   * @param backpressure
+   *          what to do with new events when that many are waiting.
+   * 
+   * @return the wrapper that feeds the consumer. It can be registered as an
+   *         input consumer as well, and reports how far behind the consumer
+   *         is.
+   */
+  public static AsyncOutputConsumer addAsyncOutputConsumer(OutputConsumer c,
+      int capacity, AsyncOutputConsumer.Backpressure backpressure) {
+    AsyncOutputConsumer a = new AsyncOutputConsumer(c, capacity, backpressure);
+    consumers.add(a);
+    return a;
+  }
+  
+  /**
+   * Wait until every asynchronous consumer has consumed the events
+   * dispatched so far.
+   */
+  public static void drain() {
+    for (OutputConsumer c : consumers) {
+      if (c instanceof AsyncOutputConsumer) {
+        ((AsyncOutputConsumer) c).drain();
+      }
+    }
+  }
+
+  /**
+   * Returns whether an event of the given type would reach any consumer.
+   * Check this before building an event whose arguments are costly, so
+   * that filtered events cost next to nothing.
+   */
+  public static boolean isEnabled(DARSEvent.EventType eType) {
+    return !consumers.isEmpty() && !filteredEvents.contains(eType);
+  }
 
   public static void dispatch(DARSEvent e) {
     //Apply event filter
     if(filteredEvents.contains(e.eventType)) {
       return;
     }
+    
+    //If this thread is capturing events, hold on to the event instead
+    List<DARSEvent> capture = captured.get();
+    if(capture != null) {
+      capture.add(e);
+      return;
+    }
     for (OutputConsumer c : consumers) {
       c.consumeOutput(e);
     }
@@ -44,5 +104,22 @@ public class OutputHandler {
   public static void removeFilteredEvent(DARSEvent.EventType eType) {
     filteredEvents.remove(eType);
   }
+  
+  // Per thread event capture. Used by the parallel clock tick so that events
+  // raised on worker threads can be dispatched later in a fixed order.
+  private static final ThreadLocal<List<DARSEvent>> captured = new ThreadLocal<List<DARSEvent>>();
+  
+  /**
+   * Capture the events dispatched by the current thread into the given list
+   * instead of handing them to the consumers, until releaseEvents is called.
+   * Filtered events are still dropped.
+   */
+  public static void captureEvents(List<DARSEvent> buffer) {
+    captured.set(buffer);
+  }
+  
+  public static void releaseEvents() {
+    captured.remove();
+  }
 
 }
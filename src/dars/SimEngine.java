@@ -1,9 +1,23 @@
 package dars;
 
-import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.JDialog;
 
@@ -20,15 +34,25 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
   /**
    * Time to wait for an iteration.
    */
-  private int                 WAIT_TIME    = 10;
-  private boolean             KILL_THREAD  = false;
+  private volatile int        WAIT_TIME    = 10;
+  private volatile boolean    KILL_THREAD  = false;
+  private volatile RunMode    runMode      = RunMode.PACED;
   NodeStore                   store        = new NodeStore();
+  NeighborCache               neighbors    = new NeighborCache(store);
   Queue<Message>              messageQueue = new LinkedList<Message>();
   Queue<Message>              newMessages  = new LinkedList<Message>();
   MessageRelay                thread       = new MessageRelay();
   static public Object        lock         = new Object();
   private volatile boolean    paused,throwPause;
   private volatile long       simTime      = 0;
+  private final TickProfiler  profiler     = new TickProfiler();
+  // Messages handed to nodes in the current quantum, for the profiler.
+  private int                 delivered    = 0;
+
+  public SimEngine() {
+    setParallelTick(Defaults.PARALLEL_TICK);
+    profiler.setEnabled(Defaults.PROFILE);
+  }
 
   /**
    * Function that will start a simulation
@@ -66,7 +90,7 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
    * 
    * @param speed
    *          (int) The time in seconds that a simulation should pause between
-   *          ticks.
+   *          ticks. 0 runs the simulation without any pause.
    */
   void setSimSpeed(int speed) {
     WAIT_TIME = speed;
@@ -128,64 +152,230 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
     return WAIT_TIME;
   }
 
+  /**
+   * How the message relay thread spaces out the quanta.
+   * 
+   * PACED runs one quantum every getQuantumPeriod() nanoseconds, scheduled
+   * against System.nanoTime so the rate does not drift with the cost of the
+   * quanta themselves. UNTHROTTLED runs the quanta back to back without
+   * sleeping, for offline runs.
+   */
+  public enum RunMode { PACED, UNTHROTTLED };
+
+  public void setRunMode(RunMode mode) {
+    runMode = mode;
+  }
+
+  public RunMode getRunMode() {
+    return runMode;
+  }
+
+  /**
+   * Returns the time between two quanta in paced mode, in nanoseconds, or 0
+   * if the quanta are not paced. A quantum lasts 100 times the sim speed in
+   * milliseconds, as it always has. A sim speed of 0 runs unthrottled.
+   */
+  public long getQuantumPeriod() {
+    if (runMode == RunMode.UNTHROTTLED || WAIT_TIME <= 0) {
+      return 0;
+    }
+    return WAIT_TIME * 100L * 1000000L;
+  }
+
+  // Longest single sleep of the relay thread, so that pausing, stopping and
+  // speed changes are noticed quickly even when quanta are far apart.
+  private static final long MAX_SLEEP_NANOS = 10 * 1000000L;
+
   class MessageRelay extends Thread {
-    int iterationCount = 0;
 
     public void run() {
       
+      // Time the next quantum is due.
+      long deadline = System.nanoTime() + getQuantumPeriod();
+      
       // Make sure the kill switch hasn't been thrown.
       while (KILL_THREAD == false) {
 
-        iterationCount++;
-        
         if(throwPause) {
           OutputHandler.dispatch(DARSEvent.outPauseSim());
           throwPause = false;
           paused = true;
         }
-        // Only attempt to enter the critical area every 100th try
-        if (iterationCount == 100) {
-          // Reset the iterationCount after the 100th try
-          iterationCount = 0;
-
-          if (paused == false) {
-            
-            //Increment sim time
-            simTime++;
-            
-            //Begin a new quantum
-            OutputHandler.dispatch(DARSEvent.outQuantumElapsed());
-            
-            //Check if the kill switch was thrown as a result of the event
-            if(KILL_THREAD) {
+        
+        if (paused) {
+          // Start a whole new period once resumed.
+          if (!sleepNanos(MAX_SLEEP_NANOS)) {
+            break;
+          }
+          deadline = System.nanoTime() + getQuantumPeriod();
+          continue;
+        }
+        
+        long period = getQuantumPeriod();
+        if (period > 0) {
+          // The deadline is one period after the previous one. Pull it in
+          // if the speed was raised while waiting.
+          long remaining = deadline - System.nanoTime();
+          if (remaining > period) {
+            deadline = System.nanoTime() + period;
+            remaining = period;
+          }
+          if (remaining > 0) {
+            if (!sleepNanos(Math.min(remaining, MAX_SLEEP_NANOS))) {
               break;
             }
-            
-            // Enter the critical area for the simulation
-            //////////////////////////////////////////////////////
-            synchronized (lock) {
-              MainLoop();
-            }
+            continue;
           }
         }
+
+        //Run the quantum. Stop if the kill switch was thrown as a
+        //result of the quantum elapsed event.
+        if(!runQuantum()) {
+          break;
+        }
+        
+        // Schedule the next quantum relative to this one's deadline so the
+        // time spent running it is not added to the period. If the
+        // simulation has fallen more than a period behind, don't try to
+        // catch up with a burst of quanta.
+        long now = System.nanoTime();
+        deadline += period;
+        if (now - deadline > period) {
+          deadline = now;
+        }
+      }
+    }
+    
+    /**
+     * Sleep for the given time.
+     * 
+     * @return false if the thread was interrupted, in which case the relay
+     *         stops. The interrupt flag is set again for the caller.
+     */
+    private boolean sleepNanos(long nanos) {
+      try {
+        Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Run a single quantum of the simulation.
+   * 
+   * Advances the simulation time, announces the new quantum to the output
+   * consumers and runs the main loop. The message relay thread calls this on
+   * every tick; it can also be called directly to drive the simulation
+   * without the thread or any delay between quanta.
+   * 
+   * @return false if the simulation was stopped as a result of the quantum
+   *         elapsed event, in which case the main loop is not run.
+   */
+  public boolean runQuantum() {
+    //Increment sim time
+    simTime++;
+    
+    //Begin a new quantum
+    OutputHandler.dispatch(DARSEvent.outQuantumElapsed());
+    
+    //Check if the kill switch was thrown as a result of the event
+    if(KILL_THREAD) {
+      return false;
+    }
+    
+    // Enter the critical area for the simulation
+    //////////////////////////////////////////////////////
+    synchronized (lock) {
+      if (!profiler.isEnabled()) {
+        MainLoop();
+      } else {
+        long locked = System.nanoTime();
         try {
-          Thread.sleep(WAIT_TIME);
-        } catch (InterruptedException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
+          MainLoop();
+        } finally {
+          profiler.record(TickProfiler.Metric.LOCK_HOLD_NANOS, System.nanoTime() - locked);
         }
       }
     }
+    return true;
   }
 
   public void MainLoop() {
-    Node node = null;
-    Message message = null;
-    Iterator<Node> i;
+    if (!profiler.isEnabled()) {
+      injectNewMessages();
+      deliverMessages();
+      tickNodes();
+      collectMessages();
+      return;
+    }
+
+    // Time each phase. The node queues are looked at between the phases,
+    // outside the times.
+    long start = System.nanoTime();
+    injectNewMessages();
+    long injected = System.nanoTime();
+    profiler.record(TickProfiler.Metric.MESSAGE_QUEUE, messageQueue.size());
+    delivered = 0;
+    long deliverStart = System.nanoTime();
+    deliverMessages();
+    long deliverEnd = System.nanoTime();
+    profiler.record(TickProfiler.Metric.MESSAGES_DELIVERED, delivered);
+    recordNodeQueues(true);
+    long tickStart = System.nanoTime();
+    tickNodes();
+    long tickEnd = System.nanoTime();
+    recordNodeQueues(false);
+    long collectStart = System.nanoTime();
+    collectMessages();
+    long collectEnd = System.nanoTime();
+
+    long inject = injected - start;
+    long deliver = deliverEnd - deliverStart;
+    long tick = tickEnd - tickStart;
+    long collect = collectEnd - collectStart;
+    profiler.record(TickProfiler.Metric.INJECT_NANOS, inject);
+    profiler.record(TickProfiler.Metric.DELIVER_NANOS, deliver);
+    profiler.record(TickProfiler.Metric.TICK_NANOS, tick);
+    profiler.record(TickProfiler.Metric.COLLECT_NANOS, collect);
+    profiler.record(TickProfiler.Metric.QUANTUM_NANOS, inject + deliver + tick + collect);
+    profiler.quantumProfiled();
+  }
+
+  /**
+   * Record the length of the queues of every node, the receive queues
+   * before the tick or the transmit and wait queues after it.
+   */
+  private void recordNodeQueues(boolean beforeTick) {
+    Iterator<Node> i = store.getNodes();
+    while (i.hasNext()) {
+      Node node = i.next();
+      if (beforeTick) {
+        profiler.record(TickProfiler.Metric.RX_QUEUE, node.getQueueLength(Node.QueueType.RECEIVE));
+      } else {
+        profiler.record(TickProfiler.Metric.TX_QUEUE, node.getQueueLength(Node.QueueType.TRANSMIT));
+        profiler.record(TickProfiler.Metric.WAIT_QUEUE, node.getQueueLength(Node.QueueType.WAIT));
+      }
+    }
+  }
+
+  /**
+   * Returns the profiler of the engine's quanta, which is disabled unless
+   * Defaults.PROFILE is set.
+   */
+  public TickProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * If there are any messages in the newMessage Q, introduce them into the
+   * network.
+   */
+  protected void injectNewMessages() {
     Iterator<Message> mi;
    
-    // If there are any messages in the newMessage Q, introduce them
-    // into the network.
     mi = newMessages.iterator();
     while(mi.hasNext()) {
       //Get the ref to the message
@@ -195,48 +385,65 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
       mi.remove();
       
       //Get the node
-      Node n = store.getNode(m.originId);
+      Node n = store.getNode(m.getOriginHandle());
       if(n == null) {
         continue;
         
       }
       //Introduce the message into the network
-      n.newNarrativeMessage(m.originId, m.destinationId, m.message);
+      nodeInput(n);
+      n.newNarrativeMessage(m.originId, m.destinationId, m.getMessage());
     }
+  }
     
-    
-    // If there are messages in the messageQueue try to attempt delivery.
+  /**
+   * If there are messages in the messageQueue try to attempt delivery.
+   */
+  protected void deliverMessages() {
+    Message message = null;
+
     while (messageQueue.isEmpty() == false) {
       message = messageQueue.poll();
 
       // If the message is a broadcast then try to send to everyone
       if (message.destinationId == Message.BCAST_STRING) {  
         
-        i = store.getNodes();
-        while(i.hasNext()) {
-          node = i.next();
-          //if the node is null, it was deleted, continue
-          if (node == null)
-            continue;
-          
-          // Only allow the nodes in range to hear the broadcast.
-          if (canCommunicate(message.originId, node.getAttributes().id) && message.originId != node.getAttributes().id) {
-            node.messageToNode(message);
-          }
+        // Only the nodes in range hear the broadcast. The neighbor cache
+        // already excludes the sender.
+        int fanout = 0;
+        for (Node neighbor : neighbors.getNeighbors(message.getOriginHandle())) {
+          deliver(neighbor, message);
+          fanout++;
+        }
+        delivered += fanout;
+        if (profiler.isEnabled()) {
+          profiler.record(TickProfiler.Metric.BROADCAST_FANOUT, fanout);
         }
         // Else if the messageQueue is not a broadcast try to send it to the
         // destination id.
       } else {
-        if (canCommunicate(message.originId, message.destinationId)) {
+        if (neighbors.areNeighbors(message.getOriginHandle(), message.getDestinationHandle())) {
           // SAK - Send the message to the destination node.
-          store.getNode(message.destinationId).messageToNode(message);
+          Node destination = store.getNode(message.getDestinationHandle());
+          deliver(destination, message);
+          delivered++;
         }
       }
     }
+  }
 
-    // Issue a clock tick to each node so that they can make algorithmic
-    // decisions.
-    i = store.getNodes();
+  /**
+   * Issue a clock tick to each node so that they can make algorithmic
+   * decisions.
+   */
+  protected void tickNodes() {
+    if (parallelTick) {
+      tickNodesInParallel();
+      return;
+    }
+
+    Node node = null;
+    Iterator<Node> i = store.getNodes();
     while(i.hasNext()) {
       // / Issue a clock tick to each node
       node = i.next();
@@ -244,10 +451,16 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
         continue;
       node.clockTick();
     }
+  }
 
-    // Check each node for messages waiting to be sent and gather them up
-    // to be stored in our message queue.
-    i = store.getNodes();
+  /**
+   * Check each node for messages waiting to be sent and gather them up to be
+   * stored in our message queue.
+   */
+  protected void collectMessages() {
+    Node node = null;
+    Message message = null;
+    Iterator<Node> i = store.getNodes();
     while(i.hasNext()) {
       node = i.next();
       // Gather all the messages from each node.
@@ -258,6 +471,161 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
     
   }
 
+  /**
+   * Hand a message to a node during the delivery phase of a quantum.
+   * ThreadedEngine hands it over on the node's own thread instead.
+   * 
+   * @param node
+   * @param message
+   */
+  protected void deliver(Node node, Message message) {
+    nodeInput(node);
+    node.messageToNode(message);
+  }
+
+  /**
+   * Called before a message is handed to a node during a quantum, before the
+   * clock tick. Every node is ticked every quantum here, so there is nothing
+   * to do; see EventEngine.
+   * 
+   * @param node
+   */
+  protected void nodeInput(Node node) {
+  }
+
+  /**
+   * Called when a node joins the simulation, either added or restored from
+   * a snapshot.
+   * 
+   * @param node
+   */
+  protected void nodeAdded(Node node) {
+  }
+
+  /**
+   * Called when a node is deleted from the simulation.
+   * 
+   * @param node
+   */
+  protected void nodeDeleted(Node node) {
+  }
+
+  /**
+   * Called once a new simulation is set up or a snapshot is restored, before
+   * nodeAdded() is called for the restored nodes.
+   */
+  protected void simulationReset() {
+  }
+
+  /**
+   * Called before the state of a node is looked at between quanta, for a
+   * node dialog or a snapshot.
+   * 
+   * @param node
+   */
+  protected void syncNode(Node node) {
+  }
+
+  /**
+   * Parallel clock tick.
+   * 
+   * Within a quantum a node only touches its own queues and route table, so
+   * the ticks can run on the fork-join pool. The only shared thing a node
+   * does during its tick is dispatch output events. Those are captured per
+   * node and dispatched afterwards in store order, so consumers see exactly
+   * the sequence of events the serial tick would have produced.
+   */
+  private void tickNodesInParallel() {
+    // Snapshot the nodes in the same order the serial tick would visit them.
+    int count = 0;
+    Iterator<Node> i = store.getNodes();
+    while (i.hasNext()) {
+      Node node = i.next();
+      if (node == null)
+        continue;
+      if (count == tickNodes.length) {
+        tickNodes = Arrays.copyOf(tickNodes, count * 2);
+        tickEvents = Arrays.copyOf(tickEvents, count * 2);
+      }
+      tickNodes[count] = node;
+      if (tickEvents[count] == null) {
+        tickEvents[count] = new ArrayList<DARSEvent>();
+      }
+      count++;
+    }
+
+    tickPool.invoke(new TickTask(0, count));
+
+    // Replay the captured events in node order.
+    for (int k = 0; k < count; k++) {
+      ArrayList<DARSEvent> events = tickEvents[k];
+      for (int j = 0; j < events.size(); j++) {
+        OutputHandler.dispatch(events.get(j));
+      }
+      events.clear();
+      tickNodes[k] = null;
+    }
+  }
+
+  // Ticks a slice of tickNodes, splitting it until it is small enough.
+  private class TickTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int from, to;
+
+    TickTask(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > Defaults.PARALLEL_TICK_GRAIN) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new TickTask(from, mid), new TickTask(mid, to));
+        return;
+      }
+      for (int k = from; k < to; k++) {
+        OutputHandler.captureEvents(tickEvents[k]);
+        try {
+          tickNodes[k].clockTick();
+        } finally {
+          OutputHandler.releaseEvents();
+        }
+      }
+    }
+  }
+
+  /**
+   * Turn the parallel clock tick on or off.
+   * 
+   * When on, the clock tick phase of each quantum is spread over a fork-join
+   * pool sized to the number of processors. Message delivery and collection
+   * stay serial, and the output of a run is the same as in serial mode.
+   * 
+   * @param parallel
+   */
+  public void setParallelTick(boolean parallel) {
+    synchronized (lock) {
+      if (parallel && tickPool == null) {
+        tickPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      } else if (!parallel && tickPool != null) {
+        tickPool.shutdown();
+        tickPool = null;
+      }
+      parallelTick = parallel;
+    }
+  }
+
+  public boolean isParallelTick() {
+    return parallelTick;
+  }
+
+  private volatile boolean      parallelTick = false;
+  private ForkJoinPool          tickPool;
+  private Node[]                tickNodes    = new Node[16];
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private ArrayList<DARSEvent>[] tickEvents  = new ArrayList[16];
+
   /**
    * This function will provide a way to determine the type of even that is
    * issued and make a decision as to what to do with the event.
@@ -313,6 +681,8 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
 
         // Add it to the node store
         store.addNode(n);
+        neighbors.invalidate(n);
+        nodeAdded(n);
 
         // Dispatch an output event indicating a new node has entered
         // the network.
@@ -320,7 +690,10 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
       	break;
       	
       case IN_DEL_NODE:
-        if(store.deleteNode(e.nodeId)) { 
+        n = store.getNode(e.nodeId);
+        if(n != null && store.deleteNode(e.nodeId)) { 
+          neighbors.nodeDeleted(n);
+          nodeDeleted(n);
           OutputHandler.dispatch(DARSEvent.outDeleteNode(e.nodeId));
         }
         else {
@@ -329,15 +702,12 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
         break;
         
       case IN_SET_NODE_RANGE:
-        // Get the node
-        n = store.getNode(e.nodeId);
-        if(n==null) {
+        // Set the new range
+        if(!store.setNodeRange(e.nodeId, e.nodeRange)) {
           OutputHandler.dispatch(DARSEvent.outError("Could not set range for node " + e.nodeId + ", node does not exist"));
           return;
         }
-        
-        // Set the new range
-        n.setRange(e.nodeRange);
+        neighbors.invalidate(store.getNode(e.nodeId));
         OutputHandler.dispatch(DARSEvent.outSetNodeRange(e.nodeId, e.nodeRange));
         break;
         
@@ -356,6 +726,7 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
       case IN_CLEAR_SIM:
         //Clear the simulation
         clearSim();
+        simulationReset();
         
         //Indicate to output consumers that the simulation
         //has been cleared.
@@ -368,6 +739,7 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
         
         //Reset the current quantum
         simTime = 0;
+        simulationReset();
         
         //Set the sim type
         setNodeType(e.nodeType);
@@ -380,16 +752,12 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
         break;
         
       case IN_MOVE_NODE:
-        // Get the node
-        n = store.getNode(e.nodeId);
-        
-        if(n == null) {
+        // Set the new coords. The store keeps its grid index up to date.
+        if(!store.moveNode(e.nodeId, e.nodeX, e.nodeY)) {
           OutputHandler.dispatch(DARSEvent.outError("Could not move node " + e.nodeId + ", node does not exist"));
           return;
         }
-        
-        // Set the new coords
-        n.setXY(e.nodeX, e.nodeY);
+        neighbors.invalidate(store.getNode(e.nodeId));
         
         // Dispatch the moved event
         OutputHandler.dispatch(DARSEvent.outMoveNode(e.nodeId, e.nodeX, e.nodeY));
@@ -401,6 +769,12 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
           OutputHandler.dispatch(DARSEvent.outError("Could not insert a new message into the network, originating node " + e.nodeId + " does not exist"));
         }
         
+        // Only node ids can be routed to, see NodeId
+        if (NodeId.parse(e.destinationId) == NodeId.NONE) {
+          OutputHandler.dispatch(DARSEvent.outError("Could not insert a new message into the network, " + e.destinationId + " is not a node id"));
+          break;
+        }
+
         // Add the message to the newMessages Q
         Message m = new Message(e.destinationId,e.sourceId, e.transmittedMessage);
         newMessages.add(m);
@@ -434,85 +808,176 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
    * 
    * The algorithm used is a modified version of the convert decimal to hex
    * algorithm (or any other digit). It cheats a bit because there is no "zero"
-   * digit in the ID assigning scheme (Just A-Z).
+   * digit in the ID assigning scheme (Just A-Z). See NodeId, which also maps
+   * the ids back to the sequence numbers the engine uses as node handles.
    * 
    * @ author Mike
    * 
    */
   private String assignNodeId() {
-    // Assign a three character ID from A-Z
-    //
-    
-    // increment the id
+    // increment the id. It is also the handle of the node, see NodeId.
     currId++;
     
-    int charA = (int) 'A';
-    int totalChars = 26;
-    String ret = "";
-
-    int remainder;
-    int quotient = currId;
-    int count = 0;
-    
-    
-    while (quotient != 0) {
-      // Divide the digit by our alphabet size. The remainder is the digit for
-      // this place.
-      remainder = quotient % totalChars;
-      quotient = quotient / totalChars;
-
-      // Convert the digit to its representation (A-Z)
+    return NodeId.toString(currId);
+  }
 
-      char c;
-      c = (char) (remainder + charA);
+  private int currId = 0;
 
-      count++;
-      // Prepend the return string
-      ret = c + ret;
+  /**
+   * Returns the ids of the nodes that are within communication range of the
+   * given node. The list is a copy and may be freely modified by the caller.
+   * 
+   * @param nodeId
+   * 
+   * @return List of neighbor ids, empty if the node does not exist.
+   */
+  public List<String> getNeighbors(String nodeId) {
+    synchronized (lock) {
+      return neighbors.getNeighborIds(nodeId);
     }
-    
-    //decrement the first char of the ID
-    char f = ret.charAt(0);
-    f--;
-    ret = f + ret.substring(1);
-    
-
+  }
 
-    return ret;
+  /**
+   * Returns the number of entries in the route table of each node, see
+   * Node.getRouteCount(). The counts are taken between quanta.
+   *
+   * @return one count per node, in no particular order.
+   */
+  public int[] getRouteCounts() {
+    synchronized (lock) {
+      int[] counts = new int[64];
+      int n = 0;
+      Iterator<Node> i = store.getNodes();
+      while (i.hasNext()) {
+        if (n == counts.length) {
+          counts = Arrays.copyOf(counts, n * 2);
+        }
+        counts[n++] = i.next().getRouteCount();
+      }
+      return Arrays.copyOf(counts, n);
+    }
   }
 
-  private int currId = 0;
+  /**
+   * Save the state of the simulation to a file.
+   * 
+   * The snapshot holds everything the simulation needs to carry on from the
+   * current quantum: the time, the node type, the node ID sequence, every
+   * node with its protocol state (see Node.writeState()), the neighbor cache
+   * and the messages in flight. It is written between quanta, so a running
+   * simulation waits for it. The file is gzipped DataOutput; see Snapshot.
+   * 
+   * A simulation restored from the snapshot with restoreSnapshot() produces
+   * the same events from then on as this one does.
+   * 
+   * @param path
+   * 
+   * @throws IOException
+   */
+  public void saveSnapshot(String path) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(new FileOutputStream(path))));
+    try {
+      synchronized (lock) {
+        out.write(Snapshot.MAGIC);
+        out.writeInt(Snapshot.VERSION);
+        Snapshot.writeString(out, nodeType == null ? null : nodeType.name());
+        out.writeLong(simTime);
+        out.writeInt(currId);
+        out.writeInt(WAIT_TIME);
+        Iterator<Node> i = store.getNodes();
+        while (i.hasNext()) {
+          syncNode(i.next());
+        }
+        store.writeTo(out);
+        neighbors.writeTo(out);
+        Snapshot.writeMessages(out, messageQueue);
+        Snapshot.writeMessages(out, newMessages);
+      }
+    } finally {
+      out.close();
+    }
+  }
 
   /**
-   * This method is used for determining if a can send a message to antoher node
+   * Replace the simulation with one saved by saveSnapshot().
+   * 
+   * The output consumers are told about it the same way as about a new
+   * simulation: a new sim event for the saved node type, then an add node
+   * event for every node. The simulation is not started; it carries on from
+   * the saved quantum when runQuantum() is called or the simulation is
+   * resumed.
    * 
-   * @param node1
-   * @param node2
+   * @param path
    * 
-   * @return boolean
+   * @throws IOException
+   *           if the file can not be read or is not a snapshot, in which
+   *           case the simulation is left as it was, or if the snapshot is
+   *           damaged, in which case the simulation is left cleared.
    */
-    private Point point1 = new Point();
-    private boolean canCommunicate(String OriginID, String DestinationID) {
-    NodeAttributes originAtt = store.getNodeAttributes(OriginID);
-    NodeAttributes destinationAtt = store.getNodeAttributes(DestinationID);
-    
-    //Nodes that don't exist can't communicate; return false.
-    if(originAtt == null || destinationAtt == null ) {
-      return false;
+  public void restoreSnapshot(String path) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(path))));
+    try {
+      // Check the header before the simulation is touched.
+      for (int i = 0; i < Snapshot.MAGIC.length; i++) {
+        if (in.readByte() != Snapshot.MAGIC[i]) {
+          throw new IOException(path + " is not a DARS snapshot.");
+        }
+      }
+      if (in.readInt() != Snapshot.VERSION) {
+        throw new IOException(path + " was saved by another version of DARS.");
+      }
+      String type = Snapshot.readString(in);
+      NodeType savedType;
+      try {
+        savedType = type == null ? null : NodeType.valueOf(type);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Unknown node type " + type + " in " + path);
+      }
+
+      synchronized (lock) {
+        clearSim();
+        boolean restored = false;
+        try {
+          nodeType = savedType;
+          simTime = in.readLong();
+          currId = in.readInt();
+          WAIT_TIME = in.readInt();
+          store.readFrom(in, nodeType);
+          neighbors.readFrom(in);
+          Snapshot.readMessages(in, messageQueue);
+          Snapshot.readMessages(in, newMessages);
+          restored = true;
+        } catch (EOFException e) {
+          throw new IOException(path + " is damaged.", e);
+        } finally {
+          if (!restored) {
+            // Leave the simulation cleared, as IN_CLEAR_SIM does.
+            clearSim();
+            simulationReset();
+            OutputHandler.dispatch(DARSEvent.outClearSim());
+          }
+        }
+        simulationReset();
+
+        OutputHandler.dispatch(DARSEvent.outNewSim(nodeType));
+        Iterator<Node> i = store.getNodes();
+        while (i.hasNext()) {
+          Node node = i.next();
+          nodeAdded(node);
+          OutputHandler.dispatch(DARSEvent.outAddNode(node.getAttributes()));
+        }
+      }
+    } finally {
+      in.close();
     }
-    point1.x = originAtt.x;
-    point1.y = originAtt.y;
-    
-    double distance = point1.distance(destinationAtt.x, destinationAtt.y);
-    if (distance > originAtt.range || distance > destinationAtt.range) {
-      return false;
-    } else
-      return true;
   }
-  
+
   private void clearSim() {
     // remove all nodes from the node Store
     store.clear(); 
+    neighbors.clear();
     
     //remove all messages from the queues
     messageQueue.clear();
@@ -529,6 +994,7 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
       if (node == null) {
         return null;
       }
+      syncNode(node);
       return node.getNodeDialog();
     }
   }
@@ -540,6 +1006,7 @@ public class SimEngine implements InputConsumer, SimulationTimeKeeper, NodeInspe
       if (node == null) {
         return;
       }
+      syncNode(node);
       node.updateNodeDialog(dialog);
     }
   }
@@ -0,0 +1,72 @@
+package dars;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Helpers for writing and reading simulation snapshots, see
+ * SimEngine.saveSnapshot().
+ *
+ * A snapshot has to bring the simulation back exactly as it was, down to the
+ * order in which nodes are ticked and route tables are walked, so that a
+ * restored simulation goes on to produce the same events as the original.
+ */
+public final class Snapshot {
+
+  public static final byte[] MAGIC   = { 'D', 'A', 'R', 'S', 'S', 'N', 'A', 'P' };
+  public static final int    VERSION = 3;
+
+  private Snapshot() {
+  }
+
+  /**
+   * Write a string that may be null.
+   */
+  public static void writeString(DataOutput out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(s.length());
+    out.writeChars(s);
+  }
+
+  public static String readString(DataInput in) throws IOException {
+    int len = in.readInt();
+    if (len < 0) {
+      return null;
+    }
+    // The buffer grows with what is actually read, so a damaged length runs
+    // into the end of the file instead of allocating that much up front.
+    StringBuilder sb = new StringBuilder(Math.min(len, 256));
+    for (int i = 0; i < len; i++) {
+      sb.append(in.readChar());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Write a queue or list of messages, in order.
+   */
+  public static void writeMessages(DataOutput out, Collection<Message> messages)
+      throws IOException {
+    out.writeInt(messages.size());
+    for (Message m : messages) {
+      m.writeTo(out);
+    }
+  }
+
+  /**
+   * Read messages written by writeMessages() and add them to the given
+   * queue or list.
+   */
+  public static void readMessages(DataInput in, Collection<Message> messages)
+      throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      messages.add(Message.readFrom(in));
+    }
+  }
+}
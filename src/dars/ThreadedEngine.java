@@ -0,0 +1,351 @@
+package dars;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Phaser;
+
+import dars.event.DARSEvent;
+import dars.proto.Node;
+
+/**
+ * Experimental simulation engine that runs every node on a thread of its
+ * own.
+ *
+ * Each node has a worker thread, a virtual thread on Java 21 and later and
+ * a daemon platform thread before that. A quantum is a round of a Phaser:
+ * the engine releases the workers, and each one takes the messages from its
+ * node's inbox, hands them to the node, ticks the node and collects what it
+ * sends, then arrives. The inboxes are lock-free queues that the delivery
+ * phase fills, so no node is touched by the engine thread during the round.
+ * The phaser is tiered so that a simulation can have far more nodes than
+ * one phaser takes parties.
+ *
+ * Every event a worker dispatches is captured and dispatched by the engine
+ * once the round is over: the events of the deliveries in delivery order,
+ * then those of the ticks and of the collected messages in store order, as
+ * SimEngine would have dispatched them. The output of a simulation is the
+ * same as with SimEngine. The parallel tick is never used.
+ */
+public class ThreadedEngine extends SimEngine {
+
+  // Number of workers on each leaf of the phaser tree.
+  private static final int     TIER_SIZE = 256;
+
+  // Thread.ofVirtual() and Thread.Builder.unstarted(), or null before Java
+  // 21.
+  private static final Method  OF_VIRTUAL;
+  private static final Method  UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      unstarted = Class.forName("java.lang.Thread$Builder").getMethod(
+          "unstarted", Runnable.class);
+    } catch (Exception e) {
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    UNSTARTED = unstarted;
+  }
+
+  // The leaves of the phaser tree have the workers registered on them, and
+  // the engine as well. Holding a party on every leaf means a leaf never
+  // finishes a phase between rounds, so a worker can be registered then
+  // without waiting.
+  private final Phaser             root     = new Phaser();
+  private final ArrayList<Phaser>  leaves   = new ArrayList<Phaser>();
+
+  // Per handle, the worker of the node.
+  private Worker[]                 workers  = new Worker[64];
+
+  // The workers in store order for the current round.
+  private Worker[]                 order    = new Worker[64];
+  private int                      count    = 0;
+
+  // The messages handed to nodes in this quantum, in delivery order. The
+  // entries are reused from one quantum to the next.
+  private final ArrayList<Delivery> deliveries = new ArrayList<Delivery>();
+  private int                      delivered = 0;
+
+  private boolean                  virtual   = OF_VIRTUAL != null;
+
+  /**
+   * A message handed to a node, and the events the node dispatched taking
+   * it.
+   */
+  private static class Delivery {
+    Message                        message;
+    final ArrayList<DARSEvent>     events = new ArrayList<DARSEvent>();
+  }
+
+  /**
+   * The thread of a node.
+   */
+  private class Worker implements Runnable {
+    final Node                            node;
+    final Phaser                          phaser;
+    final ConcurrentLinkedQueue<Delivery> inbox   = new ConcurrentLinkedQueue<Delivery>();
+    final ArrayList<DARSEvent>            tickEvents    = new ArrayList<DARSEvent>();
+    final ArrayList<DARSEvent>            collectEvents = new ArrayList<DARSEvent>();
+    final ArrayList<Message>              outbox  = new ArrayList<Message>();
+
+    // Set by the engine between rounds. A stopped worker leaves the phaser
+    // at the start of the next round.
+    volatile boolean                      stopped = false;
+
+    // What went wrong in the last round, rethrown by the engine.
+    RuntimeException                      failure;
+    Error                                 error;
+
+    Worker(Node node, Phaser phaser) {
+      this.node = node;
+      this.phaser = phaser;
+    }
+
+    public void run() {
+      while (true) {
+        // Wait for the engine to start the round.
+        phaser.arriveAndAwaitAdvance();
+        if (stopped) {
+          phaser.arriveAndDeregister();
+          return;
+        }
+        try {
+          runQuantum();
+        } catch (RuntimeException e) {
+          failure = e;
+        } catch (Error e) {
+          error = e;
+        } finally {
+          OutputHandler.releaseEvents();
+        }
+        // Wait for every other node to finish the round.
+        phaser.arriveAndAwaitAdvance();
+      }
+    }
+
+    private void runQuantum() {
+      Delivery d;
+      while ((d = inbox.poll()) != null) {
+        OutputHandler.captureEvents(d.events);
+        node.messageToNode(d.message);
+      }
+
+      OutputHandler.captureEvents(tickEvents);
+      node.clockTick();
+
+      OutputHandler.captureEvents(collectEvents);
+      Message message;
+      while ((message = node.messageToNetwork()) != null) {
+        outbox.add(message);
+      }
+    }
+  }
+
+  /**
+   * The nodes run on their own threads, so the parallel tick is never turned
+   * on.
+   */
+  @Override
+  public void setParallelTick(boolean parallel) {
+    super.setParallelTick(false);
+  }
+
+  /**
+   * Returns whether the nodes run on virtual threads rather than platform
+   * threads.
+   */
+  public boolean isVirtual() {
+    return virtual;
+  }
+
+  /**
+   * Queue the message in the node's inbox. The node takes it on its own
+   * thread in the tick phase.
+   */
+  @Override
+  protected void deliver(Node node, Message message) {
+    Worker w = workerOf(node);
+    if (w == null) {
+      return;
+    }
+    if (delivered == deliveries.size()) {
+      deliveries.add(new Delivery());
+    }
+    Delivery d = deliveries.get(delivered++);
+    d.message = message;
+    w.inbox.add(d);
+  }
+
+  @Override
+  protected void nodeAdded(Node node) {
+    int h = node.getHandle();
+    if (h >= workers.length) {
+      workers = Arrays.copyOf(workers, Math.max(h + 1, workers.length * 2));
+    }
+    if (workers[h] != null) {
+      workers[h].stopped = true;
+    }
+
+    Worker w = new Worker(node, freeLeaf());
+    w.phaser.register();
+    workers[h] = w;
+    startThread(w, "DARS node " + node.getAttributes().id);
+  }
+
+  @Override
+  protected void nodeDeleted(Node node) {
+    int h = node.getHandle();
+    if (h < workers.length && workers[h] != null && workers[h].node == node) {
+      workers[h].stopped = true;
+      workers[h] = null;
+    }
+  }
+
+  /**
+   * Stop every worker and wait for them to leave the phaser.
+   */
+  @Override
+  protected void simulationReset() {
+    for (int h = 0; h < workers.length; h++) {
+      if (workers[h] != null) {
+        workers[h].stopped = true;
+        workers[h] = null;
+      }
+    }
+    // Only stopped workers are left, so the round just lets them go.
+    runRound();
+    deliveries.clear();
+    delivered = 0;
+  }
+
+  /**
+   * Run a round of the workers, in which every node takes its messages,
+   * ticks and queues what it sends, then dispatch the events of the
+   * deliveries and of the ticks.
+   */
+  @Override
+  protected void tickNodes() {
+    count = 0;
+    Iterator<Node> i = store.getNodes();
+    while (i.hasNext()) {
+      Worker w = workerOf(i.next());
+      if (w == null) {
+        continue;
+      }
+      if (count == order.length) {
+        order = Arrays.copyOf(order, count * 2);
+      }
+      order[count++] = w;
+    }
+
+    runRound();
+
+    for (int k = 0; k < count; k++) {
+      Worker w = order[k];
+      if (w.error != null) {
+        Error e = w.error;
+        w.error = null;
+        throw e;
+      }
+      if (w.failure != null) {
+        RuntimeException e = w.failure;
+        w.failure = null;
+        throw e;
+      }
+    }
+
+    for (int k = 0; k < delivered; k++) {
+      Delivery d = deliveries.get(k);
+      dispatchAll(d.events);
+      d.message = null;
+    }
+    delivered = 0;
+
+    for (int k = 0; k < count; k++) {
+      dispatchAll(order[k].tickEvents);
+    }
+  }
+
+  /**
+   * Dispatch the events of the messages the workers collected and queue the
+   * messages, in store order.
+   */
+  @Override
+  protected void collectMessages() {
+    for (int k = 0; k < count; k++) {
+      Worker w = order[k];
+      dispatchAll(w.collectEvents);
+      messageQueue.addAll(w.outbox);
+      w.outbox.clear();
+      order[k] = null;
+    }
+    count = 0;
+  }
+
+  // Returns a leaf of the phaser tree with room for another worker.
+  private Phaser freeLeaf() {
+    for (int k = leaves.size() - 1; k >= 0; k--) {
+      if (leaves.get(k).getRegisteredParties() <= TIER_SIZE) {
+        return leaves.get(k);
+      }
+    }
+    Phaser leaf = new Phaser(root, 1);
+    leaves.add(leaf);
+    return leaf;
+  }
+
+  // Release the workers and wait for all of them to arrive.
+  private void runRound() {
+    if (leaves.isEmpty()) {
+      return;
+    }
+    int phase = root.getPhase();
+    for (int k = 0; k < leaves.size(); k++) {
+      leaves.get(k).arrive();
+    }
+    root.awaitAdvance(phase);
+    for (int k = 0; k < leaves.size(); k++) {
+      leaves.get(k).arrive();
+    }
+    root.awaitAdvance(phase + 1);
+  }
+
+  private Worker workerOf(Node node) {
+    int h = node.getHandle();
+    if (h < 0 || h >= workers.length) {
+      return null;
+    }
+    Worker w = workers[h];
+    return w != null && w.node == node ? w : null;
+  }
+
+  private static void dispatchAll(ArrayList<DARSEvent> events) {
+    for (int j = 0; j < events.size(); j++) {
+      OutputHandler.dispatch(events.get(j));
+    }
+    events.clear();
+  }
+
+  private void startThread(Runnable r, String name) {
+    if (virtual) {
+      try {
+        Thread t = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), r);
+        t.setName(name);
+        t.start();
+        return;
+      } catch (Exception e) {
+        // Virtual threads are a preview feature before Java 21.
+        virtual = false;
+      }
+    }
+    Thread t = new Thread(r, name);
+    t.setDaemon(true);
+    t.start();
+  }
+}
@@ -0,0 +1,152 @@
+package dars;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import dars.event.DARSEvent;
+import dars.event.DARSEvent.EventType;
+
+/**
+ * Profile of where the quanta of a simulation engine go.
+ *
+ * While enabled, the engine records the time of each phase of its main loop,
+ * how long it holds SimEngine.lock for a quantum, the number of messages it
+ * delivers, the fan-out of broadcasts, and the length of the message queue
+ * and of the nodes' own queues. Each metric goes into a Histogram.
+ *
+ * The profile can be read through getHistogram(), over JMX once
+ * registerMBean() is called, and from the OUT_METRICS event the engine
+ * dispatches every getInterval() quanta with the summary of the profile so
+ * far. Disabled, which it is by default, the profiler costs the engine a
+ * check of a flag per quantum.
+ */
+public class TickProfiler implements TickProfilerMBean {
+
+  public enum Metric {
+    /** Time of each phase of SimEngine.MainLoop(), and of all four. */
+    INJECT_NANOS, DELIVER_NANOS, TICK_NANOS, COLLECT_NANOS, QUANTUM_NANOS,
+    /** Time SimEngine.lock is held to run a quantum. */
+    LOCK_HOLD_NANOS,
+    /** Messages handed to nodes in a quantum. */
+    MESSAGES_DELIVERED,
+    /** Nodes in range of each broadcast. */
+    BROADCAST_FANOUT,
+    /** Length of the engine's message queue at the start of delivery. */
+    MESSAGE_QUEUE,
+    /**
+     * Length of each node's queues: received messages before its tick, and
+     * messages to send and messages waiting for a route after it.
+     */
+    RX_QUEUE, TX_QUEUE, WAIT_QUEUE
+  };
+
+  private static final String OBJECT_NAME = "dars:type=TickProfiler";
+
+  private final Histogram[] histograms = new Histogram[Metric.values().length];
+  private volatile boolean  enabled    = false;
+  private volatile int      interval   = Defaults.METRICS_INTERVAL;
+  private volatile long     quanta     = 0;
+
+  public TickProfiler() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Returns the number of quanta between two OUT_METRICS events, or 0 if
+   * none are sent.
+   */
+  public int getInterval() {
+    return interval;
+  }
+
+  public void setInterval(int quanta) {
+    interval = Math.max(quanta, 0);
+  }
+
+  public long getQuanta() {
+    return quanta;
+  }
+
+  public Histogram getHistogram(Metric metric) {
+    return histograms[metric.ordinal()];
+  }
+
+  public void record(Metric metric, long value) {
+    histograms[metric.ordinal()].record(value);
+  }
+
+  /**
+   * Count a profiled quantum, and send the metrics if it is time to.
+   */
+  void quantumProfiled() {
+    quanta++;
+    int n = interval;
+    if (n > 0 && quanta % n == 0
+        && OutputHandler.isEnabled(EventType.OUT_METRICS)) {
+      OutputHandler.dispatch(DARSEvent.outMetrics(getSummary("; ")));
+    }
+  }
+
+  public String getSummary() {
+    return getSummary("\n");
+  }
+
+  /**
+   * Returns the summary of each metric, joined by the separator.
+   */
+  public String getSummary(String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (Metric m : Metric.values()) {
+      if (sb.length() > 0) {
+        sb.append(separator);
+      }
+      sb.append(m).append(' ').append(getHistogram(m));
+    }
+    return sb.toString();
+  }
+
+  public double getMean(String metric) {
+    return getHistogram(Metric.valueOf(metric)).getMean();
+  }
+
+  public long getMax(String metric) {
+    return getHistogram(Metric.valueOf(metric)).getMax();
+  }
+
+  public long getPercentile(String metric, double percentile) {
+    return getHistogram(Metric.valueOf(metric)).getValueAtPercentile(percentile);
+  }
+
+  public void reset() {
+    for (Histogram h : histograms) {
+      h.reset();
+    }
+    quanta = 0;
+  }
+
+  /**
+   * Register the profiler with the platform MBean server, in place of any
+   * profiler registered before.
+   */
+  public void registerMBean() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(this, name);
+  }
+}
@@ -0,0 +1,32 @@
+package dars;
+
+/**
+ * Management interface of the TickProfiler, registered with the platform
+ * MBean server as dars:type=TickProfiler.
+ *
+ * The metrics are named as in TickProfiler.Metric, for example TICK_NANOS.
+ */
+public interface TickProfilerMBean {
+
+  public boolean isEnabled();
+
+  public void setEnabled(boolean enabled);
+
+  /**
+   * Returns the number of quanta profiled since the last reset.
+   */
+  public long getQuanta();
+
+  /**
+   * Returns a line for each metric with its count, mean, percentiles and max.
+   */
+  public String getSummary();
+
+  public double getMean(String metric);
+
+  public long getMax(String metric);
+
+  public long getPercentile(String metric, double percentile);
+
+  public void reset();
+}
@@ -4,13 +4,14 @@ import java.awt.AWTException;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.Robot;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -19,6 +20,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.UIManager;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import dars.logger.LogIndex;
 import dars.logger.Logger;
 import dars.proto.NodeFactory.NodeType;
 
@@ -33,12 +35,22 @@ public class Utilities {
     }
   }
 
+  // Without a display (e.g. the batch runner) messages go to the console
+  // instead of a dialog.
   public static void showError(String error) {
+    if (GraphicsEnvironment.isHeadless()) {
+      System.err.println("Error: " + error);
+      return;
+    }
     JOptionPane.showMessageDialog(null, error, "Error",
         JOptionPane.ERROR_MESSAGE);
   }
 
   public static void showInfo(String info, String title) {
+    if (GraphicsEnvironment.isHeadless()) {
+      System.out.println(title + ": " + info);
+      return;
+    }
     JOptionPane.showMessageDialog(null, info, title,
         JOptionPane.INFORMATION_MESSAGE);
   }
@@ -90,13 +102,19 @@ public class Utilities {
     JFileChooser chooser = new JFileChooser();
     FileNameExtensionFilter filter = new FileNameExtensionFilter("Log Files",
         "log");
+    // The log can also be exported as CSV text for other tools.
+    FileNameExtensionFilter csvFilter = new FileNameExtensionFilter(
+        "CSV Files", "csv");
+    chooser.addChoosableFileFilter(csvFilter);
     chooser.setFileFilter(filter);
     int returnVal = chooser.showSaveDialog(parent);
     if (returnVal == JFileChooser.APPROVE_OPTION) {
+      boolean csv = chooser.getFileFilter() == csvFilter;
 
       // Define the new files to be saved.
-      File logFile = new File(getTmpLogPath());
-      File saveFile = new File(chooser.getSelectedFile().getPath() + ".log");
+      File logFile = new File(Logger.getLogPath());
+      File saveFile = new File(chooser.getSelectedFile().getPath()
+          + (csv ? ".csv" : ".log"));
 
       if (!logFile.exists()) {
         JOptionPane.showMessageDialog(parent, "There is nothing to save yet.");
@@ -114,29 +132,31 @@ public class Utilities {
         }
       }
 
-      // Initialize the file readers and writers
-      FileReader in = null;
-      FileWriter out = null;
-
-      // Try to open each file
       try {
-        int c;
         // Make sure everything has been flushed out of the buffer
         // and has been written to the temporary file.
+        OutputHandler.drain();
         Logger logger = Logger.getInstance();
         logger.flushLogFile();
 
-        in = new FileReader(logFile);
-        out = new FileWriter(saveFile);
-
-        // Write each line of the first file to the file chosen.
-        while ((c = in.read()) != -1) {
-          out.write(c);
+        if (csv) {
+          if (!Logger.exportCsv(logFile.getPath(), saveFile.getPath())) {
+            showError("Log file could not be exported.");
+          }
+          return;
         }
 
-        // Close both files.
-        in.close();
-        out.close();
+        // Copy the log as is, it may be binary.
+        copyFile(logFile, saveFile);
+
+        // The index goes along with it.
+        File indexFile = new File(LogIndex.getIndexPath(logFile.getPath()));
+        File saveIndexFile = new File(LogIndex.getIndexPath(saveFile.getPath()));
+        if (indexFile.exists()) {
+          copyFile(indexFile, saveIndexFile);
+        } else {
+          saveIndexFile.delete();
+        }
 
       } catch (FileNotFoundException e1) {
         showError("Log file could not be saved at "+ chooser.getSelectedFile().getPath());
@@ -146,6 +166,24 @@ public class Utilities {
     }
   }
 
+  private static void copyFile(File from, File to) throws IOException {
+    FileInputStream in = new FileInputStream(from);
+    try {
+      FileOutputStream out = new FileOutputStream(to);
+      try {
+        int n;
+        byte[] buf = new byte[65536];
+        while ((n = in.read(buf)) != -1) {
+          out.write(buf, 0, n);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
   private static final NodeType[] nodeTypes = NodeType.values();
   public static NodeType[] getNodeTypes() {
     return nodeTypes;
@@ -0,0 +1,424 @@
+package dars.batch;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import javax.management.JMException;
+
+import dars.AsyncOutputConsumer;
+import dars.Defaults;
+import dars.EventEngine;
+import dars.Histogram;
+import dars.InputHandler;
+import dars.MetricsExporter;
+import dars.OutputHandler;
+import dars.SimEngine;
+import dars.ThreadedEngine;
+import dars.TickProfiler;
+import dars.event.DARSEvent;
+import dars.logger.EventStream;
+import dars.logger.Logger;
+import dars.logger.Parser;
+import dars.proto.NodeFactory.NodeType;
+import dars.replayer.Replayer;
+import dars.replayer.Replayer.ReplayMode;
+import dars.replayer.Replayer.ReplayerListener;
+
+/**
+ * Headless entry point for running a simulation without the GUI.
+ *
+ * The setup or replay events of a saved log are loaded through the Parser and
+ * the simulation is run for a number of quanta as fast as possible. A run can
+ * also carry on from a checkpoint saved by an earlier run, see
+ * SimEngine.saveSnapshot(). The event
+ * log and a summary of the run are written out and the program exits. No
+ * Swing component is ever created, so this runs on machines without a
+ * display.
+ *
+ * Usage:
+ *
+ * java -cp DARSApp.jar dars.batch.BatchRunner -replay|-setup|-restore file [options]
+ */
+public class BatchRunner implements ReplayerListener {
+
+  private static final String USAGE =
+      "Usage: dars.batch.BatchRunner (-replay file | -setup file | -restore file)\n"
+    + "       [options]\n"
+    + "  -replay file  replay every recorded input event of a saved log\n"
+    + "  -setup file   load only the setup (quantum 0) events of a saved log\n"
+    + "  -restore file carry on from a checkpoint. With -replay, the replay\n"
+    + "                carries on from the quantum of the checkpoint\n"
+    + "  -checkpoint file\n"
+    + "                save a checkpoint of the simulation at the end of the run\n"
+    + "  -type t       simulation type, AODV or DSDV (default AODV). A\n"
+    + "                restored simulation keeps the type it was saved with\n"
+    + "  -quanta n     number of quanta to run. Required with -setup and with\n"
+    + "                -restore alone, a replay runs to its end by default\n"
+    + "  -log file     where to write the event log (default the DARS\n"
+    + "                temporary log, which is deleted on exit)\n"
+    + "  -stats file   where to write the summary statistics (default stdout)\n"
+    + "  -engine e     step, to tick every node every quantum, event, to\n"
+    + "                tick only the nodes with something to do, or\n"
+    + "                threaded, to run every node on a thread of its own\n"
+    + "                (experimental). Default step\n"
+    + "  -parallel     tick the nodes on all processors. Step engine only\n"
+    + "  -async        write the event log on its own thread\n"
+    + "  -profile      profile the quanta, add the profile to the statistics\n"
+    + "                and serve it over JMX as dars:type=TickProfiler\n"
+    + "  -metrics port export the rates of the run over JMX as\n"
+    + "                dars:type=MetricsExporter, and as Prometheus text on\n"
+    + "                http://127.0.0.1:port/metrics unless port is 0\n"
+    + "  -csv          write the event log as CSV text instead of binary\n"
+    + "  -debug        include debug events in the log";
+
+  private boolean replayFinished = false;
+  private boolean replayAborted = false;
+  private AsyncOutputConsumer asyncLogger = null;
+  private TickProfiler profiler = null;
+
+  public static void main(String[] args) {
+    // Never try to open a display.
+    System.setProperty("java.awt.headless", "true");
+
+    String replayFile = null;
+    String setupFile = null;
+    String restoreFile = null;
+    String checkpointFile = null;
+    String logFile = null;
+    String statsFile = null;
+    NodeType type = NodeType.AODV;
+    long quanta = -1;
+    boolean parallel = false;
+    String engine = "step";
+    boolean async = false;
+    boolean profile = false;
+    int metricsPort = -1;
+    boolean csv = false;
+    boolean debug = false;
+
+    try {
+      for (int i = 0; i < args.length; i++) {
+        String a = args[i];
+        if (a.equals("-replay")) {
+          replayFile = args[++i];
+        } else if (a.equals("-setup")) {
+          setupFile = args[++i];
+        } else if (a.equals("-restore")) {
+          restoreFile = args[++i];
+        } else if (a.equals("-checkpoint")) {
+          checkpointFile = args[++i];
+        } else if (a.equals("-type")) {
+          type = NodeType.valueOf(args[++i].toUpperCase());
+        } else if (a.equals("-quanta")) {
+          quanta = Long.parseLong(args[++i]);
+        } else if (a.equals("-log")) {
+          logFile = args[++i];
+        } else if (a.equals("-stats")) {
+          statsFile = args[++i];
+        } else if (a.equals("-engine")) {
+          engine = args[++i];
+          if (!engine.equals("step") && !engine.equals("event")
+              && !engine.equals("threaded")) {
+            usage("Unknown engine " + engine);
+          }
+        } else if (a.equals("-parallel")) {
+          parallel = true;
+        } else if (a.equals("-profile")) {
+          profile = true;
+        } else if (a.equals("-metrics")) {
+          metricsPort = Integer.parseInt(args[++i]);
+          if (metricsPort < 0 || metricsPort > 65535) {
+            usage("Invalid port " + metricsPort);
+          }
+        } else if (a.equals("-async")) {
+          async = true;
+        } else if (a.equals("-csv")) {
+          csv = true;
+        } else if (a.equals("-debug")) {
+          debug = true;
+        } else {
+          usage("Unknown option " + a);
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      usage("Missing value for " + args[args.length - 1]);
+    } catch (IllegalArgumentException e) {
+      usage("Invalid value: " + e.getMessage());
+    }
+
+    if (restoreFile != null) {
+      if (setupFile != null) {
+        usage("-setup can not be used with -restore.");
+      }
+      if (replayFile == null && quanta < 0) {
+        usage("-quanta is required with -restore alone.");
+      }
+    } else if ((replayFile == null) == (setupFile == null)) {
+      usage("Exactly one of -replay or -setup must be given.");
+    }
+    if (setupFile != null && quanta < 0) {
+      usage("-quanta is required with -setup.");
+    }
+    if (!engine.equals("step") && parallel) {
+      usage("-parallel can only be used with the step engine.");
+    }
+
+    PrintStream statsOut = System.out;
+    if (statsFile != null) {
+      try {
+        statsOut = new PrintStream(statsFile);
+      } catch (FileNotFoundException e) {
+        fail("Could not write the statistics to " + statsFile);
+      }
+    }
+
+    BatchRunner runner = new BatchRunner();
+    SummaryStats stats = runner.run(type, replayFile, setupFile, restoreFile,
+        checkpointFile, quanta, logFile, csv, engine, parallel, async,
+        profile, metricsPort, debug);
+    stats.print(statsOut);
+    if (runner.asyncLogger != null) {
+      statsOut.println("log_max_lag," + runner.asyncLogger.getMaxLag());
+      statsOut.println("log_max_latency_us,"
+          + runner.asyncLogger.getMaxLatency() / 1000);
+    }
+    if (runner.profiler != null) {
+      printProfile(runner.profiler, statsOut);
+    }
+    statsOut.flush();
+
+    System.exit(0);
+  }
+
+  /**
+   * Run one simulation to completion.
+   *
+   * @return the statistics of the run.
+   */
+  SummaryStats run(NodeType type, String replayFile, String setupFile,
+      String restoreFile, String checkpointFile, long quanta, String logFile,
+      boolean csv, String engine, boolean parallel, boolean async,
+      boolean profile, int metricsPort, boolean debug) {
+
+    if (restoreFile != null && !new File(restoreFile).canRead()) {
+      fail("Could not read " + restoreFile);
+    }
+
+    String file = replayFile != null ? replayFile : setupFile;
+    EventStream events = null;
+    if (file != null) {
+      if (!new File(file).canRead()) {
+        fail("Could not read " + file);
+      }
+
+      // The events are read from the log as the run goes, so the log must
+      // not be overwritten by this run.
+      if (logFile != null && isSameFile(file, logFile)) {
+        fail("The log can not be written over the file being read.");
+      }
+
+      // A restored replay is opened once the quantum to start from is known.
+      if (restoreFile == null) {
+        if (replayFile != null) {
+          events = Parser.openReplay(replayFile);
+        } else {
+          events = Parser.openSetup(setupFile);
+        }
+        if (events == null) {
+          fail("Log file can not be parsed.");
+        }
+      }
+    }
+
+    if (!debug) {
+      OutputHandler.addFilteredEvent(DARSEvent.EventType.OUT_DEBUG);
+    }
+
+    // Wire up the logger and the engine the same way DARSMain does, minus
+    // the GUI.
+    if (logFile != null) {
+      Logger.setLogPath(logFile);
+    }
+    if (csv) {
+      Logger.setLogFormat(Logger.LogFormat.CSV);
+    }
+    if (async) {
+      asyncLogger = OutputHandler.addAsyncOutputConsumer(Logger.getInstance(),
+          Defaults.ASYNC_BUFFER_SIZE, AsyncOutputConsumer.Backpressure.BLOCK);
+      InputHandler.addInputConsumer(asyncLogger);
+    } else {
+      InputHandler.addInputConsumer(Logger.getInstance());
+      OutputHandler.addOutputConsumer(Logger.getInstance());
+    }
+
+    SummaryStats stats = new SummaryStats();
+    OutputHandler.addOutputConsumer(stats);
+
+    SimEngine s;
+    if (engine.equals("event")) {
+      s = new EventEngine();
+    } else if (engine.equals("threaded")) {
+      s = new ThreadedEngine();
+    } else {
+      s = new SimEngine();
+    }
+    s.setParallelTick(parallel);
+    if (profile) {
+      profiler = s.getProfiler();
+      profiler.setEnabled(true);
+      try {
+        profiler.registerMBean();
+      } catch (JMException e) {
+        System.err.println("Warning: Could not register the profiler: "
+            + e.getMessage());
+      }
+    }
+    MetricsExporter exporter = null;
+    if (metricsPort >= 0) {
+      exporter = new MetricsExporter(s);
+      OutputHandler.addOutputConsumer(exporter);
+      try {
+        exporter.registerMBean();
+        if (metricsPort > 0) {
+          exporter.startHttpServer(metricsPort);
+        }
+      } catch (JMException e) {
+        System.err.println("Warning: Could not register the metrics: "
+            + e.getMessage());
+      } catch (IOException e) {
+        System.err.println("Warning: Could not serve the metrics on port "
+            + metricsPort + ": " + e.getMessage());
+      }
+    }
+    DARSEvent.setSimTimeKeeper(s);
+    InputHandler.addInputConsumer(s);
+
+    if (restoreFile != null) {
+      try {
+        s.restoreSnapshot(restoreFile);
+      } catch (IOException e) {
+        fail("Could not restore " + restoreFile + ": " + e.getMessage());
+      }
+      if (replayFile != null) {
+        // The events up to the checkpoint are already part of it.
+        events = Parser.seek(replayFile, s.getTime());
+        if (events == null) {
+          fail("Log file can not be parsed.");
+        }
+      }
+    } else {
+      InputHandler.dispatch(DARSEvent.inNewSim(type));
+    }
+
+    if (replayFile != null) {
+      // A replay runs up to the quantum after its last recorded event,
+      // unless told otherwise.
+      long lastQuantum = Parser.findLastReplayQuantum(replayFile);
+      if (quanta < 0) {
+        quanta = Math.max(lastQuantum + 1 - s.getTime(), 0);
+      }
+      // The replayer feeds the recorded events in as the quanta elapse.
+      new Replayer(events, lastQuantum, s, this, ReplayMode.LOCKED);
+    } else if (setupFile != null) {
+      while (events.hasNext()) {
+        InputHandler.dispatch(events.next());
+      }
+      events.close();
+      if (events.getError() != null) {
+        fail("Could not read the setup from " + setupFile + ": "
+            + events.getError().getMessage());
+      }
+    }
+
+    for (long q = 0; q < quanta && !replayFinished; q++) {
+      if (!s.runQuantum()) {
+        break;
+      }
+    }
+
+    if (checkpointFile != null) {
+      try {
+        s.saveSnapshot(checkpointFile);
+      } catch (IOException e) {
+        System.err.println("Error: Could not save the checkpoint to "
+            + checkpointFile + ": " + e.getMessage());
+      }
+    }
+
+    // Stopping the simulation closes the log file. A finished replay has
+    // already stopped it.
+    if (!replayFinished) {
+      InputHandler.dispatch(DARSEvent.inStopSim());
+    }
+    s.setParallelTick(false);
+    if (exporter != null) {
+      exporter.stopHttpServer();
+    }
+
+    // Let the logger write out the rest of the events before the log is
+    // used.
+    OutputHandler.drain();
+    if (replayAborted) {
+      fail("The replay of " + replayFile + " did not finish.");
+    }
+    return stats;
+  }
+
+  /**
+   * Print the mean, percentiles and max of each metric of the profile, in
+   * the name,value form of the other statistics.
+   */
+  private static void printProfile(TickProfiler profiler, PrintStream out) {
+    out.println("profile_quanta," + profiler.getQuanta());
+    for (TickProfiler.Metric m : TickProfiler.Metric.values()) {
+      Histogram h = profiler.getHistogram(m);
+      String name = "profile_" + m.toString().toLowerCase();
+      out.println(name + "_mean," + String.format("%.1f", h.getMean()));
+      out.println(name + "_p50," + h.getValueAtPercentile(50));
+      out.println(name + "_p99," + h.getValueAtPercentile(99));
+      out.println(name + "_max," + h.getMax());
+    }
+  }
+
+  @Override
+  public void replayerStarted(long lastQuantum, Replayer instance) {
+  }
+
+  @Override
+  public void replayerFinished(boolean aborted) {
+    // Stop at the end of the replay like the GUI does when the user does not
+    // continue the simulation.
+    replayFinished = true;
+    replayAborted = aborted;
+    InputHandler.dispatch(DARSEvent.inStopSim());
+  }
+
+  @Override
+  public void replayerFastForwardStarted(long targetQuantum) {
+  }
+
+  @Override
+  public void replayerFastForwardFinished(long quantum) {
+  }
+
+  private static boolean isSameFile(String a, String b) {
+    try {
+      return new File(a).getCanonicalFile().equals(new File(b).getCanonicalFile());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static void usage(String error) {
+    System.err.println(error);
+    System.err.println(USAGE);
+    System.exit(2);
+  }
+
+  private static void fail(String error) {
+    System.err.println("Error: " + error);
+    System.exit(1);
+  }
+}
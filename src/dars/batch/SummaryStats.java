@@ -0,0 +1,93 @@
+package dars.batch;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+import dars.OutputConsumer;
+import dars.event.DARSEvent;
+import dars.event.DARSEvent.EventType;
+
+/**
+ * Output consumer that keeps the summary statistics of a batch run.
+ *
+ * It counts every output event by type and keeps track of the number of
+ * nodes and quanta, so a run can be summarized without reading back the
+ * event log.
+ */
+public class SummaryStats implements OutputConsumer {
+
+  private final EnumMap<EventType, Long> counts = new EnumMap<EventType, Long>(EventType.class);
+  private long quanta = 0;
+  private int nodes = 0;
+  private int maxNodes = 0;
+  private long startTime = System.currentTimeMillis();
+  private long endTime = 0;
+
+  @Override
+  public void consumeOutput(DARSEvent e) {
+    Long c = counts.get(e.eventType);
+    counts.put(e.eventType, c == null ? 1 : c + 1);
+
+    switch (e.eventType) {
+    case OUT_QUANTUM_ELAPSED:
+      quanta = e.currentQuantum;
+      break;
+    case OUT_ADD_NODE:
+      nodes++;
+      maxNodes = Math.max(maxNodes, nodes);
+      break;
+    case OUT_DEL_NODE:
+      nodes--;
+      break;
+    case OUT_CLEAR_SIM:
+    case OUT_NEW_SIM:
+      nodes = 0;
+      break;
+    case OUT_STOP_SIM:
+      endTime = System.currentTimeMillis();
+      break;
+    }
+  }
+
+  public long getCount(EventType t) {
+    Long c = counts.get(t);
+    return c == null ? 0 : c;
+  }
+
+  public long getQuanta() {
+    return quanta;
+  }
+
+  /**
+   * Write the statistics as comma separated name,value lines.
+   *
+   * @param out
+   */
+  public void print(PrintStream out) {
+    long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+    long elapsed = end - startTime;
+
+    out.println("quanta," + quanta);
+    out.println("nodes," + nodes);
+    out.println("max_nodes," + maxNodes);
+    out.println("elapsed_ms," + elapsed);
+    if (elapsed > 0) {
+      out.println("quanta_per_sec," + (quanta * 1000 / elapsed));
+    }
+
+    // Narrative messages inserted against those that reached their
+    // destination.
+    long inserted = getCount(EventType.OUT_INSERT_MESSAGE);
+    long delivered = getCount(EventType.OUT_MSG_RECEIVED);
+    out.println("messages_inserted," + inserted);
+    out.println("messages_delivered," + delivered);
+    if (inserted > 0) {
+      out.println("delivery_ratio," + ((double) delivered / inserted));
+    }
+
+    for (Map.Entry<EventType, Long> entry : counts.entrySet()) {
+      out.println(entry.getKey().toString().toLowerCase() + "," + entry.getValue());
+    }
+  }
+}
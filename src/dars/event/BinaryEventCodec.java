@@ -0,0 +1,451 @@
+package dars.event;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import dars.event.DARSEvent.EventType;
+import dars.proto.NodeFactory.NodeType;
+
+/**
+ * Binary encoding of DARSEvents, used by the binary event log.
+ *
+ * A log starts with a header: the magic bytes "DARSBLOG", the format version
+ * and the names of the event types and node types in ordinal order. Records
+ * refer to the types by ordinal, and the names let a log be read back after
+ * the enums have changed.
+ *
+ * Each record then holds:
+ *
+ * - the event type ordinal + 1
+ *
+ * - a set of flags telling which of the optional fields follow
+ *
+ * - the change in currentQuantum from the previous record
+ *
+ * - the optional fields, in declaration order
+ *
+ * Integers are written as varints, signed ones zigzag encoded first. Node IDs
+ * are interned: the first time an ID appears it is written out in full, and
+ * afterwards only its index is written. A transmitted message that is the
+ * same as the one of the previous record is not written again, which is the
+ * common case for a broadcast heard by many nodes. Informational messages
+ * that are rendered from the other fields (see
+ * DARSEvent.getInformationalMessage()) are not written at all and are
+ * rendered again when the event is read.
+ *
+ * A record with type 0 is a sync point instead of an event. It holds the
+ * quantum in full and clears the interned IDs and the last transmitted
+ * message, so the log can be read from a sync point on with only the header
+ * to go by. The log index (see dars.logger.LogIndex) points at sync points.
+ *
+ * A codec keeps the state of one log and must only be used for one log, in
+ * one direction. Data that does not follow the format, as in a corrupt log,
+ * is reported with a StreamCorruptedException.
+ */
+public final class BinaryEventCodec {
+
+  public static final byte[] MAGIC   = { 'D', 'A', 'R', 'S', 'B', 'L', 'O', 'G' };
+  public static final int    VERSION = 2;
+
+  // Record type of a sync point. An event record has the ordinal of its
+  // type plus one.
+  private static final int SYNC = 0;
+
+  // Record flags
+  private static final int HAS_NODE_ID           = 1;
+  private static final int HAS_SOURCE_ID         = 1 << 1;
+  private static final int HAS_DESTINATION_ID    = 1 << 2;
+  private static final int HAS_INFORMATIONAL     = 1 << 3;
+  private static final int DERIVED_INFORMATIONAL = 1 << 4;
+  private static final int HAS_TRANSMITTED       = 1 << 5;
+  private static final int SAME_TRANSMITTED      = 1 << 6;
+  private static final int HAS_SIM_SPEED         = 1 << 7;
+  private static final int HAS_POSITION          = 1 << 8;
+  private static final int HAS_RANGE             = 1 << 9;
+  private static final int HAS_NODE_TYPE         = 1 << 10;
+  private static final int IS_PROMISCUOUS        = 1 << 11;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // Interned node IDs. The writer looks them up by ID, the reader by index.
+  private final HashMap<String, Integer> idIndex = new HashMap<String, Integer>();
+  private final ArrayList<String>        ids     = new ArrayList<String>();
+
+  private long                           lastQuantum     = 0;
+  private String                         lastTransmitted = null;
+
+  // Types of the log being read, by the ordinals used in the log.
+  private EventType[]                    eventTypes = EventType.values();
+  private NodeType[]                     nodeTypes  = NodeType.values();
+
+  /**
+   * Returns whether the given bytes start with the binary log magic.
+   */
+  public static boolean isBinaryLog(byte[] head, int length) {
+    if (length < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (head[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public void writeHeader(ByteBuffer out) {
+    out.put(MAGIC);
+    putVarint(out, VERSION);
+    EventType[] et = EventType.values();
+    putVarint(out, et.length);
+    for (EventType t : et) {
+      putString(out, t.name());
+    }
+    NodeType[] nt = NodeType.values();
+    putVarint(out, nt.length);
+    for (NodeType t : nt) {
+      putString(out, t.name());
+    }
+  }
+
+  /**
+   * Read the header of a log.
+   *
+   * @return false if the header is not one this codec can read.
+   */
+  public boolean readHeader(ByteBuffer in) throws IOException {
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (in.get() != MAGIC[i]) {
+        return false;
+      }
+    }
+    long version = getVarint(in);
+    if (version != VERSION) {
+      return false;
+    }
+    eventTypes = new EventType[getCount(in)];
+    for (int i = 0; i < eventTypes.length; i++) {
+      eventTypes[i] = DARSEvent.getEventTypeFromString(getString(in));
+    }
+    nodeTypes = new NodeType[getCount(in)];
+    for (int i = 0; i < nodeTypes.length; i++) {
+      nodeTypes[i] = DARSEvent.parseNodeType(getString(in));
+    }
+    return true;
+  }
+
+  /**
+   * Returns an upper bound of the number of bytes writeSync() writes.
+   */
+  public static int maxSyncSize() {
+    return 16;
+  }
+
+  /**
+   * Write a sync point. Events of the given quantum or later should follow.
+   */
+  public void writeSync(long quantum, ByteBuffer out) {
+    putVarint(out, SYNC);
+    putVarint(out, quantum);
+    idIndex.clear();
+    lastTransmitted = null;
+    lastQuantum = quantum;
+  }
+
+  /**
+   * Returns whether a record starting with the given byte is a sync point.
+   * Used to check that a position taken from a log index is sane.
+   */
+  public boolean isSync(byte first) {
+    return first == SYNC;
+  }
+
+  /**
+   * Returns an upper bound of the number of bytes encode() writes for the
+   * event.
+   */
+  public static int maxEncodedSize(DARSEvent e) {
+    // Type, flags, quantum and the four integer fields
+    int size = 64;
+    size += maxStringSize(e.nodeId);
+    size += maxStringSize(e.sourceId);
+    size += maxStringSize(e.destinationId);
+    if (!e.lazyText) {
+      size += maxStringSize(e.informationalMessage);
+    }
+    size += maxStringSize(e.transmittedMessage);
+    return size;
+  }
+
+  private static int maxStringSize(String s) {
+    return s == null ? 0 : 5 + s.length() * 3;
+  }
+
+  /**
+   * Encode an event. The buffer must have at least maxEncodedSize(e) bytes
+   * remaining.
+   */
+  public void encode(DARSEvent e, ByteBuffer out) {
+    int flags = 0;
+    if (e.nodeId != null) {
+      flags |= HAS_NODE_ID;
+    }
+    if (e.sourceId != null) {
+      flags |= HAS_SOURCE_ID;
+    }
+    if (e.destinationId != null) {
+      flags |= HAS_DESTINATION_ID;
+    }
+    if (e.lazyText) {
+      flags |= DERIVED_INFORMATIONAL;
+    } else if (e.informationalMessage != null) {
+      flags |= HAS_INFORMATIONAL;
+    }
+    if (e.transmittedMessage != null) {
+      if (e.transmittedMessage == lastTransmitted
+          || e.transmittedMessage.equals(lastTransmitted)) {
+        flags |= SAME_TRANSMITTED;
+      } else {
+        flags |= HAS_TRANSMITTED;
+      }
+    }
+    if (e.newSimSpeed != 0) {
+      flags |= HAS_SIM_SPEED;
+    }
+    if (e.nodeX != 0 || e.nodeY != 0) {
+      flags |= HAS_POSITION;
+    }
+    if (e.nodeRange != 0) {
+      flags |= HAS_RANGE;
+    }
+    if (e.nodeType != null) {
+      flags |= HAS_NODE_TYPE;
+    }
+    if (e.isPromiscuous) {
+      flags |= IS_PROMISCUOUS;
+    }
+
+    putVarint(out, e.eventType.ordinal() + 1);
+    putVarint(out, flags);
+    putVarint(out, zigzag(e.currentQuantum - lastQuantum));
+    lastQuantum = e.currentQuantum;
+
+    if ((flags & HAS_NODE_ID) != 0) {
+      putId(out, e.nodeId);
+    }
+    if ((flags & HAS_SOURCE_ID) != 0) {
+      putId(out, e.sourceId);
+    }
+    if ((flags & HAS_DESTINATION_ID) != 0) {
+      putId(out, e.destinationId);
+    }
+    if ((flags & HAS_INFORMATIONAL) != 0) {
+      putString(out, e.informationalMessage);
+    }
+    if ((flags & HAS_TRANSMITTED) != 0) {
+      putString(out, e.transmittedMessage);
+      lastTransmitted = e.transmittedMessage;
+    }
+    if ((flags & HAS_SIM_SPEED) != 0) {
+      putVarint(out, zigzag(e.newSimSpeed));
+    }
+    if ((flags & HAS_POSITION) != 0) {
+      putVarint(out, zigzag(e.nodeX));
+      putVarint(out, zigzag(e.nodeY));
+    }
+    if ((flags & HAS_RANGE) != 0) {
+      putVarint(out, zigzag(e.nodeRange));
+    }
+    if ((flags & HAS_NODE_TYPE) != 0) {
+      putVarint(out, e.nodeType.ordinal());
+    }
+  }
+
+  /**
+   * Decode the next event.
+   *
+   * If the buffer ends in the middle of the record, a
+   * BufferUnderflowException is thrown and the codec is left as it was, so
+   * the record can be decoded again once more of it has been read.
+   *
+   * @return the event, or null for a sync point or an event whose type is
+   *         not known to this version of DARS.
+   */
+  public DARSEvent decode(ByteBuffer in) throws IOException {
+    int idCount = ids.size();
+    long quantum = lastQuantum;
+    String transmitted = lastTransmitted;
+    try {
+      return decodeRecord(in);
+    } catch (BufferUnderflowException ex) {
+      while (ids.size() > idCount) {
+        ids.remove(ids.size() - 1);
+      }
+      lastQuantum = quantum;
+      lastTransmitted = transmitted;
+      throw ex;
+    }
+  }
+
+  private DARSEvent decodeRecord(ByteBuffer in) throws IOException {
+    int type = (int) getVarint(in) - 1;
+    if (type < 0) {
+      long quantum = getVarint(in);
+      ids.clear();
+      lastTransmitted = null;
+      lastQuantum = quantum;
+      return null;
+    }
+    int flags = (int) getVarint(in);
+    lastQuantum += unzigzag(getVarint(in));
+
+    DARSEvent e = new DARSEvent();
+    e.eventType = type < eventTypes.length ? eventTypes[type] : null;
+    e.currentQuantum = lastQuantum;
+    if ((flags & HAS_NODE_ID) != 0) {
+      e.nodeId = getId(in);
+    }
+    if ((flags & HAS_SOURCE_ID) != 0) {
+      e.sourceId = getId(in);
+    }
+    if ((flags & HAS_DESTINATION_ID) != 0) {
+      e.destinationId = getId(in);
+    }
+    if ((flags & HAS_INFORMATIONAL) != 0) {
+      e.informationalMessage = getString(in);
+    }
+    e.lazyText = (flags & DERIVED_INFORMATIONAL) != 0;
+    if ((flags & HAS_TRANSMITTED) != 0) {
+      lastTransmitted = getString(in);
+    }
+    if ((flags & (HAS_TRANSMITTED | SAME_TRANSMITTED)) != 0) {
+      e.transmittedMessage = lastTransmitted;
+    }
+    if ((flags & HAS_SIM_SPEED) != 0) {
+      e.newSimSpeed = (int) unzigzag(getVarint(in));
+    }
+    if ((flags & HAS_POSITION) != 0) {
+      e.nodeX = (int) unzigzag(getVarint(in));
+      e.nodeY = (int) unzigzag(getVarint(in));
+    }
+    if ((flags & HAS_RANGE) != 0) {
+      e.nodeRange = (int) unzigzag(getVarint(in));
+    }
+    if ((flags & HAS_NODE_TYPE) != 0) {
+      int nt = (int) getVarint(in);
+      e.nodeType = nt < nodeTypes.length ? nodeTypes[nt] : null;
+    }
+    e.isPromiscuous = (flags & IS_PROMISCUOUS) != 0;
+
+    if (e.eventType == null) {
+      return null;
+    }
+    return e;
+  }
+
+  // An interned ID is written as its index + 1. A 0 means a new ID follows.
+  private void putId(ByteBuffer out, String id) {
+    Integer index = idIndex.get(id);
+    if (index != null) {
+      putVarint(out, index + 1);
+      return;
+    }
+    putVarint(out, 0);
+    putString(out, id);
+    idIndex.put(id, idIndex.size());
+  }
+
+  private String getId(ByteBuffer in) throws IOException {
+    long ref = getVarint(in);
+    if (ref < 0 || ref > ids.size()) {
+      throw new StreamCorruptedException("Unknown node ID in binary log");
+    }
+    if (ref > 0) {
+      return ids.get((int) ref - 1);
+    }
+    String id = getString(in);
+    ids.add(id);
+    return id;
+  }
+
+  private static void putString(ByteBuffer out, String s) {
+    int len = s.length();
+    // Most strings are ASCII and are copied byte for byte.
+    boolean ascii = true;
+    for (int i = 0; i < len; i++) {
+      if (s.charAt(i) >= 0x80) {
+        ascii = false;
+        break;
+      }
+    }
+    if (ascii) {
+      putVarint(out, len);
+      for (int i = 0; i < len; i++) {
+        out.put((byte) s.charAt(i));
+      }
+    } else {
+      byte[] bytes = s.getBytes(UTF8);
+      putVarint(out, bytes.length);
+      out.put(bytes);
+    }
+  }
+
+  private static String getString(ByteBuffer in) throws IOException {
+    int len = getCount(in);
+    if (in.remaining() < len) {
+      throw new BufferUnderflowException();
+    }
+    String s;
+    if (in.hasArray()) {
+      s = new String(in.array(), in.arrayOffset() + in.position(), len, UTF8);
+      in.position(in.position() + len);
+    } else {
+      byte[] bytes = new byte[len];
+      in.get(bytes);
+      s = new String(bytes, UTF8);
+    }
+    return s;
+  }
+
+  private static void putVarint(ByteBuffer out, long v) {
+    while ((v & ~0x7FL) != 0) {
+      out.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.put((byte) v);
+  }
+
+  // A length or a count, which must fit in an int.
+  private static int getCount(ByteBuffer in) throws IOException {
+    long n = getVarint(in);
+    if (n < 0 || n > Integer.MAX_VALUE) {
+      throw new StreamCorruptedException("Bad length in binary log");
+    }
+    return (int) n;
+  }
+
+  private static long getVarint(ByteBuffer in) throws IOException {
+    long v = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.get();
+      v |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return v;
+      }
+    }
+    throw new StreamCorruptedException("Malformed varint in binary log");
+  }
+
+  private static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  private static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
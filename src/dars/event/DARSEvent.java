@@ -3,7 +3,6 @@
  */
 package dars.event;
 
-import java.lang.reflect.Field;
 import dars.NodeAttributes;
 import dars.Message;
 import dars.SimulationTimeKeeper;
@@ -26,7 +25,11 @@ public class DARSEvent {
     OUT_MSG_TRANSMITTED,  OUT_DEBUG, OUT_ERROR, OUT_START_SIM, OUT_PAUSE_SIM, OUT_RESUME_SIM, 
     OUT_STOP_SIM, OUT_SIM_SPEED, OUT_NEW_SIM, OUT_INSERT_MESSAGE, OUT_NARRMSG_RECEIVED, 
     OUT_CONTROLMSG_RECEIVED, OUT_NARRMSG_TRANSMITTED, OUT_CONTROLMSG_TRANSMITTED, 
-    OUT_QUANTUM_ELAPSED, OUT_CLEAR_SIM, OUT_MSG_RECEIVED, OUT_NODE_INFO
+    OUT_QUANTUM_ELAPSED, OUT_CLEAR_SIM, OUT_MSG_RECEIVED, OUT_NODE_INFO,
+    
+    // Types added later go last, so logs refer to the older types by the
+    // same ordinals.
+    OUT_METRICS
   };
 
   public EventType            eventType;
@@ -43,6 +46,57 @@ public class DARSEvent {
   public long                 currentQuantum;
   public boolean              isPromiscuous;
   
+  // The informational message of most output events is only rendered from
+  // the other fields when a consumer asks for it, see
+  // getInformationalMessage().
+  boolean                     lazyText;
+  
+  /**
+   * Returns the informational message, rendering it first if the event was
+   * made with deferred text. Always use this instead of reading the
+   * informationalMessage field of an output event.
+   * 
+   * Consumers on different threads may render the text at the same time.
+   * They produce the same string, so either result can be kept.
+   */
+  public String getInformationalMessage() {
+    if (informationalMessage == null && lazyText) {
+      informationalMessage = renderText();
+    }
+    return informationalMessage;
+  }
+  
+  private String renderText() {
+    switch (eventType) {
+    case OUT_NEW_SIM:
+      return "New " + nodeType + " Simulation Created.";
+    case OUT_SIM_SPEED:
+      return "Simulation Speed Set: " + newSimSpeed + ".";
+    case OUT_ADD_NODE:
+      return "Node Added: " + nodeId + ".";
+    case OUT_MOVE_NODE:
+      return "Node " + nodeId + " moved to X:" + nodeX +" Y:" + nodeY + ".";
+    case OUT_DEL_NODE:
+      return "Node Deleted: " + nodeId;
+    case OUT_SET_NODE_RANGE:
+      return "Node " + nodeId + "'s range changed to " + nodeRange + ".";
+    case OUT_MSG_RECEIVED:
+      return "Node " + sourceId + " successfuly sent a message to Node " + destinationId;
+    case OUT_MSG_TRANSMITTED:
+      return "Node " + sourceId + " transmitted a message to Node " + destinationId;
+    case OUT_CONTROLMSG_TRANSMITTED:
+      return sourceId + " transmitted control message to " + destinationId + " : " + transmittedMessage;
+    case OUT_NARRMSG_TRANSMITTED:
+      return sourceId + " transmitted narrative message to " + destinationId + " : " + transmittedMessage;
+    case OUT_CONTROLMSG_RECEIVED:
+      return sourceId + " received control message from " + destinationId + " : " + transmittedMessage;
+    case OUT_NARRMSG_RECEIVED:
+      return sourceId + " received narrative message from " + destinationId + " : " + transmittedMessage;
+    default:
+      return null;
+    }
+  }
+  
 
   //Provided for convenience.
   public NodeAttributes getNodeAttributes() {
@@ -65,8 +119,8 @@ public class DARSEvent {
   }
   
   // Hide the default constructor. DARSEvents can only be made through the
-  // supplied functions that follow.
-  private DARSEvent() {
+  // supplied functions that follow, or read back from a log.
+  DARSEvent() {
     //If the time keeper is set, view the current time from it.
     if(simTimeKeeper != null) {
       currentQuantum = simTimeKeeper.getTime();
@@ -75,7 +129,7 @@ public class DARSEvent {
 
   public static DARSEvent inInsertMessage(Message message) {
     DARSEvent e = new DARSEvent();
-    e.transmittedMessage = message.message;
+    e.transmittedMessage = message.getMessage();
     e.sourceId = message.originId;
     e.destinationId = message.destinationId;
     e.eventType = EventType.IN_INSERT_MESSAGE;
@@ -141,7 +195,7 @@ public class DARSEvent {
     DARSEvent e = new DARSEvent();
     e.eventType = EventType.OUT_NEW_SIM;
     e.nodeType   = nt;
-    e.informationalMessage = "New " + nt + " Simulation Created.";
+    e.lazyText = true;
     return e;
   }
   
@@ -208,7 +262,7 @@ public class DARSEvent {
     DARSEvent e = new DARSEvent();
     e.eventType = EventType.OUT_SIM_SPEED;
     e.newSimSpeed = newSpeed;
-    e.informationalMessage = "Simulation Speed Set: " + newSpeed + ".";
+    e.lazyText = true;
     return e;
   }
 
@@ -234,7 +288,7 @@ public class DARSEvent {
     DARSEvent d = new DARSEvent();
     d.eventType = EventType.OUT_ADD_NODE;
     d.setNodeAttributes(n);
-    d.informationalMessage = "Node Added: " + n.id + ".";
+    d.lazyText = true;
     return d;
     
   }
@@ -245,7 +299,7 @@ public class DARSEvent {
     d.nodeId = id;
     d.nodeX = x;
     d.nodeY = y;
-    d.informationalMessage = "Node " + id + " moved to X:" + x +" Y:" + y + ".";
+    d.lazyText = true;
     return d;
   }
 
@@ -253,7 +307,7 @@ public class DARSEvent {
     DARSEvent d = new DARSEvent();
     d.eventType = EventType.OUT_DEL_NODE;
     d.nodeId = id;
-    d.informationalMessage = "Node Deleted: " + id;
+    d.lazyText = true;
     return d;
   }
 
@@ -262,7 +316,7 @@ public class DARSEvent {
     e.eventType = EventType.OUT_SET_NODE_RANGE;
     e.nodeId = id;
     e.nodeRange = newRange;
-    e.informationalMessage = "Node " + id + "'s range changed to " + newRange + ".";
+    e.lazyText = true;
     return e;
   }
 
@@ -282,7 +336,7 @@ public class DARSEvent {
     e.sourceId = sourceId;
     e.destinationId = destId;
     e.transmittedMessage = message;
-    e.informationalMessage = "Node " + sourceId + " successfuly sent a message to Node " + destId;
+    e.lazyText = true;
     return e;
   }
   
@@ -292,7 +346,7 @@ public class DARSEvent {
     e.sourceId = sourceId;
     e.destinationId = destId;
     e.transmittedMessage = message;
-    e.informationalMessage = "Node " + sourceId + " transmitted a message to Node " + destId;
+    e.lazyText = true;
     return e;
   }
   
@@ -323,8 +377,8 @@ public class DARSEvent {
     d.eventType = EventType.OUT_CONTROLMSG_TRANSMITTED;
     d.sourceId = msg.originId;
     d.destinationId = msg.destinationId;
-    d.transmittedMessage = msg.message;
-    d.informationalMessage = d.sourceId + " transmitted control message to " + d.destinationId + " : " + msg.message;
+    d.transmittedMessage = msg.getMessage();
+    d.lazyText = true;
     return d;
   }
 
@@ -333,8 +387,8 @@ public class DARSEvent {
     d.eventType = EventType.OUT_NARRMSG_TRANSMITTED;
     d.sourceId = msg.originId;
     d.destinationId = msg.destinationId;
-    d.transmittedMessage = msg.message;
-    d.informationalMessage = d.sourceId + " transmitted narrative message to " + d.destinationId + " : " + msg.message;
+    d.transmittedMessage = msg.getMessage();
+    d.lazyText = true;
     return d;
   }
   
@@ -343,8 +397,8 @@ public class DARSEvent {
     d.eventType = EventType.OUT_CONTROLMSG_RECEIVED;
     d.sourceId = msg.originId;
     d.destinationId = sourceId;
-    d.transmittedMessage = msg.message;
-    d.informationalMessage = d.sourceId + " received control message from " + d.destinationId + " : " + msg.message;
+    d.transmittedMessage = msg.getMessage();
+    d.lazyText = true;
     return d;
   }
 
@@ -353,8 +407,8 @@ public class DARSEvent {
     d.eventType = EventType.OUT_NARRMSG_RECEIVED;
     d.sourceId = msg.originId;
     d.destinationId = sourceId;
-    d.transmittedMessage = msg.message;
-    d.informationalMessage = d.sourceId + " received narrative message from " + d.destinationId + " : " + msg.message;
+    d.transmittedMessage = msg.getMessage();
+    d.lazyText = true;
     return d;
   }
   
@@ -372,59 +426,71 @@ public class DARSEvent {
     return e;
   }
 
-  static final Class<DARSEvent> c = DARSEvent.class;
-  static final Field[] fields = c.getFields();
-  public String getLogString() {
-    StringBuilder sb = new StringBuilder();
-    // proposed format of log string is:
-    // comma separated values, with public fields of DARSEvent printed out in
-    // order
- 
-    //Trunc the string builder
-    sb.setLength(0);
-    
-    for (Field f : fields) {
-      Object obj;
-      try {
-        obj = f.get(this);
-        if (obj != null) {
-          sb.append(obj.toString() + ",");
-        } else {
-          sb.append(",");
-        }
-      } catch (IllegalArgumentException e) {
-        e.printStackTrace();
-        Utilities.showError("An error occurred while trying to serialize an event. Please file a bug report");
-        System.exit(1);
-      } catch (IllegalAccessException e) {
-        e.printStackTrace();
-        Utilities.showError("An error occurred while trying to serialize an event. Please file a bug report");
-        System.exit(1);
-      }
+  public static DARSEvent outMetrics(String metrics) {
+    DARSEvent e = new DARSEvent();
+    e.eventType = EventType.OUT_METRICS;
+    e.informationalMessage = metrics;
+    return e;
+  }
+
+  // Names of the logged fields, in the order appendLogString writes them.
+  // Keep the two in step when a public field is added.
+  private static final String LOG_HEADER = "eventType,nodeId,sourceId,"
+      + "destinationId,informationalMessage,transmittedMessage,newSimSpeed,"
+      + "nodeX,nodeY,nodeRange,nodeType,currentQuantum,isPromiscuous";
+
+  /**
+   * Append the event to a log in the DARS log format: the public fields as
+   * comma separated values, in declaration order, followed by a newline.
+   * Null fields are left empty.
+   * 
+   * @param sb
+   *          the buffer to append to. It can be reused between events.
+   */
+  public void appendLogString(StringBuilder sb) {
+    // Render any deferred text so the fields below are complete.
+    getInformationalMessage();
 
+    if (eventType != null) {
+      sb.append(eventType.name());
     }
-    // remove trailing comma
-    sb.deleteCharAt(sb.length()-1);
-    
-    // add a newline char
+    sb.append(',');
+    appendField(sb, nodeId);
+    appendField(sb, sourceId);
+    appendField(sb, destinationId);
+    appendField(sb, informationalMessage);
+    appendField(sb, transmittedMessage);
+    sb.append(newSimSpeed).append(',');
+    sb.append(nodeX).append(',');
+    sb.append(nodeY).append(',');
+    sb.append(nodeRange).append(',');
+    if (nodeType != null) {
+      sb.append(nodeType.name());
+    }
+    sb.append(',');
+    sb.append(currentQuantum).append(',');
+    sb.append(isPromiscuous);
     sb.append(newline);
+  }
+
+  private static void appendField(StringBuilder sb, String field) {
+    if (field != null) {
+      sb.append(field);
+    }
+    sb.append(',');
+  }
+
+  public String getLogString() {
+    StringBuilder sb = new StringBuilder(128);
+    appendLogString(sb);
     return sb.toString();
   }
 
   public static String getLogHeader() {
-    // use reflection to get each field name
-    Class<DARSEvent> c = DARSEvent.class;
-    Field[] fields = c.getFields();
-    String ret = "";
-    for (Field f : fields) {
-      ret += f.getName() + ",";
-    }
-    // remove trailing comma
-    ret = ret.substring(0, ret.length() - 1);
-    return ret;
+    return LOG_HEADER;
   }
 
-  private static EventType getEventTypeFromString(String str) {
+  static EventType getEventTypeFromString(String str) {
     // use reflection to get each field
     for(EventType e : EventType.values()) {
       if(e.toString().equals(str)) return e;  
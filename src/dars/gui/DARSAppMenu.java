@@ -12,7 +12,6 @@ import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.KeyEvent;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.Queue;
 import java.util.Random;
 import javax.swing.BorderFactory;
@@ -44,6 +43,7 @@ import dars.Utilities;
 import dars.event.DARSEvent;
 import dars.event.DARSEvent.EventType;
 import dars.logger.Logger;
+import dars.logger.EventStream;
 import dars.logger.Parser;
 import dars.proto.NodeFactory.NodeType;
 import dars.replayer.Replayer;
@@ -67,6 +67,7 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
   private JMenuItem          pauseMenuItem        = new JMenuItem("Pause");
   private JMenuItem          resumeMenuItem        = new JMenuItem("Resume");
   private JMenuItem          stopMenuItem        = new JMenuItem("Stop");
+  private JMenuItem          fastForwardMenuItem = new JMenuItem("Fast Forward Replay...");
   private JMenu              helpMenu            = new JMenu("Help");
   private JMenuItem          readmeMenuItem            = new JMenuItem("Getting Started");
   private JMenuItem          aboutMenuItem            = new JMenuItem("About");
@@ -158,6 +159,9 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
     controlMenu.add(pauseMenuItem);
     controlMenu.add(resumeMenuItem);
     controlMenu.add(stopMenuItem);
+    controlMenu.addSeparator();
+    controlMenu.add(fastForwardMenuItem);
+    fastForwardMenuItem.setEnabled(false);
     
     // Add elements to the sim  and their sub menus
     simMenu.add(newMenu);
@@ -355,6 +359,35 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
     stopMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, ActionEvent.ALT_MASK));
     resumeMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R, ActionEvent.ALT_MASK));
     
+    fastForwardMenuItem.addActionListener(new ActionListener() {
+      public void actionPerformed(ActionEvent e) {
+        if (replayer == null || !replayer.isRunning()) {
+          return;
+        }
+        String input = JOptionPane.showInputDialog(null,
+            "Fast forward to which quantum? The replay ends at quantum "
+                + replayer.getLastQuantum() + ".");
+
+        // If they hit cancel return.
+        if (input == null) {
+          return;
+        }
+
+        long quantum;
+        try {
+          quantum = Long.parseLong(input.trim());
+        } catch (NumberFormatException nfe) {
+          JOptionPane.showMessageDialog(null, "Invalid Entry, Numeric Only.");
+          return;
+        }
+
+        if (!replayer.fastForwardTo(quantum)) {
+          JOptionPane.showMessageDialog(null, "The simulation is already at quantum "
+              + quantums + ".");
+        }
+      }
+    });
+
     clearNodesMenuItem.addActionListener(new ActionListener() {
       public void actionPerformed(ActionEvent e) {
         InputHandler.dispatch(DARSEvent.inClearSim());
@@ -444,10 +477,12 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
           
           String name = chooser.getSelectedFile().getPath();
           
-          //Parse the replay events into memory
-          Queue<DARSEvent> Q = Parser.parseReplay(name);
+          //Find the end of the replay. The events themselves are read as
+          //the replay goes.
+          long lastQuantum = Parser.findLastReplayQuantum(name);
+          EventStream events = Parser.openReplay(name);
           
-          if(Q == null) {
+          if(events == null) {
             Utilities.showError("Log file can not be parsed.");
             return;
           }
@@ -456,6 +491,7 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
           NodeType nt = Utilities.popupAskNodeType();
           if(nt == null) {
             //User canceled..
+            events.close();
             return;
           }
           
@@ -465,12 +501,14 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
           //Ask the user what mode of replay they want
           ReplayMode mode = Replayer.askReplayMode();
           if(mode == null) {
+            events.close();
             return;
           }
           
           //Instantiate a new replayer with the replay events
           //Name the gui as the replayerListener.
-          replayer = new Replayer(Q, (Replayer.ReplayerListener)guiInstance.getReplayerListener(), mode);
+          replayer = new Replayer(events, lastQuantum, guiInstance.getSimEngine(),
+              (Replayer.ReplayerListener)guiInstance.getReplayerListener(), mode);
           
         }
       }
@@ -764,36 +802,61 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
   private long quantums = 0;
   
   public void quantumElapsed() {
-    quantums += 1;
+    setQuantum(quantums + 1);
+  }  
+  
+  private void setQuantum(long quantum) {
+    quantums = quantum;
     currentQuantumLabel.setText(Long.toString(quantums));
     if(replayPBar.isVisible()) {
       replayPBar.setValue((int)quantums);
     }
-    
-  }  
+  }
   
   @Override
-  public void replayerStarted(Queue<DARSEvent> Q, Replayer instance) {
-    if(Q.size() == 0) return;
-    
-    replayPBar.setVisible(true);
-    
-    //Get the last event of the replay. Use it to determine the upper bound for the progress bar.
-    DARSEvent e = null;
-    Iterator<DARSEvent> i = Q.iterator();
-    while(i.hasNext()) {
-      e = i.next();
+  public void replayerFastForwardStarted(long targetQuantum) {
+    fastForwardMenuItem.setEnabled(false);
+    simModeLabel.setText("Fast Forward");
+  }
+  
+  /**
+   * @param quantum
+   *          the quantum the simulation is at now. The quanta elapsed while
+   *          fast forwarding are not announced one by one.
+   */
+  @Override
+  public void replayerFastForwardFinished(long quantum) {
+    setQuantum(quantum);
+    if(replayer != null && replayer.isRunning()) {
+      fastForwardMenuItem.setEnabled(true);
+      setReplayModeLabel(replayer);
     }
-
-    replayPBar.setMaximum((int)e.currentQuantum - 1);
-    
-    //Set the mode
+  }
+  
+  private void setReplayModeLabel(Replayer instance) {
     if(instance.getMode() == ReplayMode.LOCKED) {
       simModeLabel.setText("Locked Replay");
     }
     else {
       simModeLabel.setText("Interactive Replay");
     }
+  }
+  
+  @Override
+  public void replayerStarted(long lastQuantum, Replayer instance) {
+    //Nothing to show if the whole replay was at the zero quantum.
+    if(lastQuantum <= 0) return;
+    
+    replayPBar.setVisible(true);
+    
+    //Use the last event of the replay to determine the upper bound for the progress bar.
+    replayPBar.setMaximum((int)lastQuantum - 1);
+    
+    //Set the mode
+    setReplayModeLabel(instance);
+    
+    //The replay can be run ahead from here on.
+    fastForwardMenuItem.setEnabled(true);
     
   }
   
@@ -808,6 +871,7 @@ public class DARSAppMenu implements ReplayerListener, ComponentListener {
    //hide the replay progress bar
    replayPBar.setVisible(false);
    replayPBar.setValue(0);
+   fastForwardMenuItem.setEnabled(false);
 
   }
 
@@ -9,6 +9,7 @@ import dars.InputHandler;
 import dars.Message;
 import dars.NodeInspector;
 import dars.OutputConsumer;
+import dars.SimEngine;
 import dars.Utilities;
 import dars.event.DARSEvent;
 import dars.replayer.Replayer;
@@ -18,7 +19,6 @@ import java.awt.*;
 import java.awt.event.ComponentEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.Queue;
 
 public class GUI extends JFrame implements OutputConsumer {
 
@@ -36,6 +36,10 @@ public class GUI extends JFrame implements OutputConsumer {
   private SimArea            simArea             = new SimArea();
 
   private DARSAppMenu        menuArea            ;
+  private SimEngine          simEngine;
+
+  // Set while a replay fast forwards, see shouldSkip().
+  private volatile boolean   fastForwarding      = false;
 
   public GUI() {
     super(Defaults.TITLE_STRING);
@@ -162,6 +166,14 @@ public class GUI extends JFrame implements OutputConsumer {
 
   }
 
+  public void setSimEngine(SimEngine s) {
+    simEngine = s;
+  }
+
+  public SimEngine getSimEngine() {
+    return simEngine;
+  }
+
   private class ThreadSafeConsumer implements Runnable {
     public DARSEvent e;
 
@@ -175,7 +187,7 @@ public class GUI extends JFrame implements OutputConsumer {
         //select the node
         simArea.selectNode(e.nodeId);
         nodeAttributesArea.setNodeById(e.nodeId);   
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
 
       case OUT_MOVE_NODE:
@@ -187,24 +199,24 @@ public class GUI extends JFrame implements OutputConsumer {
         nodeAttributesArea.setNodeById(e.nodeId);
         
         //show the event in the visual log
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
 
       case OUT_SET_NODE_RANGE:
         // Refresh the node attributes panel
         nodeAttributesArea.setNodeById(e.nodeId);
         simArea.setNodeRange(e.nodeId, e.nodeRange);
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
         
       case OUT_SET_NODE_PROMISCUITY:
         // Refresh the node attributes panel
         nodeAttributesArea.setNodeById(e.nodeId);
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
     
       case OUT_MSG_RECEIVED:
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         JOptionPane.showMessageDialog(null, "Successful Message Transmission!\n" +
                                             "Source Node: "+ e.sourceId + "\n" + 
                                             "Destination Node: " + e.destinationId + "\n" +
@@ -212,14 +224,14 @@ public class GUI extends JFrame implements OutputConsumer {
         break;
       
       case OUT_INSERT_MESSAGE:
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
         
   
       case OUT_NARRMSG_RECEIVED:
         // Animate the event
         simArea.traceMessage(e.sourceId, e.destinationId, Defaults.NARRMSG_COLOR, 5, Defaults.NARRMSG_THICKNESS, 1);
-        logArea.appendLog("NODE INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("NODE INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
 
       
@@ -228,7 +240,7 @@ public class GUI extends JFrame implements OutputConsumer {
         //If the destination is BROADCAST, animate it.
         if(e.destinationId.equals(Message.BCAST_STRING)){
           simArea.nodeBroadcast(e.sourceId);
-          logArea.appendLog("NODE INFO", e.informationalMessage, e.currentQuantum);
+          logArea.appendLog("NODE INFO", e.getInformationalMessage(), e.currentQuantum);
         }
         break;
         
@@ -236,7 +248,7 @@ public class GUI extends JFrame implements OutputConsumer {
       case OUT_CONTROLMSG_RECEIVED:
         // Animate the event
         simArea.traceMessage(e.sourceId, e.destinationId, Defaults.CNTRLMSG_COLOR,1, Defaults.CNTRLMSG_THICKNESS,0);
-        logArea.appendLog("NODE INFO", e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("NODE INFO", e.getInformationalMessage(), e.currentQuantum);
         break;
 
         
@@ -244,17 +256,20 @@ public class GUI extends JFrame implements OutputConsumer {
         // Remove the node
         simArea.deleteNode(e.nodeId);
         nodeAttributesArea.nodeDeleted(e.nodeId);
-        logArea.appendLog("SIM INFO", e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO", e.getInformationalMessage(), e.currentQuantum);
         break;
 
       case OUT_DEBUG:
-        logArea.appendLog("SIM DEBUG" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM DEBUG" , e.getInformationalMessage(), e.currentQuantum);
         break;
       case OUT_ERROR:
-        logArea.appendLog("SIM ERROR" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM ERROR" , e.getInformationalMessage(), e.currentQuantum);
         break;
       case OUT_NODE_INFO:
-        logArea.appendLog("NODE INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("NODE INFO" , e.getInformationalMessage(), e.currentQuantum);
+        break;
+      case OUT_METRICS:
+        logArea.appendLog("SIM METRICS" , e.getInformationalMessage(), e.currentQuantum);
         break;
         
       case OUT_QUANTUM_ELAPSED:
@@ -271,7 +286,7 @@ public class GUI extends JFrame implements OutputConsumer {
         menuArea.simStarted();
         //Tell the simarea what the simulation speed is
         simArea.setSimSpeed(e.newSimSpeed);
-        logArea.appendLog("SIM INFO", e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO", e.getInformationalMessage(), e.currentQuantum);
         break;
 
       case OUT_STOP_SIM:
@@ -279,7 +294,7 @@ public class GUI extends JFrame implements OutputConsumer {
         menuArea.simStopped();
         simArea.simStopped();
         nodeAttributesArea.simStopped();
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         
         //Prompt the user to save the log
         int ret = JOptionPane.showConfirmDialog(null,
@@ -296,20 +311,20 @@ public class GUI extends JFrame implements OutputConsumer {
         menuArea.simPaused();
         simArea.simPaused();
         nodeAttributesArea.simPaused();
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
 
       case OUT_RESUME_SIM:
         //Notify the menu that the sim has resumed
         menuArea.simResumed();
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
         break;
 
       case OUT_CLEAR_SIM:
         //Clear the sim area.
         nodeAttributesArea.clear();
         simArea.clear();
-        logArea.appendLog("SIM INFO", e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO", e.getInformationalMessage(), e.currentQuantum);
         break;
      
       case OUT_NEW_SIM:
@@ -328,13 +343,43 @@ public class GUI extends JFrame implements OutputConsumer {
         //Let the menu area know that a new sim has been created
         menuArea.newSim(e.nodeType);
         
-        logArea.appendLog("SIM INFO" , e.informationalMessage, e.currentQuantum);
+        logArea.appendLog("SIM INFO" , e.getInformationalMessage(), e.currentQuantum);
 
       }
     }
   }
 
+  /**
+   * Returns whether an event can be left out while a replay fast forwards.
+   * These only animate or log what the nodes do; events that change the
+   * nodes or the state of the simulation are always shown.
+   */
+  private boolean shouldSkip(DARSEvent e) {
+    if (!fastForwarding) {
+      return false;
+    }
+    switch (e.eventType) {
+    case OUT_NARRMSG_RECEIVED:
+    case OUT_NARRMSG_TRANSMITTED:
+    case OUT_CONTROLMSG_RECEIVED:
+    case OUT_CONTROLMSG_TRANSMITTED:
+    case OUT_MSG_RECEIVED:
+    case OUT_INSERT_MESSAGE:
+    case OUT_NODE_INFO:
+    case OUT_DEBUG:
+    case OUT_METRICS:
+    case OUT_QUANTUM_ELAPSED:
+      return true;
+    default:
+      return false;
+    }
+  }
+
   public void consumeOutput(DARSEvent e) {
+    if (shouldSkip(e)) {
+      return;
+    }
+
     // schedule the event to be processed later so as to not disturb the gui's
     // event thread
     ThreadSafeConsumer c = new ThreadSafeConsumer();
@@ -361,8 +406,8 @@ public class GUI extends JFrame implements OutputConsumer {
 
   public class ThreadSafeReplayerListener implements ReplayerListener {
     @Override
-    public void replayerStarted(Queue<DARSEvent> Q, Replayer instance) {
-      ReplayerStartedActionHandler action = new ReplayerStartedActionHandler(Q,instance);
+    public void replayerStarted(long lastQuantum, Replayer instance) {
+      ReplayerStartedActionHandler action = new ReplayerStartedActionHandler(lastQuantum,instance);
       if(!SwingUtilities.isEventDispatchThread()) {
         try {
         SwingUtilities.invokeAndWait(action);
@@ -379,16 +424,16 @@ public class GUI extends JFrame implements OutputConsumer {
     class ReplayerStartedActionHandler implements Runnable {
 
       private final Replayer instance;
-      private final Queue<DARSEvent> Q;
-      ReplayerStartedActionHandler(Queue<DARSEvent> Q, Replayer instance) {
-        this.Q = Q;
+      private final long lastQuantum;
+      ReplayerStartedActionHandler(long lastQuantum, Replayer instance) {
+        this.lastQuantum = lastQuantum;
         this.instance = instance;
       }
       
       @Override
       public void run() {
         //Send the signal to the menuArea
-        menuArea.replayerStarted(Q, instance);
+        menuArea.replayerStarted(lastQuantum, instance);
         
         //SetLockedReplayMode on all components
         if(instance.getMode() == ReplayMode.LOCKED) {
@@ -460,6 +505,33 @@ public class GUI extends JFrame implements OutputConsumer {
         menuArea.setSimModeLabel("Normal");
       }
     }
+
+    @Override
+    public void replayerFastForwardStarted(final long targetQuantum) {
+      // Stop taking the events in right away, the quanta speed up as soon as
+      // this returns.
+      fastForwarding = true;
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          menuArea.replayerFastForwardStarted(targetQuantum);
+          logArea.appendLog("SIM INFO", "Fast forwarding to quantum " + targetQuantum + ".",
+              simEngine.getTime());
+        }
+      });
+    }
+
+    @Override
+    public void replayerFastForwardFinished(final long quantum) {
+      fastForwarding = false;
+      // Catch up with the quanta that were skipped.
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          menuArea.replayerFastForwardFinished(quantum);
+          nodeAttributesArea.updateNodeDialogs();
+          logArea.appendLog("SIM INFO", "Fast forwarded to quantum " + quantum + ".", quantum);
+        }
+      });
+    }
   }
   private final ThreadSafeReplayerListener threadSafeReplayerListener = new ThreadSafeReplayerListener();
   public ThreadSafeReplayerListener getReplayerListener() {
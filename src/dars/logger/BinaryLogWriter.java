@@ -0,0 +1,103 @@
+package dars.logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import dars.event.BinaryEventCodec;
+import dars.event.DARSEvent;
+
+/**
+ * Writes events to a file in the binary log format, see BinaryEventCodec.
+ *
+ * Events are encoded into a 1MB direct buffer that is written to the file
+ * channel whenever it fills up, so the file is written in large blocks no
+ * matter how small the events are.
+ */
+class BinaryLogWriter {
+
+  private static final int       BUFFER_SIZE = 1 << 20;
+
+  private final FileOutputStream stream;
+  private final FileChannel      channel;
+  private final ByteBuffer       buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final BinaryEventCodec codec  = new BinaryEventCodec();
+
+  // Bytes written to the file so far, not counting the buffer.
+  private long                   written = 0;
+
+  /**
+   * Create the file, overwriting it if it exists, and write the log header.
+   */
+  BinaryLogWriter(String path) throws IOException {
+    stream = new FileOutputStream(path);
+    channel = stream.getChannel();
+    codec.writeHeader(buffer);
+  }
+
+  void write(DARSEvent e) throws IOException {
+    int size = BinaryEventCodec.maxEncodedSize(e);
+    if (buffer.remaining() < size) {
+      writeBuffer();
+
+      // An event too large for the buffer goes out on its own.
+      if (buffer.remaining() < size) {
+        ByteBuffer large = ByteBuffer.allocate(size);
+        codec.encode(e, large);
+        large.flip();
+        writeFully(large);
+        return;
+      }
+    }
+    codec.encode(e, buffer);
+  }
+
+  /**
+   * Write a sync point for the log index.
+   *
+   * @return the position of the sync point in the file.
+   */
+  long sync(long quantum) throws IOException {
+    if (buffer.remaining() < BinaryEventCodec.maxSyncSize()) {
+      writeBuffer();
+    }
+    long position = position();
+    codec.writeSync(quantum, buffer);
+    return position;
+  }
+
+  /**
+   * Returns the number of bytes written so far, the buffered ones included.
+   */
+  long position() {
+    return written + buffer.position();
+  }
+
+  /**
+   * Write out the buffered events.
+   */
+  void flush() throws IOException {
+    writeBuffer();
+  }
+
+  void close() throws IOException {
+    try {
+      writeBuffer();
+    } finally {
+      stream.close();
+    }
+  }
+
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    writeFully(buffer);
+    buffer.clear();
+  }
+
+  private void writeFully(ByteBuffer b) throws IOException {
+    while (b.hasRemaining()) {
+      written += channel.write(b);
+    }
+  }
+}
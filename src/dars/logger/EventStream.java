@@ -0,0 +1,103 @@
+package dars.logger;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import dars.event.DARSEvent;
+
+/**
+ * Iterates over the replay or setup events of a log as it is read.
+ *
+ * Only the next event is held in memory, so a log of any length can be
+ * replayed in constant memory. Use Parser.openReplay(), Parser.seek() or
+ * Parser.openSetup() to get a stream, and close it when done.
+ *
+ * A read error ends the stream early. Check getError() at the end of the
+ * stream to tell a damaged log from a finished one. The stream may be closed
+ * from another thread than the one reading it.
+ */
+public class EventStream implements Iterator<DARSEvent> {
+
+  private final LogReader reader;
+  private final boolean   setup;
+  private final long      fromQuantum;
+  private DARSEvent       next;
+  private boolean         done = false;
+  private IOException     error;
+
+  EventStream(LogReader reader, boolean setup, long fromQuantum) {
+    this.reader = reader;
+    this.setup = setup;
+    this.fromQuantum = fromQuantum;
+  }
+
+  /**
+   * Returns the next event without taking it off the stream, or null at the
+   * end of the stream.
+   */
+  public synchronized DARSEvent peek() {
+    if (next == null && !done) {
+      next = readNext();
+    }
+    return next;
+  }
+
+  @Override
+  public synchronized boolean hasNext() {
+    return peek() != null;
+  }
+
+  @Override
+  public synchronized DARSEvent next() {
+    DARSEvent d = peek();
+    if (d == null) {
+      throw new NoSuchElementException();
+    }
+    next = null;
+    return d;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Returns the error that ended the stream early, or null if the stream was
+   * read to the end of the log or has not ended yet.
+   */
+  public synchronized IOException getError() {
+    return error;
+  }
+
+  public synchronized void close() {
+    done = true;
+    next = null;
+    reader.close();
+  }
+
+  private DARSEvent readNext() {
+    try {
+      DARSEvent d;
+      while ((d = reader.next()) != null) {
+        if (setup) {
+          // Setup events are all at the start of the log, so the rest of the
+          // log does not have to be read.
+          if (d.currentQuantum != 0) {
+            break;
+          }
+          if (Parser.isSetupEvent(d)) {
+            return d;
+          }
+        } else if (d.currentQuantum >= fromQuantum && Parser.isReplayEvent(d)) {
+          return d;
+        }
+      }
+    } catch (IOException e) {
+      error = e;
+    }
+    close();
+    return null;
+  }
+}
@@ -0,0 +1,175 @@
+package dars.logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Index of the quanta of a log, kept in a file next to the log.
+ *
+ * While it writes a log, the Logger adds an entry whenever an event reaches
+ * the next multiple of Defaults.LOG_INDEX_INTERVAL quanta. An entry holds the
+ * quantum of that event and the position in the log that reading has to
+ * start from to get it: the start of its line in a CSV log, or the sync point
+ * written just before it in a binary log.
+ *
+ * The file is the magic bytes "DARSLIDX" followed by one 16 byte entry per
+ * index point, the quantum and the position as big endian longs. A log
+ * without an index can still be read, just not part way through.
+ */
+public final class LogIndex {
+
+  public static final byte[] MAGIC      = { 'D', 'A', 'R', 'S', 'L', 'I', 'D', 'X' };
+  private static final int   ENTRY_SIZE = 16;
+
+  private final long[]       quanta;
+  private final long[]       positions;
+  private final int          size;
+
+  private LogIndex(long[] quanta, long[] positions, int size) {
+    this.quanta = quanta;
+    this.positions = positions;
+    this.size = size;
+  }
+
+  /**
+   * Returns the path of the index of the given log.
+   */
+  public static String getIndexPath(String logPath) {
+    return logPath + ".idx";
+  }
+
+  /**
+   * Load the index of a log.
+   *
+   * Entries that point past the end of the log, e.g. of a log that was cut
+   * short, are left out.
+   *
+   * @return the index, or null if the log has no readable index.
+   */
+  static LogIndex load(String logPath) {
+    File indexFile = new File(getIndexPath(logPath));
+    if (!indexFile.exists()) {
+      return null;
+    }
+    long logLength = new File(logPath).length();
+    int count = (int) ((indexFile.length() - MAGIC.length) / ENTRY_SIZE);
+    if (count < 0) {
+      return null;
+    }
+    long[] quanta = new long[count];
+    long[] positions = new long[count];
+    int size = 0;
+
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+          indexFile)));
+      for (int i = 0; i < MAGIC.length; i++) {
+        if (in.readByte() != MAGIC[i]) {
+          return null;
+        }
+      }
+      while (size < count) {
+        long quantum = in.readLong();
+        long position = in.readLong();
+        // Entries only go forward.
+        if (position >= logLength
+            || (size > 0 && (quantum <= quanta[size - 1] || position <= positions[size - 1]))) {
+          break;
+        }
+        quanta[size] = quantum;
+        positions[size] = position;
+        size++;
+      }
+    } catch (EOFException e) {
+      // Keep the entries read so far.
+    } catch (IOException e) {
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // Nothing to do.
+        }
+      }
+    }
+    return new LogIndex(quanta, positions, size);
+  }
+
+  /**
+   * Delete the index of a log, if it has one.
+   */
+  static void delete(String logPath) {
+    File indexFile = new File(getIndexPath(logPath));
+    if (indexFile.exists()) {
+      indexFile.delete();
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  long getQuantum(int i) {
+    return quanta[i];
+  }
+
+  long getPosition(int i) {
+    return positions[i];
+  }
+
+  /**
+   * Returns the last entry at or before the given quantum, or -1 if the
+   * quantum comes before the first entry.
+   */
+  int find(long quantum) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (quanta[mid] <= quantum) {
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return hi;
+  }
+
+  /**
+   * Writes the index of a log as the log is written.
+   */
+  static class Writer {
+    private final DataOutputStream out;
+
+    /**
+     * Create the index of the given log, overwriting it if it exists.
+     */
+    Writer(String logPath) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+          getIndexPath(logPath))));
+      out.write(MAGIC);
+    }
+
+    void add(long quantum, long position) throws IOException {
+      out.writeLong(quantum);
+      out.writeLong(position);
+    }
+
+    void flush() throws IOException {
+      out.flush();
+    }
+
+    void close() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package dars.logger;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import dars.event.BinaryEventCodec;
+import dars.event.DARSEvent;
+
+/**
+ * Reads the events of a DARS log, in either the binary or the CSV format.
+ *
+ * Use open() to get a reader for a file. The format is told apart by the
+ * first bytes of the file.
+ */
+public abstract class LogReader {
+
+  /**
+   * Open a log file.
+   *
+   * @param path
+   *
+   * @return a reader positioned before the first event, or null if the file
+   *         is not a DARS log.
+   *
+   * @throws IOException
+   *           if the file can not be read.
+   */
+  public static LogReader open(String path) throws IOException {
+    byte[] head = new byte[BinaryEventCodec.MAGIC.length];
+    int n;
+    FileInputStream in = new FileInputStream(path);
+    try {
+      n = in.read(head);
+    } finally {
+      in.close();
+    }
+
+    LogReader reader;
+    if (BinaryEventCodec.isBinaryLog(head, n)) {
+      reader = new BinaryLogReader(path);
+    } else {
+      reader = new CsvLogReader(path);
+    }
+    if (!reader.readHeader()) {
+      reader.close();
+      return null;
+    }
+    return reader;
+  }
+
+  /**
+   * Returns whether the file is a DARS log in either format.
+   */
+  public static boolean isLogFile(String path) {
+    try {
+      LogReader reader = open(path);
+      if (reader == null) {
+        return false;
+      }
+      reader.close();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  abstract boolean readHeader() throws IOException;
+
+  /**
+   * Returns the next event of the log, or null at the end of the log. Lines
+   * or records that can not be read are skipped.
+   */
+  public abstract DARSEvent next() throws IOException;
+
+  /**
+   * Continue reading from the given position of the file, which must be one
+   * taken from the LogIndex of the log.
+   *
+   * @throws IOException
+   *           if the position is not one reading can start from.
+   */
+  abstract void seek(long position) throws IOException;
+
+  public abstract void close();
+
+  private static class CsvLogReader extends LogReader {
+    private final FileInputStream stream;
+    private BufferedReader        input;
+
+    CsvLogReader(String path) throws IOException {
+      stream = new FileInputStream(path);
+      input = new BufferedReader(new InputStreamReader(stream));
+    }
+
+    @Override
+    boolean readHeader() throws IOException {
+      // Make sure this is a valid DARS Log file by matching the first line
+      // with the header of current DARSEvents
+      return DARSEvent.getLogHeader().equals(input.readLine());
+    }
+
+    @Override
+    public DARSEvent next() throws IOException {
+      String line;
+      while ((line = input.readLine()) != null) {
+        DARSEvent d = DARSEvent.parseLogString(line);
+        if (d != null) {
+          return d;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    void seek(long position) throws IOException {
+      // Lines are indexed by where they start.
+      ByteBuffer before = ByteBuffer.allocate(1);
+      if (position > 0
+          && (stream.getChannel().read(before, position - 1) != 1 || before.get(0) != '\n')) {
+        throw new IOException("The log index does not match the log.");
+      }
+      // The reader has read ahead, start a new one at the position.
+      stream.getChannel().position(position);
+      input = new BufferedReader(new InputStreamReader(stream));
+    }
+
+    @Override
+    public void close() {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // Nothing to do.
+      }
+    }
+  }
+
+  private static class BinaryLogReader extends LogReader {
+    private static final int       BUFFER_SIZE = 1 << 20;
+
+    private final FileInputStream  stream;
+    private final FileChannel      channel;
+    private ByteBuffer             buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final BinaryEventCodec codec  = new BinaryEventCodec();
+    private boolean                eof    = false;
+
+    BinaryLogReader(String path) throws IOException {
+      stream = new FileInputStream(path);
+      channel = stream.getChannel();
+      // Start with an empty buffer.
+      buffer.flip();
+    }
+
+    @Override
+    boolean readHeader() throws IOException {
+      while (true) {
+        buffer.mark();
+        try {
+          return codec.readHeader(buffer);
+        } catch (BufferUnderflowException e) {
+          buffer.reset();
+          if (!fill()) {
+            return false;
+          }
+        }
+      }
+    }
+
+    @Override
+    public DARSEvent next() throws IOException {
+      while (true) {
+        if (!buffer.hasRemaining() && !fill()) {
+          return null;
+        }
+        buffer.mark();
+        try {
+          DARSEvent d = codec.decode(buffer);
+          if (d != null) {
+            return d;
+          }
+        } catch (BufferUnderflowException e) {
+          // The record continues past the end of the buffer.
+          buffer.reset();
+          if (!fill()) {
+            // A truncated last record, e.g. the log of a run that is still
+            // going.
+            return null;
+          }
+        }
+      }
+    }
+
+    @Override
+    void seek(long position) throws IOException {
+      channel.position(position);
+      buffer.clear();
+      buffer.flip();
+      eof = false;
+      // Reading must start at a sync point, which sets up the codec for what
+      // follows.
+      if (!fill() || !codec.isSync(buffer.get(buffer.position()))) {
+        throw new IOException("The log index does not match the log.");
+      }
+    }
+
+    /**
+     * Read more of the file into the buffer, keeping the unread bytes.
+     *
+     * @return false if nothing more could be read.
+     */
+    private boolean fill() throws IOException {
+      if (eof) {
+        return false;
+      }
+      if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+        // One record fills the whole buffer.
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        larger.put(buffer);
+        buffer = larger;
+      } else {
+        buffer.compact();
+      }
+      int n = 0;
+      while (n == 0) {
+        n = channel.read(buffer);
+      }
+      buffer.flip();
+      if (n < 0) {
+        eof = true;
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public void close() {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        // Nothing to do.
+      }
+    }
+  }
+}
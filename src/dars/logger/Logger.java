@@ -3,14 +3,17 @@
  */
 package dars.logger;
 
+import dars.Defaults;
 import dars.InputConsumer;
 import dars.OutputConsumer;
 import dars.Utilities;
 
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.File;
+import java.io.OutputStreamWriter;
 
 
 import dars.event.DARSEvent;
@@ -18,7 +21,7 @@ import dars.event.DARSEvent;
 /**
  * @author Mike Very basic logger. To use, reference the log method in a static
  *         context i.e. Logger.log(). Use a DARSEvent as the only parameter.
- *         Logger relies on the getLogString() functionality provided by the
+ *         Logger relies on the appendLogString() functionality provided by the
  *         DARSEvent. The logger is a primary consumer of events dispatched
  *         through the output handler. As such, it implements the DARSConsumer
  *         interface. Use the getInstance() method to reference the logger in a
@@ -31,30 +34,69 @@ public class Logger implements OutputConsumer, InputConsumer {
   public static synchronized void log(DARSEvent e) {
 
     // if file handle is not init, do it
-    if (fstream == null) {
+    if (fstream == null && binaryOut == null) {
       try {
         deleteLogFile();
-        fstream = new FileWriter(Utilities.getTmpLogPath());
+        if (logFormat == LogFormat.BINARY) {
+          // The binary writer writes its own header.
+          binaryOut = new BinaryLogWriter(logPath);
+        } else {
+          fstream = new FileOutputStream(logPath);
+          out = new BufferedWriter(new OutputStreamWriter(fstream),
+              WRITE_BUFFER_SIZE);
+          // append the head of the DARS log file
+          out.write(DARSEvent.getLogHeader());
+          out.write(newline);
+        }
+        index = new LogIndex.Writer(logPath);
+        nextIndexQuantum = 0;
       } catch (IOException e2) {
         Utilities.showError("(Fatal) Could not write to the DARS temporary file due to an IO exception :" + e2.getMessage());
         System.exit(1);
       }
-      out = new BufferedWriter(fstream);
-      // append the head of the DARS log file
+      
+      //Arrange for the file to be deleted on exit, unless the log was
+      //explicitly sent somewhere else
+      if (logPath.equals(Utilities.getTmpLogPath())) {
+        File tmpFile = new File(logPath);
+        tmpFile.deleteOnExit();
+        new File(LogIndex.getIndexPath(logPath)).deleteOnExit();
+      }
+    }
+
+    if (e.currentQuantum >= nextIndexQuantum) {
       try {
-        out.append(DARSEvent.getLogHeader() + newline);
+        indexQuantum(e.currentQuantum);
       } catch (IOException e1) {
         Utilities.showError("(Fatal) Could not write to the DARS temporary file due to an IO exception :" + e1.getMessage());
         System.exit(1);
       }
-      
-      //Arrange for the file to be deleted on exit
-      File tmpFile = new File(Utilities.getTmpLogPath());
-      tmpFile.deleteOnExit();
     }
 
+    if (binaryOut != null) {
+      try {
+        binaryOut.write(e);
+      } catch (IOException e1) {
+        Utilities.showError("(Fatal) Could not write to the DARS temporary file due to an IO exception :" + e1.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+
+    // Serialize the event into the reused line buffer and hand the
+    // characters straight to the writer, so logging an event does not
+    // allocate once the buffers have grown to the longest line.
+    line.setLength(0);
+    e.appendLogString(line);
+    int len = line.length();
+    if (lineChars.length < len) {
+      lineChars = new char[Math.max(len, lineChars.length * 2)];
+    }
+    line.getChars(0, len, lineChars, 0);
+
     try {
-      out.append(e.getLogString());
+      out.write(lineChars, 0, len);
+      bytesWritten += len;
     } catch (IOException e1) {
       Utilities.showError("(Fatal) Could not write to the DARS temporary file due to an IO exception :" + e1.getMessage());
       System.exit(1);
@@ -62,22 +104,150 @@ public class Logger implements OutputConsumer, InputConsumer {
 
   }
 
-  public static void deleteLogFile() {
+  /**
+   * Add an index entry for the event about to be logged, see LogIndex.
+   */
+  private static void indexQuantum(long quantum) throws IOException {
+    long position;
+    if (binaryOut != null) {
+      position = binaryOut.sync(quantum);
+    } else {
+      out.flush();
+      position = fstream.getChannel().position();
+    }
+    index.add(quantum, position);
+    nextIndexQuantum = (quantum / Defaults.LOG_INDEX_INTERVAL + 1)
+        * Defaults.LOG_INDEX_INTERVAL;
+  }
+
+  /**
+   * Returns the number of bytes logged since the program started, over every
+   * log file. A CSV log is counted in characters of events. The count can be
+   * read from any thread.
+   */
+  public static synchronized long getBytesWritten() {
+    // The binary log being written is counted from its position here rather
+    // than for every event.
+    if (binaryOut != null) {
+      return bytesWritten + binaryOut.position();
+    }
+    return bytesWritten;
+  }
+
+  public static synchronized void deleteLogFile() {
     // Make sure the file handle is closed.
     closeLogFile();
     File tmp = null;
     try {
-      tmp = new File(Utilities.getTmpLogPath());
+      tmp = new File(logPath);
       if (tmp.exists()) {
         tmp.delete();
       }
     } catch (Exception e) {
       // Fail quietly since the file doesn't exist yet
     }
+    LogIndex.delete(logPath);
+
+  }
 
+  /**
+   * Send the log to the given file instead of the temporary log file. Any
+   * log file that is currently open is closed first. The file is created, or
+   * overwritten, when the next event is logged and is kept on exit.
+   * 
+   * @param path
+   */
+  public static synchronized void setLogPath(String path) {
+    closeLogFile();
+    logPath = path;
   }
 
-  private static void closeLogFile() {
+  public static synchronized String getLogPath() {
+    return logPath;
+  }
+
+  /**
+   * The log is written in the compact binary format (see BinaryEventCodec)
+   * or as CSV text. Both can be read by the Parser, and a binary log can be
+   * exported as CSV with exportCsv().
+   */
+  public enum LogFormat { CSV, BINARY };
+
+  /**
+   * Set the format of the log. Any log file that is currently open is closed
+   * first, the new format is used from the next logged event.
+   * 
+   * @param format
+   */
+  public static synchronized void setLogFormat(LogFormat format) {
+    closeLogFile();
+    logFormat = format;
+  }
+
+  public static synchronized LogFormat getLogFormat() {
+    return logFormat;
+  }
+
+  /**
+   * Write a log of either format out as CSV text.
+   * 
+   * @param logFile
+   *          the log to export.
+   * @param csvFile
+   *          the file to write. It is overwritten if it exists.
+   * 
+   * The CSV file is not indexed, it is meant for other tools.
+   * 
+   * @return false if logFile is not a DARS log.
+   * 
+   * @throws IOException
+   */
+  public static boolean exportCsv(String logFile, String csvFile)
+      throws IOException {
+    LogReader in = LogReader.open(logFile);
+    if (in == null) {
+      return false;
+    }
+    BufferedWriter csv = null;
+    LogIndex.delete(csvFile);
+    try {
+      csv = new BufferedWriter(new FileWriter(csvFile), WRITE_BUFFER_SIZE);
+      csv.write(DARSEvent.getLogHeader());
+      csv.write(newline);
+      StringBuilder sb = new StringBuilder(256);
+      DARSEvent e;
+      while ((e = in.next()) != null) {
+        sb.setLength(0);
+        e.appendLogString(sb);
+        csv.append(sb);
+      }
+    } finally {
+      in.close();
+      if (csv != null) {
+        csv.close();
+      }
+    }
+    return true;
+  }
+
+  private static synchronized void closeLogFile() {
+    if (index != null) {
+      try {
+        index.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      index = null;
+    }
+    if (binaryOut != null) {
+      bytesWritten += binaryOut.position();
+      try {
+        binaryOut.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      binaryOut = null;
+    }
     if (fstream != null) {
       try {
         if (out != null) {
@@ -93,14 +263,31 @@ public class Logger implements OutputConsumer, InputConsumer {
   }
 
   public void flushLogFile() {
-    if (fstream != null) {
-      try {
-        if (out != null) {
-          out.flush();
+    // The log may be written from another thread, see AsyncOutputConsumer.
+    synchronized (Logger.class) {
+      if (index != null) {
+        try {
+          index.flush();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      if (binaryOut != null) {
+        try {
+          binaryOut.flush();
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      if (fstream != null) {
+        try {
+          if (out != null) {
+            out.flush();
+          }
+        } catch (IOException e) {
+          // TODO Auto-generated catch block
+          e.printStackTrace();
         }
-      } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
       }
     }
   }
@@ -130,8 +317,22 @@ public class Logger implements OutputConsumer, InputConsumer {
   }
 
   private static Logger         instance_ = new Logger();
-  private static FileWriter     fstream;
+  private static FileOutputStream fstream;
   private static BufferedWriter out;
+  private static BinaryLogWriter binaryOut;
+  private static LogIndex.Writer index;
+  private static long           nextIndexQuantum;
+  // Bytes of the binary logs closed so far and characters of CSV events.
+  // Guarded by the class lock.
+  private static long           bytesWritten = 0;
+  private static LogFormat      logFormat = Defaults.BINARY_LOG ? LogFormat.BINARY
+                                              : LogFormat.CSV;
+  private static String         logPath = Utilities.getTmpLogPath();
+
+  // Buffers reused by log(), guarded by the class lock.
+  private static final int      WRITE_BUFFER_SIZE = 65536;
+  private static StringBuilder  line      = new StringBuilder(256);
+  private static char[]         lineChars = new char[256];
 
   private Logger() {
   }
@@ -3,7 +3,7 @@
  */
 package dars.logger;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.Queue;
 import dars.event.DARSEvent;
@@ -15,7 +15,7 @@ import dars.event.DARSEvent;
 public class Parser 
 {
   
-  static private boolean isReplayEvent(DARSEvent d) {
+  static boolean isReplayEvent(DARSEvent d) {
     switch(d.eventType) {
     case IN_ADD_NODE:
     case IN_DEL_NODE:
@@ -30,7 +30,7 @@ public class Parser
     return false;    
   }
   
-  static private boolean isSetupEvent(DARSEvent d) {
+  static boolean isSetupEvent(DARSEvent d) {
     //Setup events are Q=0 and most IN_... types
     if( d.currentQuantum != 0) {
       return false;
@@ -43,100 +43,165 @@ public class Parser
     return false;
   }
   
-  private static BufferedReader getBufferedReader(String file) {
-    //Open up the file
-    FileReader LogFile = null;
-    try {
-      LogFile = new FileReader(file);
-    } catch (FileNotFoundException e1) {
-      // TODO Auto-generated catch block
-      e1.printStackTrace();
+  public static Queue<DARSEvent> parseReplay(String logFileLocation) {
+    return toQueue(openReplay(logFileLocation));
+  }
+  
+  public static Queue<DARSEvent> parseSetup(String logFileLocation) {
+    return toQueue(openSetup(logFileLocation));
+  }
+  
+  /**
+   * Open a stream of the replay events of a log. The log may be in either
+   * the binary or the CSV format.
+   * 
+   * @return the stream, or null if the file is not a DARS log.
+   */
+  public static EventStream openReplay(String logFileLocation) {
+    return open(logFileLocation, false);
+  }
+  
+  /**
+   * Open a stream of the replay events of a log from the given quantum on.
+   * 
+   * If the log has an index (see LogIndex), reading starts from the index
+   * entry closest to the quantum, so only the events of a few quanta are
+   * read and skipped. Otherwise the log is read from the start.
+   * 
+   * The events before the quantum are not dispatched, so the simulation has
+   * to be brought to the state it had at the quantum some other way.
+   * 
+   * @return the stream, or null if the file is not a DARS log.
+   */
+  public static EventStream seek(String logFileLocation, long quantum) {
+    LogReader input = openReader(logFileLocation);
+    if(input == null) {
+      return null;
     }
-    return new BufferedReader(LogFile); 
+    LogIndex index = LogIndex.load(logFileLocation);
+    int entry = index == null ? -1 : index.find(quantum);
+    if(entry >= 0) {
+      try {
+        input.seek(index.getPosition(entry));
+      } catch (IOException e) {
+        // A stale index, read the log from the start.
+        input.close();
+        input = openReader(logFileLocation);
+        if(input == null) {
+          return null;
+        }
+      }
+    }
+    return new EventStream(input, false, quantum);
   }
   
+  /**
+   * Open a stream of the setup events of a log. Only the start of the log is
+   * read.
+   * 
+   * @return the stream, or null if the file is not a DARS log.
+   */
+  public static EventStream openSetup(String logFileLocation) {
+    return open(logFileLocation, true);
+  }
   
-  private static boolean isValidDARSLogFile(String logFileLocation)  {
-    BufferedReader input = getBufferedReader(logFileLocation);
-    String line = "";
-    //Make sure this is a valid DARS Log file by matching the first line
-    //with the header of current DARSEvents
-    try {
-      line = input.readLine();
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+  /**
+   * Returns the quantum of the last replay event of a log, or -1 if there are
+   * none or the file is not a DARS log.
+   * 
+   * If the log has an index, it is read from the end back one index entry at
+   * a time until a replay event is found. Otherwise it is read through once.
+   */
+  public static long findLastReplayQuantum(String logFileLocation) {
+    LogReader input = openReader(logFileLocation);
+    if(input == null) {
+      return -1;
     }
-    
     try {
-      input.close();
+      LogIndex index = LogIndex.load(logFileLocation);
+      if(index != null) {
+        for(int i = index.size() - 1; i >= 0; i--) {
+          long end = i + 1 < index.size() ? index.getQuantum(i + 1) : Long.MAX_VALUE;
+          input.seek(index.getPosition(i));
+          long last = findLastReplayQuantum(input, end);
+          if(last >= 0) {
+            return last;
+          }
+        }
+        // Anything before the first entry.
+        input.close();
+        input = openReader(logFileLocation);
+        if(input == null) {
+          return -1;
+        }
+        return findLastReplayQuantum(input, index.size() > 0 ? index.getQuantum(0) : Long.MAX_VALUE);
+      }
+      return findLastReplayQuantum(input, Long.MAX_VALUE);
     } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    }
-    if( ! DARSEvent.getLogHeader().equals(line)) {
-
-      return false;
+      // A stale index or a read error, read the log through instead.
+      input.close();
+      EventStream events = openReplay(logFileLocation);
+      long last = -1;
+      if(events == null) {
+        return last;
+      }
+      while(events.hasNext()) {
+        last = events.next().currentQuantum;
+      }
+      events.close();
+      return last;
+    } finally {
+      if(input != null) {
+        input.close();
+      }
     }
-    return true;
   }
   
-  public static Queue<DARSEvent> parseReplay(String logFileLocation) {
-    BufferedReader input = getBufferedReader(logFileLocation);
-    Queue<DARSEvent> Q = new LinkedList<DARSEvent>();
-    String line = "";
+  /**
+   * Returns the quantum of the last replay event read before the first event
+   * at or past the end quantum, or -1 if there are none.
+   */
+  private static long findLastReplayQuantum(LogReader input, long end) throws IOException {
+    long last = -1;
     DARSEvent d;
-    if(!isValidDARSLogFile(logFileLocation)) {
+    while((d = input.next()) != null && d.currentQuantum < end) {
+      if(isReplayEvent(d)) {
+        last = d.currentQuantum;
+      }
+    }
+    return last;
+  }
+  
+  private static EventStream open(String logFileLocation, boolean setup) {
+    LogReader input = openReader(logFileLocation);
+    if(input == null) {
       return null;
     }
-    
-
-    
-  //Get every DARSEvents in the file that is a Replay event.
+    return new EventStream(input, setup, 0);
+  }
+  
+  private static LogReader openReader(String logFileLocation) {
     try {
-      //Read past the first line
-      line = input.readLine();
-      
-      while((line = input.readLine()) != null) {
-        d = DARSEvent.parseLogString(line);
-        if(isReplayEvent(d)) {
-          Q.add(d);
-        }
-      }
+      return LogReader.open(logFileLocation);
     } catch (IOException e) {
-      // TODO Auto-generated catch block
       e.printStackTrace();
+      return null;
     }
-    return Q;
   }
   
-  public static Queue<DARSEvent> parseSetup(String logFileLocation) {
-    BufferedReader input = getBufferedReader(logFileLocation);
+  private static Queue<DARSEvent> toQueue(EventStream events) {
+    if(events == null) {
+      return null;
+    }
     Queue<DARSEvent> Q = new LinkedList<DARSEvent>();
-    DARSEvent d;
-    String line;
-    
-    if(!isValidDARSLogFile(logFileLocation)) {
-       return null;
-     }
-    
-    //Get every DARSEvents in the file that is a setup event.
-    try {
-      //Read past the first line
-      line = input.readLine();
-      
-      while((line = input.readLine()) != null) {
-        d = DARSEvent.parseLogString(line);
-        if(isSetupEvent(d)) {
-          Q.add(d);
-        }
-        
-      }
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+    while(events.hasNext()) {
+      Q.add(events.next());
+    }
+    events.close();
+    if(events.getError() != null) {
+      events.getError().printStackTrace();
+      return null;
     }
-    
     return Q;
   }
   
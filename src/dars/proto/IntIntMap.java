@@ -0,0 +1,116 @@
+package dars.proto;
+
+import java.util.Arrays;
+
+/**
+ * Map from int keys to int values, for the per node bookkeeping of the
+ * protocols that would otherwise box both.
+ *
+ * Keys and values are kept in two arrays and found by open addressing with
+ * linear probing. Keys must not be 0, which marks a free slot; node handles
+ * never are, see dars.NodeId. Entries can not be removed one by one, only all
+ * at once.
+ */
+public class IntIntMap {
+
+  private static final int MIN_CAPACITY = 8;
+
+  private int[]            keys;
+  private int[]            values;
+  private int              size;
+
+  public IntIntMap() {
+    keys = new int[MIN_CAPACITY];
+    values = new int[MIN_CAPACITY];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean containsKey(int key) {
+    return key != 0 && keys[find(key)] == key;
+  }
+
+  /**
+   * Returns the value of the key, or the given default if the key is not in
+   * the map.
+   */
+  public int get(int key, int defaultValue) {
+    if (key == 0) {
+      return defaultValue;
+    }
+    int i = find(key);
+    return keys[i] == key ? values[i] : defaultValue;
+  }
+
+  public void put(int key, int value) {
+    if (key == 0) {
+      throw new IllegalArgumentException("Key can not be 0");
+    }
+    int i = find(key);
+    if (keys[i] != key) {
+      // Keep the table at most half full.
+      if ((size + 1) * 2 > keys.length) {
+        grow();
+        i = find(key);
+      }
+      keys[i] = key;
+      size++;
+    }
+    values[i] = value;
+  }
+
+  public void clear() {
+    Arrays.fill(keys, 0);
+    size = 0;
+  }
+
+  /**
+   * Returns the key in the given slot, or 0 if the slot is free. Together
+   * with valueAt() and capacity() this walks the entries, in no particular
+   * order.
+   */
+  public int keyAt(int slot) {
+    return keys[slot];
+  }
+
+  public int valueAt(int slot) {
+    return values[slot];
+  }
+
+  public int capacity() {
+    return keys.length;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the slot holding the key, or the free slot where it would go.
+   */
+  private int find(int key) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    while (keys[i] != 0 && keys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new int[oldKeys.length * 2];
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != 0) {
+        int i = find(oldKeys[j]);
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+}
@@ -3,10 +3,18 @@
  */
 package dars.proto;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import javax.swing.JDialog;
 
 import dars.NodeAttributes;
 import dars.Message;
+import dars.NodeId;
+import dars.OutputHandler;
+import dars.event.DARSEvent;
+import dars.event.DARSEvent.EventType;
 
 /**
  * Base Class for all protocol specific node types.
@@ -21,6 +29,11 @@ public abstract class Node {
    */
   protected NodeAttributes att;
 
+  /**
+   * Handle of the node, see NodeId.
+   */
+  private int handle;
+
   /**
    * Node Constructor.
    * 
@@ -52,11 +65,9 @@ public abstract class Node {
    * DARSEvent for the message that is being sent. A message is either a Control
    * message or Narrative. Example follows:
    * 
-   * OutputHandler.dispatch(DARSEvent.outControlMsgTransmitted(this.att.id,
-   * message));
+   * dispatchMessage(EventType.OUT_CONTROLMSG_TRANSMITTED, message);
    * 
-   * OutputHandler.dispatch(DARSEvent.outNarrMsgTransmitted(this.att.id,
-   * message));
+   * dispatchMessage(EventType.OUT_NARRMSG_TRANSMITTED, message);
    * 
    * @author kresss
    * 
@@ -123,6 +134,56 @@ public abstract class Node {
    */
   public abstract void clockTick();
 
+  /**
+   * Returns how many of the coming clock ticks the node would spend doing
+   * nothing, provided no message reaches it in the meantime.
+   * 
+   * An engine that knows this can skip the node for those ticks and call
+   * skipTicks() when it next needs the node. Erring on the low side is
+   * always safe; the default of 0 has the node ticked every quantum.
+   */
+  public int getIdleTicks() {
+    return 0;
+  }
+
+  /**
+   * Pass the given number of clock ticks, which getIdleTicks() said the node
+   * would spend idle.
+   * 
+   * The default ticks the node that many times. Protocols that count ticks
+   * should just move their count on.
+   * 
+   * @param ticks
+   */
+  public void skipTicks(int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      clockTick();
+    }
+  }
+
+  /**
+   * The queues a node may keep messages in, see getQueueLength().
+   */
+  public enum QueueType { TRANSMIT, RECEIVE, WAIT };
+
+  /**
+   * Returns the number of messages in one of the node's queues, for the
+   * profiler. Protocols without such a queue return 0, as the default does.
+   * 
+   * @param type
+   */
+  public int getQueueLength(QueueType type) {
+    return 0;
+  }
+
+  /**
+   * Returns the number of entries in the node's route table, for the metrics
+   * exporter. Protocols without a route table return 0, as the default does.
+   */
+  public int getRouteCount() {
+    return 0;
+  }
+
   /**
    * Return a JDialog that will be displayed by the GUI.
    * 
@@ -145,6 +206,26 @@ public abstract class Node {
    */
   public abstract void updateNodeDialog(JDialog dialog);
 
+  /**
+   * Write the protocol state of the node for a snapshot of the simulation.
+   * 
+   * The attributes are written by the simulation engine. Everything else the
+   * node keeps (route tables, queues, its tick count...) must be written, so
+   * that a node restored with readState() goes on to behave exactly like
+   * this one. Collections that the protocol walks must be restored in the
+   * same order; see dars.Snapshot for helpers.
+   * 
+   * @param out
+   */
+  public abstract void writeState(DataOutput out) throws IOException;
+
+  /**
+   * Read the state written by writeState() into a newly made node.
+   * 
+   * @param in
+   */
+  public abstract void readState(DataInput in) throws IOException;
+
   /**
    * **************************************************************************
    * *** Standard Node methods. Additional protocols should not modify these.
@@ -174,6 +255,18 @@ public abstract class Node {
    */
   public void setAttributes(NodeAttributes atts) {
     this.att = atts;
+    this.handle = NodeId.parse(atts.id);
+  }
+
+  /**
+   * Returns the handle of the node, which the simulation engine uses in place
+   * of its id. See NodeId.
+   * 
+   * @return the handle, or NodeId.NONE if the id is not one the engine
+   *         assigns.
+   */
+  public int getHandle() {
+    return handle;
   }
 
   /**
@@ -221,4 +314,61 @@ public abstract class Node {
         this.att.range, value);
   }
 
+  /**
+   * Dispatch an event for a message this node transmitted or received. The
+   * event is only made if a consumer would see it.
+   * 
+   * @param type
+   *          OUT_CONTROLMSG_TRANSMITTED, OUT_NARRMSG_TRANSMITTED,
+   *          OUT_CONTROLMSG_RECEIVED or OUT_NARRMSG_RECEIVED.
+   * @param message
+   *          the message.
+   */
+  protected void dispatchMessage(EventType type, Message message) {
+    if (!OutputHandler.isEnabled(type)) {
+      return;
+    }
+    DARSEvent e;
+    switch (type) {
+    case OUT_CONTROLMSG_TRANSMITTED:
+      e = DARSEvent.outControlMsgTransmitted(att.id, message);
+      break;
+    case OUT_NARRMSG_TRANSMITTED:
+      e = DARSEvent.outNarrMsgTransmitted(att.id, message);
+      break;
+    case OUT_CONTROLMSG_RECEIVED:
+      e = DARSEvent.outControlMsgReceived(att.id, message);
+      break;
+    case OUT_NARRMSG_RECEIVED:
+      e = DARSEvent.outNarrMsgReceived(att.id, message);
+      break;
+    default:
+      throw new IllegalArgumentException(type + " is not a message event.");
+    }
+    OutputHandler.dispatch(e);
+  }
+
+  /**
+   * Dispatch a debug event whose text is the parts joined together. The text
+   * is only built if a consumer would see the event, so pass a message or a
+   * packet as it is rather than its string.
+   * 
+   * @param parts
+   *          the parts of the text. A Message stands for its message string.
+   */
+  protected void debug(Object... parts) {
+    if (!OutputHandler.isEnabled(EventType.OUT_DEBUG)) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Object part : parts) {
+      if (part instanceof Message) {
+        sb.append(((Message) part).getMessage());
+      } else {
+        sb.append(part);
+      }
+    }
+    OutputHandler.dispatch(DARSEvent.outDebug(sb.toString()));
+  }
+
 }
@@ -0,0 +1,266 @@
+package dars.proto;
+
+import java.util.Arrays;
+
+import dars.NodeId;
+
+/**
+ * Slots of a route table, one per destination, found by the handle of the
+ * destination, see NodeId.
+ *
+ * A node can end up with a route to every other node, so a simulation of N
+ * nodes holds up to N*N routes. The keys are kept in an int array and found by
+ * open addressing, so a route costs a few array slots rather than a map node
+ * and a key object. Subclasses keep the route fields in arrays of their own,
+ * one element per slot.
+ *
+ * Slots are in the order their destinations were first added, like a
+ * LinkedHashMap: removing a destination and adding it again moves it to the
+ * end. The order only depends on the adds and removes, so a table rebuilt by
+ * adding the destinations in the order it walks them walks them in the same
+ * order.
+ *
+ * Slots only stay where they are until a destination is added: when the
+ * arrays are full, the slots of removed destinations are dropped and the
+ * remaining slots move down, see rebuilds().
+ */
+public abstract class RouteIndex {
+
+  protected static final int MIN_CAPACITY = 8;
+
+  /**
+   * Destinations in slot order. A removed destination leaves NodeId.NONE
+   * behind until the slots are compacted.
+   */
+  private int[]              keys         = new int[MIN_CAPACITY];
+
+  /**
+   * Number of slots in use, removed ones included.
+   */
+  private int                end;
+
+  /**
+   * Number of destinations.
+   */
+  private int                size;
+
+  /**
+   * Hash index of the keys, probed linearly. A slot holds the position in
+   * keys plus one, or 0 if it is free. It is at least twice as large as keys
+   * so that probes stay short.
+   */
+  private int[]              index        = new int[MIN_CAPACITY * 2];
+
+  /**
+   * Number of times the slots were moved or dropped.
+   */
+  private int                rebuilds;
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(int destination) {
+    return slotOf(destination) >= 0;
+  }
+
+  public boolean containsKey(String destinationId) {
+    return containsKey(NodeId.parse(destinationId));
+  }
+
+  public void clear() {
+    for (int i = 0; i < end; i++) {
+      clearSlot(i);
+    }
+    keys = new int[MIN_CAPACITY];
+    index = new int[MIN_CAPACITY * 2];
+    end = 0;
+    size = 0;
+    resizeSlots(MIN_CAPACITY);
+    rebuilds++;
+  }
+
+  /**
+   * Make the arrays of the route fields hold the given number of slots,
+   * keeping the first slots.
+   */
+  protected abstract void resizeSlots(int capacity);
+
+  /**
+   * Copy the route fields of a slot to another one.
+   */
+  protected abstract void moveSlot(int from, int to);
+
+  /**
+   * Drop what the slot of a removed destination refers to.
+   */
+  protected abstract void clearSlot(int slot);
+
+  /**
+   * Returns the slot of the destination, or -1 if it is not in the table.
+   */
+  protected final int slotOf(int destination) {
+    if (destination == NodeId.NONE) {
+      return -1;
+    }
+    int mask = index.length - 1;
+    int i = hash(destination) & mask;
+    int slot;
+    while ((slot = index[i]) != 0) {
+      if (keys[slot - 1] == destination) {
+        return slot - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Add a destination that is not in the table yet.
+   *
+   * @return the slot of the destination.
+   */
+  protected final int addSlot(int destination) {
+    if (destination == NodeId.NONE) {
+      throw new IllegalArgumentException("Not a node handle: " + destination);
+    }
+    if (end == keys.length) {
+      // Reuse the slots of removed destinations if they make up half the
+      // table, otherwise grow it.
+      rebuild(size * 2 <= end ? keys.length : keys.length * 2);
+    }
+    keys[end] = destination;
+    end++;
+    size++;
+    insertIndex(destination, end);
+    return end - 1;
+  }
+
+  /**
+   * Remove the destination in the slot and add it again, so it comes last.
+   * Unlike adding a new destination, this leaves the other slots where they
+   * are, growing the arrays if they are full, so a walk over the slots can go
+   * on.
+   *
+   * @return the new slot of the destination.
+   */
+  protected final int moveSlotToEnd(int slot) {
+    int destination = keys[slot];
+    if (end == keys.length) {
+      resize(keys.length * 2);
+    }
+    keys[end] = destination;
+    moveSlot(slot, end);
+    end++;
+    insertIndex(destination, end);
+    // The fields are copied first, since removing the slot clears them.
+    removeSlot(slot);
+    size++;
+    return end - 1;
+  }
+
+  protected final void removeSlot(int slot) {
+    // The index still points at the slot, which no key matches any more.
+    keys[slot] = NodeId.NONE;
+    clearSlot(slot);
+    size--;
+  }
+
+  protected final boolean isRemoved(int slot) {
+    return keys[slot] == NodeId.NONE;
+  }
+
+  /**
+   * Returns the first slot from the given one on that holds a destination,
+   * or -1 if there is none.
+   */
+  protected final int nextSlot(int from) {
+    for (int i = from; i < end; i++) {
+      if (keys[i] != NodeId.NONE) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the handle of the destination in the slot.
+   */
+  protected final int keyAt(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Returns a count that changes whenever the slots move, so a walk over the
+   * slots can tell its place is gone.
+   */
+  protected final int rebuilds() {
+    return rebuilds;
+  }
+
+  /**
+   * Drop the slots of removed destinations, moving the others down in order,
+   * give the arrays the given capacity and build a new index.
+   */
+  private void rebuild(int capacity) {
+    int live = 0;
+    for (int i = 0; i < end; i++) {
+      if (keys[i] != NodeId.NONE) {
+        if (i != live) {
+          keys[live] = keys[i];
+          moveSlot(i, live);
+        }
+        live++;
+      }
+    }
+    for (int i = live; i < end; i++) {
+      clearSlot(i);
+    }
+    end = live;
+    size = live;
+    if (capacity != keys.length) {
+      resize(capacity);
+    } else {
+      reindex();
+    }
+    rebuilds++;
+  }
+
+  /**
+   * Give the arrays the given capacity, keeping the slots where they are, and
+   * build a new index.
+   */
+  private void resize(int capacity) {
+    keys = Arrays.copyOf(keys, capacity);
+    resizeSlots(capacity);
+    index = new int[capacity * 2];
+    reindex();
+  }
+
+  private void reindex() {
+    Arrays.fill(index, 0);
+    for (int i = 0; i < end; i++) {
+      if (keys[i] != NodeId.NONE) {
+        insertIndex(keys[i], i + 1);
+      }
+    }
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private void insertIndex(int key, int slot) {
+    int mask = index.length - 1;
+    int i = hash(key) & mask;
+    while (index[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    index[i] = slot;
+  }
+}
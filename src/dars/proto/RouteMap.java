@@ -0,0 +1,161 @@
+package dars.proto;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import dars.NodeId;
+
+/**
+ * Route table of a node, holding one entry object per destination.
+ *
+ * Entries are keyed by the handle of their destination and walked in the
+ * order their destinations were first put, see RouteIndex: putting a new
+ * entry for a destination keeps its place, while removing it and putting it
+ * again moves it to the end.
+ *
+ * The methods taking a String look the destination up by its id. Ids that no
+ * node can have are never in the table.
+ *
+ * @param <E>
+ *          the type of the route entries.
+ */
+public class RouteMap<E> extends RouteIndex implements Iterable<E> {
+
+  /**
+   * Entries by slot.
+   */
+  private Object[] entries = new Object[MIN_CAPACITY];
+
+  /**
+   * Returns the entry for the destination, or null if there is none.
+   */
+  @SuppressWarnings("unchecked")
+  public E get(int destination) {
+    int pos = slotOf(destination);
+    return pos < 0 ? null : (E) entries[pos];
+  }
+
+  public E get(String destinationId) {
+    return get(NodeId.parse(destinationId));
+  }
+
+  /**
+   * Set the entry for the destination.
+   *
+   * @return the entry it replaces, or null if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public E put(int destination, E entry) {
+    int pos = slotOf(destination);
+    if (pos >= 0) {
+      E old = (E) entries[pos];
+      entries[pos] = entry;
+      return old;
+    }
+    // Adding the slot may replace the array.
+    pos = addSlot(destination);
+    entries[pos] = entry;
+    return null;
+  }
+
+  /**
+   * Returns where the destination comes in walk order, or -1 if it is not in
+   * the table. Positions only say which of two entries is walked first, and
+   * only until the next entry is put.
+   */
+  public int position(int destination) {
+    return slotOf(destination);
+  }
+
+  public E put(String destinationId, E entry) {
+    int destination = NodeId.parse(destinationId);
+    if (destination == NodeId.NONE) {
+      throw new IllegalArgumentException("Not a node id: " + destinationId);
+    }
+    return put(destination, entry);
+  }
+
+  /**
+   * Remove the entry for the destination.
+   *
+   * @return the entry, or null if there was none.
+   */
+  @SuppressWarnings("unchecked")
+  public E remove(int destination) {
+    int pos = slotOf(destination);
+    if (pos < 0) {
+      return null;
+    }
+    E old = (E) entries[pos];
+    removeSlot(pos);
+    return old;
+  }
+
+  public E remove(String destinationId) {
+    return remove(NodeId.parse(destinationId));
+  }
+
+  /**
+   * Returns an iterator over the entries in walk order. While walking,
+   * entries may be removed through the iterator and the entries of
+   * destinations already in the table may be replaced. Putting a new
+   * destination may make the iterator throw a
+   * ConcurrentModificationException.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    return new EntryIterator();
+  }
+
+  @Override
+  protected void resizeSlots(int capacity) {
+    entries = Arrays.copyOf(entries, capacity);
+  }
+
+  @Override
+  protected void moveSlot(int from, int to) {
+    entries[to] = entries[from];
+  }
+
+  @Override
+  protected void clearSlot(int slot) {
+    entries[slot] = null;
+  }
+
+  private class EntryIterator implements Iterator<E> {
+    private final int expectedRebuilds = rebuilds();
+    private int       next             = 0;
+    private int       last             = -1;
+
+    public boolean hasNext() {
+      if (rebuilds() != expectedRebuilds) {
+        throw new ConcurrentModificationException();
+      }
+      int slot = nextSlot(next);
+      if (slot < 0) {
+        return false;
+      }
+      next = slot;
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next++;
+      return (E) entries[last];
+    }
+
+    public void remove() {
+      if (last < 0 || isRemoved(last)) {
+        throw new IllegalStateException();
+      }
+      removeSlot(last);
+      last = -1;
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package dars.proto;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Timers of a node, keyed on the tick at which they are due.
+ *
+ * The timers are kept in a hashed wheel: a ring of slots, one per tick, with
+ * a timer due at tick t in slot t modulo the number of slots. Advancing the
+ * wheel by a tick only looks at the timers in the slot of that tick. A timer
+ * due more than a turn of the wheel ahead waits in its slot until the wheel
+ * comes round to its tick, so the wheel should have at least as many slots as
+ * the usual timeout is long.
+ *
+ * Timers can not be cancelled. Owners that change their mind leave the old
+ * timer in place and ignore it when it comes due.
+ *
+ * @param <E>
+ *          the type of what the timers are for.
+ */
+public class TimerWheel<E> {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  /**
+   * First and last timer of each slot, as an index into the timer arrays plus
+   * one, or 0 if the slot is empty. The timers of a slot are linked in the
+   * order they were set.
+   */
+  private int[]            heads;
+  private int[]            tails;
+
+  /**
+   * Due tick, item and next timer in the slot of each timer. Timers that are
+   * not in use are linked from free through next.
+   */
+  private int[]            ticks;
+  private Object[]         items;
+  private int[]            next;
+  private int              free;
+
+  /**
+   * Number of timer array entries ever used.
+   */
+  private int              used;
+
+  /**
+   * Last tick the wheel was advanced to.
+   */
+  private int              time;
+
+  /**
+   * Number of timers.
+   */
+  private int              size;
+
+  /**
+   * @param slots
+   *          number of slots, rounded up to a power of two.
+   */
+  public TimerWheel(int slots) {
+    int length = Integer.highestOneBit(Math.max(slots, 1) - 1) << 1;
+    if (length == 0) {
+      length = 1;
+    }
+    heads = new int[length];
+    tails = new int[length];
+    ticks = new int[INITIAL_CAPACITY];
+    items = new Object[INITIAL_CAPACITY];
+    next = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Returns the last tick the wheel was advanced to.
+   */
+  public int getTime() {
+    return time;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Set a timer for the item.
+   *
+   * @param item
+   * @param tick
+   *          the tick at which the timer is due. A tick the wheel has already
+   *          been advanced to is taken to mean the next one.
+   * @return the tick at which the timer will come due.
+   */
+  public int schedule(E item, int tick) {
+    if (tick <= time) {
+      tick = time + 1;
+    }
+    int timer;
+    if (free != 0) {
+      timer = free - 1;
+      free = next[timer];
+    } else {
+      if (used == ticks.length) {
+        ticks = Arrays.copyOf(ticks, used * 2);
+        items = Arrays.copyOf(items, used * 2);
+        next = Arrays.copyOf(next, used * 2);
+      }
+      timer = used++;
+    }
+    ticks[timer] = tick;
+    items[timer] = item;
+    next[timer] = 0;
+    int slot = tick & (heads.length - 1);
+    if (tails[slot] == 0) {
+      heads[slot] = timer + 1;
+    } else {
+      next[tails[slot] - 1] = timer + 1;
+    }
+    tails[slot] = timer + 1;
+    size++;
+    return tick;
+  }
+
+  /**
+   * Advance the wheel to the given tick and take out the timers that are due
+   * by then.
+   *
+   * @param now
+   * @param due
+   *          list the items of the due timers are added to, in the order of
+   *          the ticks they were due at and, for the same tick, the order the
+   *          timers were set in.
+   */
+  public void advance(int now, List<E> due) {
+    for (int tick = time + 1; tick <= now && size > 0; tick++) {
+      take(tick & (heads.length - 1), tick, due);
+    }
+    if (now > time) {
+      time = now;
+    }
+  }
+
+  /**
+   * Returns the earliest tick after the time of the wheel at which a timer is
+   * due, if that is before the limit, or else the limit. Only the slots of
+   * the ticks up to the limit are looked at, so a near limit is cheap.
+   *
+   * @param limit
+   */
+  public int nextTick(int limit) {
+    if (size == 0) {
+      return limit;
+    }
+    int last = (int) Math.min((long) limit - 1, (long) time + heads.length);
+    for (int tick = time + 1; tick <= last; tick++) {
+      for (int timer = heads[tick & (heads.length - 1)]; timer != 0; timer = next[timer - 1]) {
+        if (ticks[timer - 1] == tick) {
+          return tick;
+        }
+      }
+    }
+    if (last == limit - 1) {
+      return limit;
+    }
+    // Every slot was looked at, so the timers left are more than a turn of
+    // the wheel away.
+    int earliest = limit;
+    for (int slot = 0; slot < heads.length; slot++) {
+      for (int timer = heads[slot]; timer != 0; timer = next[timer - 1]) {
+        earliest = Math.min(earliest, ticks[timer - 1]);
+      }
+    }
+    return earliest;
+  }
+
+  /**
+   * Drop all timers and set the time of the wheel.
+   */
+  public void clear(int now) {
+    Arrays.fill(heads, 0);
+    Arrays.fill(tails, 0);
+    Arrays.fill(items, 0, used, null);
+    free = 0;
+    used = 0;
+    size = 0;
+    time = now;
+  }
+
+  /**
+   * Move the timers of the slot that are due at the given tick to the list,
+   * keeping the others in order.
+   */
+  @SuppressWarnings("unchecked")
+  private void take(int slot, int tick, List<E> due) {
+    int prev = 0;
+    int timer = heads[slot];
+    while (timer != 0) {
+      int i = timer - 1;
+      int following = next[i];
+      if (ticks[i] == tick) {
+        due.add((E) items[i]);
+        if (prev == 0) {
+          heads[slot] = following;
+        } else {
+          next[prev - 1] = following;
+        }
+        if (tails[slot] == timer) {
+          tails[slot] = prev;
+        }
+        items[i] = null;
+        next[i] = free;
+        free = timer;
+        size--;
+      } else {
+        prev = timer;
+      }
+      timer = following;
+    }
+  }
+}
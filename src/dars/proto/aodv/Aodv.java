@@ -1,10 +1,15 @@
 package dars.proto.aodv;
 
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
-import java.util.HashSet;
 
 // Exceptions
 import java.util.NoSuchElementException;
@@ -13,11 +18,17 @@ import java.lang.IllegalStateException;
 import javax.swing.JDialog;
 
 import dars.NodeAttributes;
+import dars.NodeId;
 import dars.OutputHandler;
+import dars.Snapshot;
+import dars.proto.IntIntMap;
 import dars.proto.Node;
+import dars.proto.RouteMap;
+import dars.proto.TimerWheel;
 import dars.Message;
 import dars.proto.aodv.RouteEntry.StateFlags;
 import dars.event.DARSEvent;
+import dars.event.DARSEvent.EventType;
 import dars.proto.aodv.WaitQueueEntry;
 
 /**
@@ -72,6 +83,15 @@ public class Aodv extends Node {
    */
   public static final int HELLO_INTERVAL       = 25;                      // Ticks
 
+  /**
+   * Order of wait queue entries by when they were queued.
+   */
+  private static final Comparator<WaitQueueEntry> QUEUE_ORDER = new Comparator<WaitQueueEntry>() {
+    public int compare(WaitQueueEntry a, WaitQueueEntry b) {
+      return a.Seq < b.Seq ? -1 : (a.Seq == b.Seq ? 0 : 1);
+    }
+  };
+
   /*
    * Functions that define the org.dars.proto.node interface.
    */
@@ -156,14 +176,13 @@ public class Aodv extends Node {
     Message Msg;
 
     /**
-     * MsgStr will hold the message that is sent into the network.
+     * Packet will hold the message that is sent into the network.
      */
-    String MsgStr = "";
+    AodvPacket Packet;
 
     /**
      * Message Properties
      */
-    String MsgType = "NARR";
     String MsgFlags = "";
     int MsgTTL = 0;
     String MsgOrigID = srcID;
@@ -184,12 +203,12 @@ public class Aodv extends Node {
     }
 
     /**
-     * Build the Message String.
+     * Build the Packet.
      * 
      * This is independent of which logic path is chosen below.
      */
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgTTL + '|' + MsgDestID + '|'
-        + MsgOrigID + '|' + messageText;
+    Packet = AodvPacket.narr(MsgFlags, MsgTTL, MsgDestID, MsgOrigID,
+        messageText);
 
     /**
      * Check to see if the destination node ID is in our Route Table.
@@ -208,10 +227,10 @@ public class Aodv extends Node {
         /**
          * Create the message and send it.
          */
-        Msg = new Message(DestEntry.getNextHopIP(), this.att.id, MsgStr);
+        Msg = new Message(DestEntry.getNextHopIP(), this.att.id, Packet);
         sendMessage(Msg);
 
-        OutputHandler.dispatch(DARSEvent.outDebug(MsgStr));
+        debug(Msg);
         /**
          * Done processing this request.
          */
@@ -224,7 +243,7 @@ public class Aodv extends Node {
          * During this time the message will need to be placed on the WaitQueue.
          */
         sendRREQ(MsgDestID);
-        addMessageToWaitQueue(MsgOrigID, MsgDestID, MsgStr);
+        addMessageToWaitQueue(MsgOrigID, MsgDestID, Packet);
       }
 
     } else {
@@ -235,14 +254,12 @@ public class Aodv extends Node {
       sendRREQ(MsgDestID);
       /**
        * Add the message into the wait queue. Already did the work to build the
-       * message so we use the message string. We only need the destination ID
-       * for the next iteration to figure out of we have a good route to send
-       * to.
+       * message so we use the packet. We only need the destination ID for the
+       * next iteration to figure out of we have a good route to send to.
        */
-      addMessageToWaitQueue(MsgOrigID, MsgDestID, MsgStr);
+      addMessageToWaitQueue(MsgOrigID, MsgDestID, Packet);
 
-      OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-          + " Wants to send to " + MsgDestID + " but has no Route."));
+      debug(this.att.id, " Wants to send to ", MsgDestID, " but has no Route.");
 
     }
 
@@ -267,8 +284,6 @@ public class Aodv extends Node {
    */
   private void sendMessage(Message message) {
 
-    String MsgType;
-
     if (!this.att.isPromiscuous) {
       try {
         txQueue.add(message);
@@ -280,37 +295,17 @@ public class Aodv extends Node {
       }
       
       /**
-       * Get the message type.
-       * 
-       * Message type is always the first token in the message string. Split
-       * on the '|' and get the first item in the resultant Array of Strings.
+       * Switch on the Packet type to send the DARS in events.
        */
-      MsgType = message.message.split("\\|")[0];
-
-      // TODO: Replace this terrible list of if statements with a switch
-      // statement once Java 7 is released. Java 7 supposedly has the ability
-      // to switch on strings.
-
-      /**
-       * Switch on the Message type to send the DARS in events.
-       */
-      if (MsgType.equals("RREQ")) {
-        OutputHandler.dispatch(DARSEvent.outControlMsgTransmitted(this.att.id, message));
-        return;
-      }
-
-      if (MsgType.equals("NARR")) {
-        OutputHandler.dispatch(DARSEvent.outNarrMsgTransmitted(this.att.id, message));
-        return;
-      }
-
-      if (MsgType.equals("RREP")) {
-        OutputHandler.dispatch(DARSEvent.outControlMsgTransmitted(this.att.id, message));
+      switch (AodvPacket.of(message).Type) {
+      case RREQ:
+      case RREP:
+      case RERR:
+        dispatchMessage(EventType.OUT_CONTROLMSG_TRANSMITTED, message);
         return;
-      }
 
-      if (MsgType.equals("RERR")) {
-        OutputHandler.dispatch(DARSEvent.outControlMsgTransmitted(this.att.id, message));
+      case NARR:
+        dispatchMessage(EventType.OUT_NARRMSG_TRANSMITTED, message);
         return;
       }
     }
@@ -327,9 +322,9 @@ public class Aodv extends Node {
    * @param message
    *          The message the is being received from the network.
    */
-  private void receiveMessage(Message message) {
+  void receiveMessage(Message message) {
 
-    String MsgType;
+    AodvPacket Packet;
 
     /**
      * Check to see if this node sent the message. If it did then ignore the
@@ -340,38 +335,33 @@ public class Aodv extends Node {
     }
 
     /**
-     * Get the message type.
-     * 
-     * Message type is always the first token in the message string. Split on
-     * the '|' and get the first item in the resultant Array of Strings.
+     * Get the packet carried by the message. Messages that are not AODV
+     * messages are ignored.
      */
-    MsgType = message.message.split("\\|")[0];
-
-    // TODO: Replace this terrible list of if statements with a switch statement
-    // once Java 7 is released. Java 7 supposedly has the ability to switch on
-    // strings.
-
-    if (MsgType.equals("RREQ")) {
-      receiveRREQ(message);
-      OutputHandler.dispatch(DARSEvent.outControlMsgReceived(this.att.id, message));
+    Packet = AodvPacket.of(message);
+    if (Packet == null) {
       return;
     }
 
-    if (MsgType.equals("NARR")) {
-      receiveNarrative(message);
-      OutputHandler.dispatch(DARSEvent.outNarrMsgReceived(this.att.id, message));
+    switch (Packet.Type) {
+    case RREQ:
+      receiveRREQ(message, Packet);
+      dispatchMessage(EventType.OUT_CONTROLMSG_RECEIVED, message);
       return;
-    }
 
-    if (MsgType.equals("RREP")) {
-      receiveRREP(message);
-      OutputHandler.dispatch(DARSEvent.outControlMsgReceived(this.att.id, message));
+    case NARR:
+      receiveNarrative(message, Packet);
+      dispatchMessage(EventType.OUT_NARRMSG_RECEIVED, message);
       return;
-    }
 
-    if (MsgType.equals("RERR")) {
-      receiveRERR(message);
-      OutputHandler.dispatch(DARSEvent.outControlMsgReceived(this.att.id, message));
+    case RREP:
+      receiveRREP(message, Packet);
+      dispatchMessage(EventType.OUT_CONTROLMSG_RECEIVED, message);
+      return;
+
+    case RERR:
+      receiveRERR(message, Packet);
+      dispatchMessage(EventType.OUT_CONTROLMSG_RECEIVED, message);
       return;
     }
 
@@ -400,15 +390,10 @@ public class Aodv extends Node {
      * Message object that will be passed to sendMessage.
      */
     Message Msg;
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
 
     /**
      * Message Properties
      */
-    String MsgType = "RREQ";
     String MsgFlags = "";
     int MsgTTL = TTL_START;
     int MsgHopCount = 0;
@@ -436,7 +421,7 @@ public class Aodv extends Node {
        */
       DestRouteEntry = new RouteEntry(MsgDestID, StateFlags.RREQSENT,
           CurrentTick + PATH_DISCOVERY_TIME);
-      this.RouteTable.put(MsgDestID, DestRouteEntry);
+      putRoute(MsgDestID, DestRouteEntry);
     } else {
       /**
        * There is already a RouteEntry in the RouteTable, but we are still
@@ -456,14 +441,14 @@ public class Aodv extends Node {
            */
           DestRouteEntry.setState(RouteEntry.StateFlags.RREQSENT);
           DestRouteEntry.setLifetime(this.CurrentTick + PATH_DISCOVERY_TIME);
-          this.RouteTable.put(MsgDestID, DestRouteEntry);
+          putRoute(MsgDestID, DestRouteEntry);
         }
       } else {
 
         DestRouteEntry.setState(RouteEntry.StateFlags.REPAIRING);
         DestRouteEntry.setLifetime(this.CurrentTick + PATH_DISCOVERY_TIME);
 
-        this.RouteTable.put(MsgDestID, DestRouteEntry);
+        putRoute(MsgDestID, DestRouteEntry);
       }
 
     }
@@ -479,13 +464,11 @@ public class Aodv extends Node {
     }
 
     /**
-     * Build the actual message string.
+     * Build the actual message.
      */
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgTTL + '|' + MsgHopCount + '|'
-        + MsgRREQID + '|' + MsgDestID + '|' + MsgDestSeqNum + '|' + MsgSrcID
-        + '|' + MsgSrcSeqNum;
-
-    Msg = new Message(Message.BCAST_STRING, MsgSrcID, MsgStr);
+    Msg = new Message(Message.BCAST_STRING, MsgSrcID, AodvPacket.rreq(MsgFlags,
+        MsgTTL, MsgHopCount, MsgRREQID, MsgDestID, MsgDestSeqNum, MsgSrcID,
+        MsgSrcSeqNum));
 
     sendMessage(Msg);
 
@@ -500,8 +483,10 @@ public class Aodv extends Node {
    * 
    * @param message
    *          The Route Request message that was received.
+   * @param Packet
+   *          The packet carried by the message.
    */
-  void receiveRREQ(Message message) {
+  void receiveRREQ(Message message, AodvPacket Packet) {
     /*
      * Break message string down into pieces. Check if the requested destination
      * node is in our RouteTable YES - Send RouteReply RREP, NO - Decrement TTL
@@ -521,14 +506,13 @@ public class Aodv extends Node {
      */
     Message Msg;
     /**
-     * MsgStr will hold the message that is sent into the network.
+     * Fwd will hold the packet that is forwarded into the network.
      */
-    String MsgStr = "";
+    AodvPacket Fwd;
 
     /**
      * Message Properties
      */
-    String MsgType;
     String MsgFlags;
     int MsgTTL;
     int MsgHopCount;
@@ -544,28 +528,17 @@ public class Aodv extends Node {
     RouteEntry DestEntry;
 
     /**
-     * Array to hold Message Fields
-     */
-    String MsgArray[];
-
-    /**
-     * Split Message into fields based on '|' delimiters and store in MsgArray.
-     */
-    MsgArray = message.message.split("\\|");
-
-    /**
-     * Store message fields into local variables. Yes this is not really needed
+     * Store packet fields into local variables. Yes this is not really needed
      * but I (SAK) think it makes the code more readable.
      */
-    MsgType = MsgArray[0];
-    MsgFlags = MsgArray[1];
-    MsgTTL = Integer.parseInt(MsgArray[2]);
-    MsgHopCount = Integer.parseInt(MsgArray[3]) + 1;
-    MsgRREQID = Integer.parseInt(MsgArray[4]);
-    MsgDestID = MsgArray[5];
-    MsgDestSeqNum = Integer.parseInt(MsgArray[6]);
-    MsgSrcID = MsgArray[7];
-    MsgSrcSeqNum = Integer.parseInt(MsgArray[8]);
+    MsgFlags = Packet.Flags;
+    MsgTTL = Packet.TTL;
+    MsgHopCount = Packet.HopCount + 1;
+    MsgRREQID = Packet.RREQID;
+    MsgDestID = Packet.DestID;
+    MsgDestSeqNum = Packet.DestSeqNum;
+    MsgSrcID = Packet.OrigID;
+    MsgSrcSeqNum = Packet.OrigSeqNum;
 
     /**
      * Check to see if this node is the originator of the RREQ.
@@ -577,9 +550,9 @@ public class Aodv extends Node {
       /**
        * Don't process your own RREQ.
        */
-      OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-          + "Dropped message due to it being its own RREQ. Message String: "
-          + message.message));
+      debug(this.att.id,
+          "Dropped message due to it being its own RREQ. Message String: ",
+          message);
       return;
     }
 
@@ -589,24 +562,24 @@ public class Aodv extends Node {
      * This happens because our neighbor may re-broadcast the RREQ. We don't
      * want to create a loop. That would be bad MMMKay.
      */
-    if (this.RREQHistory.containsKey(MsgSrcID)) {
-      if (this.RREQHistory.get(MsgSrcID) >= MsgRREQID) {
+    int MsgSrc = NodeId.parse(MsgSrcID);
+    if (this.RREQHistory.containsKey(MsgSrc)) {
+      if (this.RREQHistory.get(MsgSrc, 0) >= MsgRREQID) {
         /**
          * The RREQ is old. Ignore it.
          */
-        OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-            + " Dropped message due to old RREQID. Message String: "
-            + message.message));
+        debug(this.att.id,
+            " Dropped message due to old RREQID. Message String: ", message);
         return;
       } else {
         /**
          * The RREQ is newer than this node has seen. Add it to the history and
          * continue to process it.
          */
-        this.RREQHistory.put(MsgSrcID, MsgRREQID);
+        this.RREQHistory.put(MsgSrc, MsgRREQID);
       }
-    } else {
-      this.RREQHistory.put(MsgSrcID, MsgRREQID);
+    } else if (MsgSrc != NodeId.NONE) {
+      this.RREQHistory.put(MsgSrc, MsgRREQID);
     }
 
     /**
@@ -620,7 +593,7 @@ public class Aodv extends Node {
       DestEntry = new RouteEntry(message.originId, 0,
           RouteEntry.StateFlags.VALID, 1, message.originId, this.CurrentTick
               + MY_ROUTE_TIMEOUT);
-      RouteTable.put(message.originId, DestEntry);
+      putRoute(message.originId, DestEntry);
     }
 
     /**
@@ -633,7 +606,7 @@ public class Aodv extends Node {
       DestEntry = new RouteEntry(MsgSrcID, MsgSrcSeqNum,
           RouteEntry.StateFlags.VALID, MsgHopCount, message.originId,
           this.CurrentTick + MY_ROUTE_TIMEOUT);
-      RouteTable.put(MsgSrcID, DestEntry);
+      putRoute(MsgSrcID, DestEntry);
     } else {
       /**
        * Update the Originator's Route Entry information if needed.
@@ -650,7 +623,7 @@ public class Aodv extends Node {
         DestEntry.setNextHopIP(message.originId);
         DestEntry.setLifetime(this.CurrentTick + MY_ROUTE_TIMEOUT);
 
-        this.RouteTable.put(MsgSrcID, DestEntry);
+        putRoute(MsgSrcID, DestEntry);
       } else {
         /**
          * If the messages Originator sequence number is as new or newer (>=)
@@ -667,7 +640,7 @@ public class Aodv extends Node {
           DestEntry.setNextHopIP(message.originId);
           DestEntry.setLifetime(this.CurrentTick + MY_ROUTE_TIMEOUT);
 
-          this.RouteTable.put(MsgSrcID, DestEntry);
+          putRoute(MsgSrcID, DestEntry);
         }
       }
     }
@@ -720,22 +693,20 @@ public class Aodv extends Node {
      */
     MsgTTL--;
 
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgTTL + '|' + MsgHopCount + '|'
-        + MsgRREQID + '|' + MsgDestID + '|' + MsgDestSeqNum + '|' + MsgSrcID
-        + '|' + MsgSrcSeqNum;
+    Fwd = AodvPacket.rreq(MsgFlags, MsgTTL, MsgHopCount, MsgRREQID, MsgDestID,
+        MsgDestSeqNum, MsgSrcID, MsgSrcSeqNum);
 
     /**
      * As long as the message has TTL forward it.
      */
     if (MsgTTL > 0) {
-      Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
+      Msg = new Message(Message.BCAST_STRING, this.att.id, Fwd);
       sendMessage(Msg);
     } else {
       // TODO: Remove this code block it is for testing only? The building of
-      // MsgStr above can then be moved inside the If to save some CPU time.
+      // Fwd above can then be moved inside the If to save some CPU time.
 
-      OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-          + "Dropped RREQ.  TTL Expired. MsgStr: " + MsgStr));
+      debug(this.att.id, "Dropped RREQ.  TTL Expired. MsgStr: ", Fwd);
     }
   }
 
@@ -765,18 +736,18 @@ public class Aodv extends Node {
      * Message object that will be passed to sendMessage.
      */
     Message Msg;
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
 
     /**
      * Message Properties
      */
-    String MsgType = "RERR";
     String MsgFlags = "";
     int DestPairCount = 0;
-    String IDSEQPairs = "";
+    /**
+     * The ID & Pair List. Every entry in the Route Table is listed at most
+     * once, plus DestNodeID itself.
+     */
+    String DestIDs[] = new String[RouteTable.size() + 1];
+    int DestSeqNums[] = new int[RouteTable.size() + 1];
 
     /**
      * Destination Route Table Entry
@@ -792,7 +763,8 @@ public class Aodv extends Node {
     /**
      * Add the DestNodeID and Sequence Number to the ID & Pair List
      */
-    IDSEQPairs = DestNodeID + '|' + DestRouteEntry.getSeqNum();
+    DestIDs[DestPairCount] = DestNodeID;
+    DestSeqNums[DestPairCount] = DestRouteEntry.getSeqNum();
     DestPairCount++;
 
     /**
@@ -801,13 +773,13 @@ public class Aodv extends Node {
      */
     DestRouteEntry.setState(RouteEntry.StateFlags.INVALID);
     DestRouteEntry.setLifetime(DestRouteEntry.getLifetime() + DELETE_PERIOD);
-    RouteTable.put(DestNodeID, DestRouteEntry);
+    putRoute(DestNodeID, DestRouteEntry);
 
     /**
      * Get Iterator for RouteTable and then traverse it looking for nodes that
      * have DestNodeID as their next hop.
      */
-    RouteTableIter = RouteTable.values().iterator();
+    RouteTableIter = RouteTable.iterator();
 
     /**
      * Check each route entry in the route table to see if the next hop is the
@@ -825,17 +797,17 @@ public class Aodv extends Node {
         TempRouteEntry.setState(RouteEntry.StateFlags.REPAIRABLE);
         TempRouteEntry
             .setLifetime(TempRouteEntry.getLifetime() + DELETE_PERIOD);
-        RouteTable.put(TempRouteEntry.getDestIP(), TempRouteEntry);
+        putRoute(TempRouteEntry.getDest(), TempRouteEntry);
 
-        IDSEQPairs += '|' + TempRouteEntry.getDestIP() + '|'
-            + TempRouteEntry.getSeqNum();
+        DestIDs[DestPairCount] = TempRouteEntry.getDestIP();
+        DestSeqNums[DestPairCount] = TempRouteEntry.getSeqNum();
         DestPairCount++;
       }
     }
 
-    MsgStr = MsgType + '|' + MsgFlags + '|' + DestPairCount + '|' + IDSEQPairs;
-
-    Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
+    Msg = new Message(Message.BCAST_STRING, this.att.id, AodvPacket.rerr(
+        MsgFlags, Arrays.copyOf(DestIDs, DestPairCount), Arrays.copyOf(
+            DestSeqNums, DestPairCount)));
 
     sendMessage(Msg);
 
@@ -848,8 +820,10 @@ public class Aodv extends Node {
    * 
    * @param message
    *          The Route Error Message that was received.
+   * @param Packet
+   *          The packet carried by the message.
    */
-  void receiveRERR(Message message) {
+  void receiveRERR(Message message, AodvPacket Packet) {
 
     /**
      * RERR Message Format
@@ -872,25 +846,16 @@ public class Aodv extends Node {
     RouteEntry DestEntry;
 
     /**
-     * Array to hold Message Fields
+     * Store packet fields into local variables.
      */
-    String MsgArray[];
-
-    /**
-     * Split Message into fields based on '|' delimiters and store in MsgArray.
-     */
-    MsgArray = message.message.split("\\|");
-    /**
-     * Store message fields into local variables.
-     */
-    DestPairCount = Integer.parseInt(MsgArray[2]);
+    DestPairCount = Packet.UnreachableIDs.length;
 
     /**
      * Process the list of affected Destinations
      */
     for (int i = 0; i < DestPairCount; i++) {
-      DestID = MsgArray[3 + (i * 2)];
-      DestSeqNum = Integer.parseInt(MsgArray[3 + (i * 2) + 1]);
+      DestID = Packet.UnreachableIDs[i];
+      DestSeqNum = Packet.UnreachableSeqNums[i];
 
       if (this.RouteTable.containsKey(DestID)) {
         DestEntry = this.RouteTable.get(DestID);
@@ -950,20 +915,14 @@ public class Aodv extends Node {
     /**
      * Temporary Precursors list for updating the Route Entry's List.
      */
-    HashSet<String> PrecList;
 
     /**
      * Message object that will be passed to sendMessage.
      */
     Message Msg;
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
     /**
      * Message Fields
      */
-    String MsgType = "RREP";
     String MsgFlags = "";
     int MsgHopCount;
     String MsgDestID = DestNodeID;
@@ -995,12 +954,10 @@ public class Aodv extends Node {
       MsgLifetime = MY_ROUTE_TIMEOUT;
 
       /**
-       * Build Message Sting and Send.
+       * Build Message and Send.
        */
-      MsgStr = MsgType + '|' + MsgFlags + '|' + MsgHopCount + '|' + MsgDestID
-          + '|' + MsgDestSeqNum + '|' + MsgOrigID + '|' + MsgLifetime;
-
-      Msg = new Message(SenderID, this.att.id, MsgStr);
+      Msg = new Message(SenderID, this.att.id, AodvPacket.rrep(MsgFlags,
+          MsgHopCount, MsgDestID, MsgDestSeqNum, MsgOrigID, MsgLifetime));
 
       /**
        * Place the message into the txQueue.
@@ -1038,11 +995,8 @@ public class Aodv extends Node {
      * MsgOrigID = The Original Creator of the RREQ. SenderID = The Node that
      * sent us the RREQ.
      */
-    PrecList = DestEntry.getPrecursorIPs();
-
-    PrecList.add(MsgOrigID);
-    PrecList.add(SenderID);
-    DestEntry.setPrecursorIPs(PrecList);
+    DestEntry.addPrecursorIP(MsgOrigID);
+    DestEntry.addPrecursorIP(SenderID);
 
     /**
      * Set the message properties that were not known at initialization.
@@ -1054,12 +1008,10 @@ public class Aodv extends Node {
     MsgLifetime = DestEntry.getLifetime() - this.CurrentTick;
 
     /**
-     * Build Message Sting and Send.
+     * Build Message and Send.
      */
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgHopCount + '|' + MsgDestID
-        + '|' + MsgDestSeqNum + '|' + MsgOrigID + '|' + MsgLifetime;
-
-    Msg = new Message(SenderID, this.att.id, MsgStr);
+    Msg = new Message(SenderID, this.att.id, AodvPacket.rrep(MsgFlags,
+        MsgHopCount, MsgDestID, MsgDestSeqNum, MsgOrigID, MsgLifetime));
 
     /**
      * Place the message into the txQueue.
@@ -1072,8 +1024,13 @@ public class Aodv extends Node {
    * Receive a Route Reply Message
    * 
    * @author kresss
+   * 
+   * @param message
+   *          The Route Reply message that was received.
+   * @param Packet
+   *          The packet carried by the message.
    */
-  void receiveRREP(Message message) {
+  void receiveRREP(Message message, AodvPacket Packet) {
 
     /**
      * RREP Message Format
@@ -1087,13 +1044,12 @@ public class Aodv extends Node {
      */
     Message Msg;
     /**
-     * MsgStr will hold the message that is sent into the network.
+     * Fwd will hold the packet that is forwarded into the network.
      */
-    String MsgStr = "";
+    AodvPacket Fwd;
     /**
      * Message Fields
      */
-    String MsgType;
     String MsgFlags;
     int MsgHopCount;
     String MsgDestID;
@@ -1105,36 +1061,21 @@ public class Aodv extends Node {
      * Route Table Entry used to add and modify the entries in the Route Table.
      */
     RouteEntry DestEntry;
-    /**
-     * Temporary Precursors list for updating the Route Entry's List.
-     */
-    HashSet<String> PrecList;
-
-    /**
-     * Array to hold Message Fields
-     */
-    String MsgArray[];
-
-    /**
-     * Split Message into fields based on '|' delimiters and store in MsgArray.
-     */
-    MsgArray = message.message.split("\\|");
 
     /**
-     * Store message fields into local variables. Yes this is not really needed
+     * Store packet fields into local variables. Yes this is not really needed
      * but I (SAK) think it makes the code more readable.
      */
-    MsgType = MsgArray[0];
-    MsgFlags = MsgArray[1];
+    MsgFlags = Packet.Flags;
     /**
      * Add 1 to the Hop Count for the hop that it took for the message to get to
      * this node.
      */
-    MsgHopCount = Integer.parseInt(MsgArray[2]) + 1;
-    MsgDestID = MsgArray[3];
-    MsgDestSeqNum = Integer.parseInt(MsgArray[4]);
-    MsgOrigID = MsgArray[5];
-    MsgLifetime = Integer.parseInt(MsgArray[6]);
+    MsgHopCount = Packet.HopCount + 1;
+    MsgDestID = Packet.DestID;
+    MsgDestSeqNum = Packet.DestSeqNum;
+    MsgOrigID = Packet.OrigID;
+    MsgLifetime = Packet.Lifetime;
 
     /**
      * Special case for Hello Message.
@@ -1166,10 +1107,9 @@ public class Aodv extends Node {
           /**
            * Put the updated Route Entry back into the Route Table.
            */
-          this.RouteTable.put(MsgDestID, DestEntry);
+          putRoute(MsgDestID, DestEntry);
 
-          OutputHandler.dispatch(DARSEvent.outDebug(this.att.id + " Updated "
-              + MsgDestID + " in its RouteTable"));
+          debug(this.att.id, " Updated ", MsgDestID, " in its RouteTable");
         }
 
       } else {
@@ -1184,10 +1124,9 @@ public class Aodv extends Node {
             RouteEntry.StateFlags.VALID, MsgHopCount, MsgDestID,
             this.CurrentTick + MsgLifetime);
 
-        this.RouteTable.put(MsgDestID, DestEntry);
+        putRoute(MsgDestID, DestEntry);
 
-        OutputHandler.dispatch(DARSEvent.outDebug(this.att.id + " Added "
-            + MsgDestID + " to its RouteTable"));
+        debug(this.att.id, " Added ", MsgDestID, " to its RouteTable");
       }
 
       /**
@@ -1222,10 +1161,9 @@ public class Aodv extends Node {
           /**
            * Put the updated Route Entry back into the Route Table.
            */
-          this.RouteTable.put(MsgDestID, DestEntry);
+          putRoute(MsgDestID, DestEntry);
 
-          OutputHandler.dispatch(DARSEvent.outDebug(this.att.id + " Updated "
-              + MsgDestID + " in its RouteTable"));
+          debug(this.att.id, " Updated ", MsgDestID, " in its RouteTable");
         }
 
       } else {
@@ -1233,8 +1171,7 @@ public class Aodv extends Node {
          * The RREQ that was sent out to generate this is really old. Drop the
          * message?
          */
-        OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-            + " Received a RREP to a REALLY old RREQ.  Dropping."));
+        debug(this.att.id, " Received a RREP to a REALLY old RREQ.  Dropping.");
       }
 
       /**
@@ -1264,7 +1201,7 @@ public class Aodv extends Node {
           RouteEntry.StateFlags.VALID, MsgHopCount, message.originId,
           this.CurrentTick + MsgLifetime);
 
-      this.RouteTable.put(MsgDestID, DestEntry);
+      putRoute(MsgDestID, DestEntry);
     } else {
       /**
        * Check to see if this RREP has 'better' information than what is in our
@@ -1287,7 +1224,7 @@ public class Aodv extends Node {
         DestEntry.setNextHopIP(message.originId);
         DestEntry.setLifetime(this.CurrentTick + MsgLifetime);
 
-        this.RouteTable.put(MsgDestID, DestEntry);
+        putRoute(MsgDestID, DestEntry);
       } else {
         /**
          * If the messages Destination sequence number is as new or newer (>=)
@@ -1304,7 +1241,7 @@ public class Aodv extends Node {
           DestEntry.setHopCount(MsgHopCount);
           DestEntry.setNextHopIP(message.originId);
           DestEntry.setLifetime(this.CurrentTick + MsgLifetime);
-          this.RouteTable.put(MsgDestID, DestEntry);
+          putRoute(MsgDestID, DestEntry);
         }
       }
 
@@ -1316,20 +1253,17 @@ public class Aodv extends Node {
        * MsgOrigID = The Original Creator of the RREQ. SenderID = The Node that
        * sent us the RREQ.
        */
-      PrecList = DestEntry.getPrecursorIPs();
-      PrecList.add(MsgOrigID);
-      PrecList.add(this.RouteTable.get(MsgOrigID).getNextHopIP());
-      DestEntry.setPrecursorIPs(PrecList);
+      DestEntry.addPrecursorIP(MsgOrigID);
+      DestEntry.addPrecursorIP(this.RouteTable.get(MsgOrigID).getNextHopIP());
 
     }
 
     /**
-     * Build the RREP Message Sting and Forward on the message. This message
-     * should be the same as this node received except for an increased hop
-     * count.
+     * Build the RREP Packet and Forward on the message. This packet should be
+     * the same as this node received except for an increased hop count.
      */
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgHopCount + '|' + MsgDestID
-        + '|' + MsgDestSeqNum + '|' + MsgOrigID + '|' + MsgLifetime;
+    Fwd = AodvPacket.rrep(MsgFlags, MsgHopCount, MsgDestID, MsgDestSeqNum,
+        MsgOrigID, MsgLifetime);
 
     /**
      * Lookup the origin of original RREQ so that we can decide how to forward
@@ -1338,11 +1272,11 @@ public class Aodv extends Node {
      */
     if (this.RouteTable.containsKey(MsgOrigID)) {
       Msg = new Message(this.RouteTable.get(MsgOrigID).getNextHopIP(),
-          this.att.id, MsgStr);
+          this.att.id, Fwd);
     } else {
-      Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
-      OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-          + "Forwarding on RREP as a broadcast.  Look into this cast."));
+      Msg = new Message(Message.BCAST_STRING, this.att.id, Fwd);
+      debug(this.att.id,
+          "Forwarding on RREP as a broadcast.  Look into this cast.");
     }
 
     /**
@@ -1371,15 +1305,10 @@ public class Aodv extends Node {
      * Message object that will be passed to sendMessage.
      */
     Message Msg;
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
 
     /**
      * Message Properties
      */
-    String MsgType = "RREP";
     String MsgFlags = "";
     int MsgHopCount = 0;
     String MsgDestID = this.att.id;
@@ -1396,26 +1325,25 @@ public class Aodv extends Node {
       return;
     }
 
-    /**
-     * Build the message string that will be sent to the other nodes.
-     */
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgHopCount + '|' + MsgDestID
-        + '|' + MsgDestSeqNum + '|' + MsgOrigID + '|' + MsgLifetime;
-
     /**
      * Save the current time as the time of the last hello message that was
      * sent.
      */
     HelloSentAt = this.CurrentTick;
 
-    Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
+    /**
+     * Build the message that will be sent to the other nodes.
+     */
+    Msg = new Message(Message.BCAST_STRING, this.att.id, AodvPacket.rrep(
+        MsgFlags, MsgHopCount, MsgDestID, MsgDestSeqNum, MsgOrigID,
+        MsgLifetime));
 
     /**
      * Place the message into the txQueue.
      */
     sendMessage(Msg);
 
-    OutputHandler.dispatch(DARSEvent.outDebug(MsgStr));
+    debug(Msg);
 
   }
 
@@ -1426,8 +1354,10 @@ public class Aodv extends Node {
    * 
    * @param message
    *          Narrative message received from network.
+   * @param Packet
+   *          The packet carried by the message.
    */
-  void receiveNarrative(Message message) {
+  void receiveNarrative(Message message, AodvPacket Packet) {
 
     /**
      * NARR Message Format
@@ -1441,17 +1371,9 @@ public class Aodv extends Node {
      */
     Message Msg;
 
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
-
     /**
      * Message Properties
      */
-    String MsgType;
-    String MsgFlags;
-    int MsgTTL;
     String MsgOrigID;
     String MsgDestID;
     String MsgText;
@@ -1462,27 +1384,12 @@ public class Aodv extends Node {
     RouteEntry DestEntry;
 
     /**
-     * Array to hold Message Fields
-     */
-    String MsgArray[];
-
-    /**
-     * Split Message into fields based on '|' delimiters and store in MsgArray.
-     */
-    MsgArray = message.message.split("\\|");
-
-    /**
-     * Store message fields into local variables. Yes this is not really needed
+     * Store packet fields into local variables. Yes this is not really needed
      * but I (SAK) think it makes the code more readable.
-     * 
-     * Note: Skip MsgArray[0] - Message Type.
      */
-    MsgType = MsgArray[0];
-    MsgFlags = MsgArray[1];
-    MsgTTL = Integer.parseInt(MsgArray[2]);
-    MsgDestID = MsgArray[3];
-    MsgOrigID = MsgArray[4];
-    MsgText = MsgArray[5];
+    MsgDestID = Packet.DestID;
+    MsgOrigID = Packet.OrigID;
+    MsgText = Packet.Text;
 
     /**
      * Check to see if this node is the final destination of the message. If it
@@ -1511,10 +1418,8 @@ public class Aodv extends Node {
       DestEntry = RouteTable.get(MsgDestID);
 
       /**
-       * Create the message string that will be sent.
+       * The packet is forwarded unchanged, so it is sent on as is.
        */
-      MsgStr = MsgType + '|' + MsgFlags + '|' + MsgTTL + '|' + MsgDestID + '|'
-          + MsgOrigID + '|' + MsgText;
 
       /**
        * The destination is in our RouteTable. Make sure that the route is valid
@@ -1526,11 +1431,10 @@ public class Aodv extends Node {
         /**
          * Create the message to be sent.
          */
-        Msg = new Message(DestEntry.getNextHopIP(), this.att.id, MsgStr);
+        Msg = new Message(DestEntry.getNextHopIP(), this.att.id, Packet);
         sendMessage(Msg);
 
-        OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-            + " Forwarded Narrative Message: " + MsgStr));
+        debug(this.att.id, " Forwarded Narrative Message: ", Msg);
         /**
          * Done processing this request.
          */
@@ -1544,7 +1448,7 @@ public class Aodv extends Node {
          * WaitQueue.
          */
         sendRREQ(MsgDestID);
-        addMessageToWaitQueue(MsgOrigID, MsgDestID, MsgStr);
+        addMessageToWaitQueue(MsgOrigID, MsgDestID, Packet);
       }
 
     } else {
@@ -1567,9 +1471,10 @@ public class Aodv extends Node {
    * 
    * @param srcID
    * @param destID
-   * @param msgStr
+   * @param packet
    */
-  private void addMessageToWaitQueue(String srcID, String destID, String msgStr) {
+  private void addMessageToWaitQueue(String srcID, String destID,
+      AodvPacket packet) {
 
     /**
      * Create a new WaitQueueEntry with the message characteristics. Use the
@@ -1578,10 +1483,10 @@ public class Aodv extends Node {
      * because the node is waiting on getting a Route Reply back which can take
      * a maximum of PATH_DISCOVERY_TIME to return.
      */
-    WaitQueueEntry WaitEntry = new WaitQueueEntry(srcID, destID, msgStr,
+    WaitQueueEntry WaitEntry = new WaitQueueEntry(srcID, destID, packet,
         this.CurrentTick + PATH_DISCOVERY_TIME);
     try {
-      waitQueue.add(WaitEntry);
+      enqueueWaiting(WaitEntry);
     } catch (IllegalStateException exception) {
       OutputHandler.dispatch(DARSEvent.outError(this.att.id
           + " Failed to successfully add a message to the wait queue."));
@@ -1590,7 +1495,33 @@ public class Aodv extends Node {
   }
 
   /**
-   * Check all message in the wait queue and see if we can send them.
+   * Put an entry on the wait queue and index it by its destination. If the
+   * route to the destination is already valid, the entry is sent the next
+   * time the wait queue is processed.
+   * 
+   * @param WaitEntry
+   */
+  private void enqueueWaiting(WaitQueueEntry WaitEntry) {
+    WaitEntry.Seq = this.WaitSeq++;
+    this.waitQueue.add(WaitEntry);
+
+    LinkedList<WaitQueueEntry> Waiting = this.WaitingFor
+        .get(WaitEntry.DestinationID);
+    if (Waiting == null) {
+      Waiting = new LinkedList<WaitQueueEntry>();
+      this.WaitingFor.put(WaitEntry.DestinationID, Waiting);
+    }
+    Waiting.add(WaitEntry);
+
+    RouteEntry DestEntry = this.RouteTable.get(WaitEntry.DestinationID);
+    if (DestEntry != null && DestEntry.getState() == RouteEntry.StateFlags.VALID) {
+      this.ReadyDests.put(DestEntry.getDest(), 1);
+    }
+  }
+
+  /**
+   * Check the messages in the wait queue that have expired or whose route has
+   * become valid.
    * 
    * @author kresss
    */
@@ -1608,101 +1539,192 @@ public class Aodv extends Node {
      * Wait Queue Entry used for working with the Wait Queue
      */
     WaitQueueEntry WaitEntry;
+
     /**
-     * Iterator for walking through the Wait Queue
+     * Drop the messages that are no longer valid. Every message is given the
+     * same time to wait, so the queue is in the order the messages expire and
+     * only its head needs to be checked. Messages that were already sent are
+     * left on the queue until they reach its head.
      */
-    Iterator<WaitQueueEntry> WaitQueueIter;
-
-    WaitQueueIter = this.waitQueue.iterator();
-
-    while (WaitQueueIter.hasNext()) {
-      WaitEntry = WaitQueueIter.next();
+    while (!this.waitQueue.isEmpty()
+        && (this.waitQueue.getFirst().Sent || this.waitQueue.getFirst().TimeToLive < this.CurrentTick)) {
+      WaitEntry = this.waitQueue.removeFirst();
+      if (WaitEntry.Sent) {
+        continue;
+      }
 
       /**
-       * Check to see if the message is still valid.
+       * The queue of the destination is in the same order, so the message is
+       * at its head too.
        */
-      if (WaitEntry.TimeToLive < this.CurrentTick) {
-        // TODO: If this node is not the Originator or the message send an error
-        // back to the originator. ??
+      LinkedList<WaitQueueEntry> Waiting = this.WaitingFor
+          .get(WaitEntry.DestinationID);
+      Waiting.removeFirst();
+      if (Waiting.isEmpty()) {
+        this.WaitingFor.remove(WaitEntry.DestinationID);
+      }
 
-        OutputHandler
-            .dispatch(DARSEvent
-                .outNodeInfo("Message lifetime expired while waiting for valid Route. Dropping Message. Message: "
-                    + WaitEntry.MsgString));
-        WaitQueueIter.remove();
+      // TODO: If this node is not the Originator or the message send an error
+      // back to the originator. ??
+
+      OutputHandler
+          .dispatch(DARSEvent
+              .outNodeInfo("Message lifetime expired while waiting for valid Route. Dropping Message. Message: "
+                  + WaitEntry.Packet.render()));
+    }
+
+    if (this.ReadyDests.size() == 0) {
+      return;
+    }
+
+    /**
+     * Gather the messages for the destinations whose route became valid, see
+     * putRoute(). They are sent in the order they were queued, as when the
+     * whole queue was walked.
+     */
+    for (int i = 0; i < this.ReadyDests.capacity(); i++) {
+      int Dest = this.ReadyDests.keyAt(i);
+      if (Dest == NodeId.NONE) {
+        continue;
+      }
+      DestEntry = this.RouteTable.get(Dest);
+      if (DestEntry != null
+          && DestEntry.getState() == RouteEntry.StateFlags.VALID
+          && this.WaitingFor.containsKey(Dest)) {
+        this.ReadyMessages.addAll(this.WaitingFor.remove(Dest));
       }
+    }
+    this.ReadyDests.clear();
+    Collections.sort(this.ReadyMessages, QUEUE_ORDER);
 
+    for (WaitQueueEntry ReadyEntry : this.ReadyMessages) {
       /**
-       * Check the status of our Route Entry for the destination node of the
-       * message.
+       * Have a valid route to the desired destination of this message so send
+       * it.
        */
-      if (this.RouteTable.containsKey(WaitEntry.DestinationID)) {
-        DestEntry = this.RouteTable.get(WaitEntry.DestinationID);
-        if (DestEntry.getState() == RouteEntry.StateFlags.VALID) {
-          /**
-           * Have a valid route to the desired destination of this message so
-           * send it.
-           */
-          Msg = new Message(DestEntry.getNextHopIP(), this.att.id,
-              WaitEntry.MsgString);
-          sendMessage(Msg);
+      DestEntry = this.RouteTable.get(ReadyEntry.DestinationID);
+      Msg = new Message(DestEntry.getNextHopIP(), this.att.id,
+          ReadyEntry.Packet);
+      sendMessage(Msg);
 
-          /**
-           * Clear the message off the wait queue.
-           */
-          WaitQueueIter.remove();
-        }
-      }
+      /**
+       * Clear the message off the wait queue.
+       */
+      ReadyEntry.Sent = true;
     }
+    this.ReadyMessages.clear();
   }
 
   /**
-   * Check all routes in the Route Table for stale routes.
+   * Check the routes whose lifetime has run out.
+   * 
+   * Only the routes whose expiry timer is due are looked at, see
+   * scheduleExpiry().
    * 
    * @author kresss
    */
   private void checkRouteTable() {
 
-    /**
-     * Iterator and RouteEntry for going through the values in the RouteTable.
-     */
-    Iterator<RouteEntry> RouteTableIter;
-    RouteEntry TempRouteEntry;
+    this.ExpiryTimers.advance(this.CurrentTick, this.DueRoutes);
 
     /**
-     * Get Iterator for RouteTable and then traverse it.
+     * Timers come due in the order they were set, which a restored snapshot
+     * can not reproduce. Handle the routes in the order of the Route Table
+     * instead, as when the whole table was walked.
      */
-    RouteTableIter = this.RouteTable.values().iterator();
+    Collections.sort(this.DueRoutes, this.TableOrder);
 
-    /**
-     * Check each route entry's Lifetime and State.
-     */
-    while (RouteTableIter.hasNext()) {
-      TempRouteEntry = RouteTableIter.next();
+    for (RouteEntry TempRouteEntry : this.DueRoutes) {
 
       /**
-       * See if the lifetime of a route has expired.
+       * Skip timers that were replaced by an earlier one, or whose route was
+       * replaced or removed.
        */
-      if (TempRouteEntry.getLifetime() <= this.CurrentTick) {
-        /**
-         * The lifetime has expired, so based on the current State of the route
-         * determine the next action.
-         */
+      if (TempRouteEntry.getExpiryTimer() == 0
+          || TempRouteEntry.getExpiryTimer() > this.CurrentTick
+          || this.RouteTable.get(TempRouteEntry.getDest()) != TempRouteEntry) {
+        continue;
+      }
+      TempRouteEntry.setExpiryTimer(0);
 
-        /**
-         * For Routes marked as VALID, Expire them. All other states are a
-         * result of this node being in a waiting position for this route. The
-         * outside stimulus has not occurred with in the time out so remove the
-         * route entry.
-         */
-        if (TempRouteEntry.getState() == RouteEntry.StateFlags.VALID) {
-          TempRouteEntry.setState(RouteEntry.StateFlags.EXPIRED);
-          TempRouteEntry.setLifetime(this.CurrentTick + DELETE_PERIOD);
-          sendRERR(TempRouteEntry.getDestIP());
-        } else {
-          RouteTableIter.remove();
-        }
+      /**
+       * The lifetime was extended since the timer was set. Wait for it.
+       */
+      if (TempRouteEntry.getLifetime() > this.CurrentTick) {
+        scheduleExpiry(TempRouteEntry);
+        continue;
       }
+
+      /**
+       * The lifetime has expired, so based on the current State of the route
+       * determine the next action.
+       */
+
+      /**
+       * For Routes marked as VALID, Expire them. All other states are a result
+       * of this node being in a waiting position for this route. The outside
+       * stimulus has not occurred with in the time out so remove the route
+       * entry.
+       */
+      if (TempRouteEntry.getState() == RouteEntry.StateFlags.VALID) {
+        TempRouteEntry.setState(RouteEntry.StateFlags.EXPIRED);
+        TempRouteEntry.setLifetime(this.CurrentTick + DELETE_PERIOD);
+        scheduleExpiry(TempRouteEntry);
+        sendRERR(TempRouteEntry.getDestIP());
+      } else {
+        this.RouteTable.remove(TempRouteEntry.getDest());
+      }
+    }
+    this.DueRoutes.clear();
+  }
+
+  /**
+   * Put a route into the Route Table and make sure its expiry timer is set.
+   * 
+   * Every change to the lifetime of a route must be followed by this, or by
+   * scheduleExpiry(), for checkRouteTable() to see the route expire.
+   * 
+   * @param destID
+   * @param entry
+   */
+  private void putRoute(String destID, RouteEntry entry) {
+    this.RouteTable.put(destID, entry);
+    routeChanged(entry);
+  }
+
+  private void putRoute(int dest, RouteEntry entry) {
+    this.RouteTable.put(dest, entry);
+    routeChanged(entry);
+  }
+
+  /**
+   * Set the expiry timer of a route that was put, and if it is valid and
+   * messages are waiting for it, have them sent the next time the wait queue
+   * is processed.
+   * 
+   * @param entry
+   */
+  private void routeChanged(RouteEntry entry) {
+    scheduleExpiry(entry);
+    if (entry.getState() == RouteEntry.StateFlags.VALID
+        && this.WaitingFor.containsKey(entry.getDest())) {
+      this.ReadyDests.put(entry.getDest(), 1);
+    }
+  }
+
+  /**
+   * Set the expiry timer of a route for its lifetime, unless it is already
+   * set for that tick or an earlier one. A timer that comes due before the
+   * lifetime is up is set again by checkRouteTable(), so a lifetime that is
+   * only ever extended costs one timer.
+   * 
+   * @param entry
+   */
+  private void scheduleExpiry(RouteEntry entry) {
+    if (entry.getExpiryTimer() == 0
+        || entry.getLifetime() < entry.getExpiryTimer()) {
+      entry.setExpiryTimer(this.ExpiryTimers.schedule(entry,
+          entry.getLifetime()));
     }
   }
 
@@ -1740,6 +1762,65 @@ public class Aodv extends Node {
     checkRouteTable();
   }
 
+  /**
+   * Count the ticks until the next Hello Message, the next route expiry
+   * timer or the next wait queue message to expire, whichever comes first.
+   * A tick with received messages or messages ready to send is never idle.
+   */
+  @Override
+  public int getIdleTicks() {
+    if (!this.rxQueue.isEmpty() || !this.txQueue.isEmpty()
+        || this.ReadyDests.size() > 0) {
+      return 0;
+    }
+
+    long Next = (long) HelloSentAt + HELLO_INTERVAL;
+    if (!this.waitQueue.isEmpty()) {
+      WaitQueueEntry Head = this.waitQueue.getFirst();
+      if (Head.Sent) {
+        return 0;
+      }
+      Next = Math.min(Next, (long) Head.TimeToLive + 1);
+    }
+    Next = this.ExpiryTimers.nextTick((int) Math.min(Next, Integer.MAX_VALUE));
+
+    return (int) Math.max(Next - this.CurrentTick - 1, 0);
+  }
+
+  /**
+   * Nothing happens in an idle tick but the count going up.
+   */
+  @Override
+  public void skipTicks(int ticks) {
+    this.CurrentTick += ticks;
+  }
+
+  /**
+   * The wait queue length counts sent messages that have not reached its head
+   * yet, see processWaitQueue().
+   */
+  @Override
+  public int getQueueLength(QueueType type) {
+    switch (type) {
+    case TRANSMIT:
+      return this.txQueue.size();
+    case RECEIVE:
+      return this.rxQueue.size();
+    case WAIT:
+      return this.waitQueue.size();
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the number of entries in the route table, whether or not the
+   * routes are valid.
+   */
+  @Override
+  public int getRouteCount() {
+    return this.RouteTable.size();
+  }
+
   /**
    * Route Request ID
    * 
@@ -1760,7 +1841,34 @@ public class Aodv extends Node {
   /**
    * Route Table
    */
-  private HashMap<String, RouteEntry> RouteTable  = new HashMap<String, RouteEntry>();
+  private RouteMap<RouteEntry>        RouteTable  = new RouteMap<RouteEntry>();
+
+  /**
+   * Route Expiry Timers
+   * 
+   * A timer for each route in the Route Table, due when its lifetime is up.
+   * The wheel is a turn long enough for the longest route timeout.
+   */
+  private TimerWheel<RouteEntry>      ExpiryTimers = new TimerWheel<RouteEntry>(
+                                                       MY_ROUTE_TIMEOUT + 1);
+
+  /**
+   * Routes whose expiry timers are due, reused from tick to tick.
+   */
+  private ArrayList<RouteEntry>       DueRoutes   = new ArrayList<RouteEntry>();
+
+  /**
+   * Order in which the Route Table walks its entries. Entries whose
+   * destination is no longer in the table come first; checkRouteTable() skips
+   * them.
+   */
+  private final Comparator<RouteEntry> TableOrder = new Comparator<RouteEntry>() {
+    public int compare(RouteEntry a, RouteEntry b) {
+      int PosA = RouteTable.position(a.getDest());
+      int PosB = RouteTable.position(b.getDest());
+      return PosA < PosB ? -1 : (PosA == PosB ? 0 : 1);
+    }
+  };
 
   /**
    * Current Tick
@@ -1788,18 +1896,42 @@ public class Aodv extends Node {
    * Wait Queue
    * 
    * Queue of message that can not be sent yet. Most likely waiting for a RREP.
+   * Messages that were sent stay on it, marked as sent, until they reach its
+   * head.
    */
   private LinkedList<WaitQueueEntry>  waitQueue   = new LinkedList<WaitQueueEntry>();
 
+  /**
+   * The messages of the wait queue that were not sent yet, by destination, in
+   * the order they were queued.
+   */
+  private RouteMap<LinkedList<WaitQueueEntry>> WaitingFor = new RouteMap<LinkedList<WaitQueueEntry>>();
+
+  /**
+   * Destinations with messages waiting whose route was put as valid since
+   * the wait queue was last processed.
+   */
+  private IntIntMap                   ReadyDests  = new IntIntMap();
+
+  /**
+   * Messages to send from the wait queue, reused from tick to tick.
+   */
+  private ArrayList<WaitQueueEntry>   ReadyMessages = new ArrayList<WaitQueueEntry>();
+
+  /**
+   * Number of entries put on the wait queue, to keep them in order.
+   */
+  private int                         WaitSeq     = 0;
+
   /**
    * Route Request History
    * 
-   * This hash map is used to track the last known sequence number request for a
+   * This map is used to track the last known sequence number request for a
    * given Destination ID.
    * 
-   * HashMap <DestID, RREQID>
+   * IntIntMap <DestID handle, RREQID>
    */
-  private HashMap<String, Integer>    RREQHistory = new HashMap<String, Integer>();
+  private IntIntMap                   RREQHistory = new IntIntMap();
 
   /**
    * Last Tick That A Hello Message Was Sent At
@@ -1840,4 +1972,104 @@ public class Aodv extends Node {
     aodvDlg.updateInformation(this.CurrentTick, this.RouteTable);
   }
 
+  /**
+   * writeState
+   * 
+   * Write the AODV state of this node for a snapshot of the simulation.
+   * 
+   * @param out
+   */
+  public void writeState(DataOutput out) throws IOException {
+    out.writeInt(this.LastRREQID);
+    out.writeInt(this.LastSeqNum);
+    out.writeInt(this.CurrentTick);
+    out.writeInt(this.HelloSentAt);
+
+    /**
+     * The Route Table is walked when routes are checked, so it is written in
+     * that order.
+     */
+    out.writeInt(this.RouteTable.size());
+    for (RouteEntry Entry : this.RouteTable) {
+      Entry.writeTo(out);
+    }
+
+    out.writeInt(this.RREQHistory.size());
+    for (int i = 0; i < this.RREQHistory.capacity(); i++) {
+      if (this.RREQHistory.keyAt(i) != NodeId.NONE) {
+        Snapshot.writeString(out, NodeId.toString(this.RREQHistory.keyAt(i)));
+        out.writeInt(this.RREQHistory.valueAt(i));
+      }
+    }
+
+    Snapshot.writeMessages(out, this.txQueue);
+    Snapshot.writeMessages(out, this.rxQueue);
+
+    int Waiting = 0;
+    for (WaitQueueEntry WaitEntry : this.waitQueue) {
+      if (!WaitEntry.Sent) {
+        Waiting++;
+      }
+    }
+    out.writeInt(Waiting);
+    for (WaitQueueEntry WaitEntry : this.waitQueue) {
+      if (WaitEntry.Sent) {
+        continue;
+      }
+      Snapshot.writeString(out, WaitEntry.SourceID);
+      Snapshot.writeString(out, WaitEntry.DestinationID);
+      Snapshot.writeString(out, WaitEntry.Packet.render());
+      out.writeInt(WaitEntry.TimeToLive);
+    }
+  }
+
+  /**
+   * readState
+   * 
+   * Read the state written by writeState().
+   * 
+   * @param in
+   */
+  public void readState(DataInput in) throws IOException {
+    this.LastRREQID = in.readInt();
+    this.LastSeqNum = in.readInt();
+    this.CurrentTick = in.readInt();
+    this.HelloSentAt = in.readInt();
+
+    this.RouteTable.clear();
+    this.ExpiryTimers.clear(this.CurrentTick);
+    int Count = in.readInt();
+    for (int i = 0; i < Count; i++) {
+      RouteEntry Entry = RouteEntry.readFrom(in);
+      putRoute(Entry.getDest(), Entry);
+    }
+
+    this.RREQHistory.clear();
+    Count = in.readInt();
+    for (int i = 0; i < Count; i++) {
+      int Src = NodeId.parse(Snapshot.readString(in));
+      this.RREQHistory.put(Src, in.readInt());
+    }
+
+    this.txQueue.clear();
+    Snapshot.readMessages(in, this.txQueue);
+    this.rxQueue.clear();
+    Snapshot.readMessages(in, this.rxQueue);
+
+    this.waitQueue.clear();
+    this.WaitingFor.clear();
+    this.ReadyDests.clear();
+    Count = in.readInt();
+    for (int i = 0; i < Count; i++) {
+      String SrcID = Snapshot.readString(in);
+      String DestID = Snapshot.readString(in);
+      AodvPacket Packet = AodvPacket.parse(Snapshot.readString(in));
+      int TimeToLive = in.readInt();
+      if (Packet == null) {
+        throw new IOException("Bad AODV packet in snapshot.");
+      }
+      enqueueWaiting(new WaitQueueEntry(SrcID, DestID, Packet, TimeToLive));
+    }
+  }
+
 }
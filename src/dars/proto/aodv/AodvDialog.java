@@ -13,9 +13,10 @@ import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
-import java.util.HashMap;
 import java.util.Iterator;
 
+import dars.proto.RouteMap;
+
 public class AodvDialog extends JDialog {
   private static final long serialVersionUID     = 1L;
   private JLabel            sourceNodeLabel      = new JLabel("Source Node: ");
@@ -51,7 +52,7 @@ public class AodvDialog extends JDialog {
   };
 
   public AodvDialog(JFrame frame, String SourceId, int timeTick,
-      HashMap<String, RouteEntry> routeTable) {
+      RouteMap<RouteEntry> routeTable) {
     super(frame, "Node Attributes: " + SourceId );
 
     // Set the default dimension of the node attributes window
@@ -106,14 +107,14 @@ public class AodvDialog extends JDialog {
     this.setLocationRelativeTo(frame);
   }
 
-  void updateInformation(int currentTick, HashMap<String, RouteEntry> routeTable) {
+  void updateInformation(int currentTick, RouteMap<RouteEntry> routeTable) {
     formatRouteTable(routeTable, currentTick);
     String timeTick = "" + currentTick;
     TimeLabel.setText(timeTick);
   }
 
-  private void formatRouteTable(HashMap<String, RouteEntry> routeTable, int currentTick) {
-    Iterator<RouteEntry> iter = routeTable.values().iterator();
+  private void formatRouteTable(RouteMap<RouteEntry> routeTable, int currentTick) {
+    Iterator<RouteEntry> iter = routeTable.iterator();
     RouteEntry entry;
     String destinationIP, hopCount, nextHop, state, sequenceNum, lifetime;
 
@@ -0,0 +1,257 @@
+package dars.proto.aodv;
+
+import dars.Message;
+import dars.MessagePayload;
+
+/**
+ * AODV Packet
+ *
+ * Structured form of an AODV message. Packets are built by the sending node
+ * and handed from node to node with the Message, so the fields never have to
+ * be split out of the message string. The string form, used by the log and
+ * the GUI, is rendered on demand and is the same as the wire format the
+ * protocol has always used.
+ *
+ * A packet is shared by every node that receives the message and is never
+ * modified. Forwarding a packet builds a new one.
+ *
+ * Message Formats
+ *
+ * RREQ: TYPE|FLAGS|TTL|HOPCOUNT|RREQID|DESTID|DESTSEQNUM|SRCID|SRCSEQNUM
+ *
+ * RREP: TYPE|FLAGS|HOPCOUNT|DESTID|DESTSEQ|ORIGID|LIFETIME
+ *
+ * RERR: TYPE|FLAGS|DESTCOUNT|DESTID1|DESTSEQID1|...|DESTIDX|DESTSEQX
+ *
+ * NARR: TYPE|FLAGS|TTL|DESTID|ORIGID|TEXT
+ */
+final class AodvPacket implements MessagePayload {
+
+  enum PacketType {
+    RREQ, RREP, RERR, NARR
+  };
+
+  final PacketType Type;
+  final String     Flags;
+  final int        TTL;
+  final int        HopCount;
+  final int        RREQID;
+  final String     DestID;
+  final int        DestSeqNum;
+  /**
+   * The originator of the RREQ. For a RREQ this is SRCID.
+   */
+  final String     OrigID;
+  /**
+   * SRCSEQNUM of a RREQ.
+   */
+  final int        OrigSeqNum;
+  final int        Lifetime;
+  final String     Text;
+  /**
+   * Destination ID and sequence number pairs of a RERR.
+   */
+  final String[]   UnreachableIDs;
+  final int[]      UnreachableSeqNums;
+
+  private AodvPacket(PacketType type, String flags, int ttl, int hopCount,
+      int rreqID, String destID, int destSeqNum, String origID,
+      int origSeqNum, int lifetime, String text, String[] unreachableIDs,
+      int[] unreachableSeqNums) {
+    Type = type;
+    Flags = flags;
+    TTL = ttl;
+    HopCount = hopCount;
+    RREQID = rreqID;
+    DestID = destID;
+    DestSeqNum = destSeqNum;
+    OrigID = origID;
+    OrigSeqNum = origSeqNum;
+    Lifetime = lifetime;
+    Text = text;
+    UnreachableIDs = unreachableIDs;
+    UnreachableSeqNums = unreachableSeqNums;
+  }
+
+  static AodvPacket rreq(String flags, int ttl, int hopCount, int rreqID,
+      String destID, int destSeqNum, String srcID, int srcSeqNum) {
+    return new AodvPacket(PacketType.RREQ, flags, ttl, hopCount, rreqID,
+        destID, destSeqNum, srcID, srcSeqNum, 0, null, null, null);
+  }
+
+  static AodvPacket rrep(String flags, int hopCount, String destID,
+      int destSeqNum, String origID, int lifetime) {
+    return new AodvPacket(PacketType.RREP, flags, 0, hopCount, 0, destID,
+        destSeqNum, origID, 0, lifetime, null, null, null);
+  }
+
+  static AodvPacket rerr(String flags, String[] destIDs, int[] destSeqNums) {
+    return new AodvPacket(PacketType.RERR, flags, 0, 0, 0, null, 0, null, 0,
+        0, null, destIDs, destSeqNums);
+  }
+
+  static AodvPacket narr(String flags, int ttl, String destID, String origID,
+      String text) {
+    return new AodvPacket(PacketType.NARR, flags, ttl, 0, 0, destID, 0,
+        origID, 0, 0, text, null, null);
+  }
+
+  /**
+   * Returns the packet carried by a message.
+   *
+   * Messages sent by AODV nodes always carry their packet. A message that
+   * only has a message string is parsed once and the packet is attached to
+   * it for the other nodes that receive it.
+   *
+   * @param message
+   *
+   * @return the packet, or null if the message is not an AODV message.
+   */
+  static AodvPacket of(Message message) {
+    if (message.getPayload() instanceof AodvPacket) {
+      return (AodvPacket) message.getPayload();
+    }
+    AodvPacket packet = parse(message.getMessage());
+    if (packet != null) {
+      message.setPayload(packet);
+    }
+    return packet;
+  }
+
+  /**
+   * Parse a message string.
+   *
+   * @param msg
+   *
+   * @return the packet, or null if the string is not an AODV message.
+   */
+  static AodvPacket parse(String msg) {
+    if (msg == null) {
+      return null;
+    }
+    FieldReader in = new FieldReader(msg);
+    String type = in.next();
+    try {
+      if (type.equals("RREQ")) {
+        return rreq(in.next(), in.nextInt(), in.nextInt(), in.nextInt(),
+            in.next(), in.nextInt(), in.next(), in.nextInt());
+      }
+      if (type.equals("RREP")) {
+        return rrep(in.next(), in.nextInt(), in.next(), in.nextInt(),
+            in.next(), in.nextInt());
+      }
+      if (type.equals("RERR")) {
+        String flags = in.next();
+        int count = in.nextInt();
+        // Each destination takes two fields.
+        if (count < 0 || count > in.remaining() / 2) {
+          return null;
+        }
+        String[] ids = new String[count];
+        int[] seqNums = new int[count];
+        for (int i = 0; i < count; i++) {
+          ids[i] = in.next();
+          seqNums[i] = in.nextInt();
+        }
+        return rerr(flags, ids, seqNums);
+      }
+      if (type.equals("NARR")) {
+        // The text is everything after the last header field.
+        return narr(in.next(), in.nextInt(), in.next(), in.next(), in.rest());
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return null;
+  }
+
+  /**
+   * Render the packet in the AODV message format.
+   */
+  public String render() {
+    StringBuilder sb = new StringBuilder(64);
+    sb.append(Type.name()).append('|').append(Flags).append('|');
+    switch (Type) {
+    case RREQ:
+      sb.append(TTL).append('|').append(HopCount).append('|').append(RREQID)
+          .append('|').append(DestID).append('|').append(DestSeqNum)
+          .append('|').append(OrigID).append('|').append(OrigSeqNum);
+      break;
+    case RREP:
+      sb.append(HopCount).append('|').append(DestID).append('|')
+          .append(DestSeqNum).append('|').append(OrigID).append('|')
+          .append(Lifetime);
+      break;
+    case RERR:
+      sb.append(UnreachableIDs.length);
+      for (int i = 0; i < UnreachableIDs.length; i++) {
+        sb.append('|').append(UnreachableIDs[i]).append('|')
+            .append(UnreachableSeqNums[i]);
+      }
+      break;
+    case NARR:
+      sb.append(TTL).append('|').append(DestID).append('|').append(OrigID)
+          .append('|').append(Text);
+      break;
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return render();
+  }
+
+  /**
+   * Walks the '|' separated fields of a message string. Missing fields read
+   * as empty strings.
+   */
+  private static class FieldReader {
+    private final String s;
+    private int          pos = 0;
+
+    FieldReader(String s) {
+      this.s = s;
+    }
+
+    String next() {
+      if (pos > s.length()) {
+        return "";
+      }
+      int end = s.indexOf('|', pos);
+      if (end < 0) {
+        end = s.length();
+      }
+      String field = s.substring(pos, end);
+      pos = end + 1;
+      return field;
+    }
+
+    int nextInt() {
+      return Integer.parseInt(next());
+    }
+
+    /**
+     * Returns the number of fields left to read.
+     */
+    int remaining() {
+      if (pos > s.length()) {
+        return 0;
+      }
+      int fields = 1;
+      for (int i = s.indexOf('|', pos); i >= 0; i = s.indexOf('|', i + 1)) {
+        fields++;
+      }
+      return fields;
+    }
+
+    String rest() {
+      if (pos > s.length()) {
+        return "";
+      }
+      String field = s.substring(pos);
+      pos = s.length() + 1;
+      return field;
+    }
+  }
+}
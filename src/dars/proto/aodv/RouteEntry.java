@@ -1,6 +1,14 @@
 package dars.proto.aodv;
 
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dars.NodeId;
+import dars.Snapshot;
 
 /**
  * AODV Node Routing Table Entry
@@ -19,7 +27,7 @@ public class RouteEntry {
    */
   public RouteEntry(String destIP, StateFlags state, int lifetime) {
     super();
-    DestIP = destIP;
+    Dest = NodeId.parse(destIP);
     State = state;
     Lifetime = lifetime;
 
@@ -38,11 +46,11 @@ public class RouteEntry {
   public RouteEntry(String destIP, int seqNum, StateFlags state, int hopCount,
       String nextHopIP, int lifetime) {
     super();
-    DestIP = destIP;
+    Dest = NodeId.parse(destIP);
     SeqNum = seqNum;
     State = state;
     HopCount = hopCount;
-    NextHopIP = nextHopIP;
+    NextHop = NodeId.parse(nextHopIP);
     Lifetime = lifetime;
   }
 
@@ -50,7 +58,14 @@ public class RouteEntry {
    * @return the destIP
    */
   public String getDestIP() {
-    return DestIP;
+    return toId(Dest);
+  }
+
+  /**
+   * @return the handle of the destination, see NodeId.
+   */
+  public int getDest() {
+    return Dest;
   }
 
   /**
@@ -58,7 +73,7 @@ public class RouteEntry {
    *          the destIP to set
    */
   public void setDestIP(String destIP) {
-    DestIP = destIP;
+    Dest = NodeId.parse(destIP);
   }
 
   /**
@@ -110,7 +125,14 @@ public class RouteEntry {
    * @return the nextHopIP
    */
   public String getNextHopIP() {
-    return NextHopIP;
+    return toId(NextHop);
+  }
+
+  /**
+   * @return the handle of the next hop, or NodeId.NONE if it is not known.
+   */
+  public int getNextHop() {
+    return NextHop;
   }
 
   /**
@@ -118,22 +140,41 @@ public class RouteEntry {
    *          the nextHopIP to set
    */
   public void setNextHopIP(String nextHopIP) {
-    NextHopIP = nextHopIP;
+    NextHop = NodeId.parse(nextHopIP);
   }
 
   /**
-   * @return the precursorIPs
+   * @return a copy of the precursorIPs, in the order they were added.
    */
-  public HashSet<String> getPrecursorIPs() {
-    return PrecursorIPs;
+  public List<String> getPrecursorIPs() {
+    List<String> ips = new ArrayList<String>(PrecursorCount);
+    for (int i = 0; i < PrecursorCount; i++) {
+      ips.add(NodeId.toString(Precursors[i]));
+    }
+    return ips;
   }
 
   /**
-   * @param precursorIPs
-   *          the precursorIPs to set
+   * Add a node to the precursors, unless it is one already.
+   * 
+   * @param precursorIP
    */
-  public void setPrecursorIPs(HashSet<String> precursorIPs) {
-    PrecursorIPs = precursorIPs;
+  public void addPrecursorIP(String precursorIP) {
+    int precursor = NodeId.parse(precursorIP);
+    if (precursor == NodeId.NONE) {
+      return;
+    }
+    for (int i = 0; i < PrecursorCount; i++) {
+      if (Precursors[i] == precursor) {
+        return;
+      }
+    }
+    if (Precursors == null) {
+      Precursors = new int[2];
+    } else if (PrecursorCount == Precursors.length) {
+      Precursors = Arrays.copyOf(Precursors, PrecursorCount * 2);
+    }
+    Precursors[PrecursorCount++] = precursor;
   }
 
   /**
@@ -151,6 +192,66 @@ public class RouteEntry {
     Lifetime = lifetime;
   }
 
+  /**
+   * @return the tick the expiry timer of this entry is set for, or 0 if it is
+   *         not set. See Aodv.scheduleExpiry().
+   */
+  int getExpiryTimer() {
+    return ExpiryTimer;
+  }
+
+  void setExpiryTimer(int expiryTimer) {
+    ExpiryTimer = expiryTimer;
+  }
+
+  /**
+   * Write the entry for a snapshot of the simulation.
+   * 
+   * @param out
+   */
+  void writeTo(DataOutput out) throws IOException {
+    Snapshot.writeString(out, getDestIP());
+    out.writeInt(SeqNum);
+    Snapshot.writeString(out, State == null ? null : State.name());
+    out.writeInt(HopCount);
+    Snapshot.writeString(out, getNextHopIP());
+    out.writeInt(PrecursorCount);
+    for (int i = 0; i < PrecursorCount; i++) {
+      Snapshot.writeString(out, NodeId.toString(Precursors[i]));
+    }
+    out.writeInt(Lifetime);
+  }
+
+  /**
+   * Read an entry written by writeTo().
+   * 
+   * @param in
+   */
+  static RouteEntry readFrom(DataInput in) throws IOException {
+    String destIP = Snapshot.readString(in);
+    int seqNum = in.readInt();
+    String state = Snapshot.readString(in);
+    int hopCount = in.readInt();
+    String nextHopIP = Snapshot.readString(in);
+    RouteEntry entry;
+    try {
+      entry = new RouteEntry(destIP, seqNum, state == null ? null
+          : StateFlags.valueOf(state), hopCount, nextHopIP, 0);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unknown route state " + state);
+    }
+    int precursors = in.readInt();
+    for (int i = 0; i < precursors; i++) {
+      entry.addPrecursorIP(Snapshot.readString(in));
+    }
+    entry.Lifetime = in.readInt();
+    return entry;
+  }
+
+  private static String toId(int handle) {
+    return handle == NodeId.NONE ? "" : NodeId.toString(handle);
+  }
+
   /**
    * Valid States for a Route Entry
    */
@@ -190,9 +291,11 @@ public class RouteEntry {
   }
 
   /**
-   * Destination IP Address for the Destination Node
+   * Handle of the Destination Node, see NodeId. The entries are kept as
+   * handles rather than id strings since a node may hold one per node in the
+   * network.
    */
-  private String     DestIP = "";
+  private int        Dest;
   /**
    * Destination Sequence Number
    */
@@ -206,18 +309,26 @@ public class RouteEntry {
    */
   private int        HopCount;
   /**
-   * IP Address of the Next Hop Node on the path to the Destination Node.
+   * Handle of the Next Hop Node on the path to the Destination Node.
    */
-  private String     NextHopIP = "";
+  private int        NextHop;
   /**
-   * List of "Precursor" Node's IP Addresses. Simply put this is a list of Nodes
-   * that need to be notified if this route breaks.
+   * Handles of the "Precursor" Nodes. Simply put this is a list of Nodes that
+   * need to be notified if this route breaks. Most routes never get any, so
+   * the array is only made when the first one is added.
    */
-  private HashSet<String> PrecursorIPs = new HashSet<String>();
+  private int[]      Precursors;
+  private int        PrecursorCount;
   
   /**
    * Time, in milliseconds for which this entry is to be considered valid.
    */
   private int       Lifetime;
 
+  /**
+   * Tick the expiry timer of this entry is set for, or 0. Not part of the
+   * route, so it is not written to snapshots.
+   */
+  private int       ExpiryTimer;
+
 }
@@ -11,8 +11,12 @@ class WaitQueueEntry {
   String SourceID;
   // type.
   String DestinationID;
-  String MsgString;
+  AodvPacket Packet;
   int    TimeToLive;
+  // Place in the wait queue and whether the message was sent, see
+  // Aodv.processWaitQueue().
+  int     Seq;
+  boolean Sent;
 
   /**
    * Constructor with all fields defined.
@@ -21,15 +25,15 @@ class WaitQueueEntry {
    * 
    * @param sourceID
    * @param destinationID
-   * @param msgString
+   * @param packet
    * @param timeToLive
    */
-  WaitQueueEntry(String sourceID, String destinationID, String msgString,
+  WaitQueueEntry(String sourceID, String destinationID, AodvPacket packet,
       int timeToLive) {
     super();
     SourceID = sourceID;
     DestinationID = destinationID;
-    MsgString = msgString;
+    Packet = packet;
     TimeToLive = timeToLive;
   }
 }
@@ -1,8 +1,10 @@
 package dars.proto.dsdv;
 
-import java.util.HashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
 import java.util.Queue;
@@ -12,10 +14,11 @@ import javax.swing.JDialog;
 import dars.Message;
 import dars.NodeAttributes;
 import dars.OutputHandler;
+import dars.Snapshot;
 import dars.event.DARSEvent;
+import dars.event.DARSEvent.EventType;
 import dars.proto.Node;
 import dars.proto.dsdv.DsdvDialog;
-import dars.proto.dsdv.RouteEntry;
 
 public class Dsdv extends Node {
 
@@ -94,7 +97,7 @@ public class Dsdv extends Node {
   /**
    * Route Table
    */
-  private HashMap<String, RouteEntry> RouteTable      = new HashMap<String, RouteEntry>();
+  private RouteTable                  RouteTable      = new RouteTable();
 
   /**
    * Transmit Queue
@@ -123,10 +126,10 @@ public class Dsdv extends Node {
   void checkRoute() {
 
     /**
-     * Iterator and RouteEntry for going through the values in the RouteTable.
+     * Slots of the routes in the RouteTable being looked at.
      */
-    Iterator<RouteEntry> RouteTableIter;
-    RouteEntry TempRouteEntry;
+    int Slot;
+    int Route;
 
     /**
      * List of Broken Route Entry Destinations used to find other routes that
@@ -135,32 +138,30 @@ public class Dsdv extends Node {
     HashSet<String> DestList = new HashSet<String>();
 
     /**
-     * Get Iterator for RouteTable and then traverse it looking for entries that
-     * are newer than tick.
+     * Traverse the RouteTable looking for entries that are older than
+     * ROUTE_TIMEOUT.
      */
-    RouteTableIter = RouteTable.values().iterator();
-
-    while (RouteTableIter.hasNext()) {
-      TempRouteEntry = RouteTableIter.next();
+    for (Slot = RouteTable.first(); Slot >= 0; Slot = RouteTable.next(Slot)) {
 
       /**
        * If this entry has not been updated in ROUTE_LIFETIME mark it as a
        * broken link.
        */
-      if ((TempRouteEntry.getInstTime() + ROUTE_TIMEOUT) <= this.CurrentTick) {
+      if ((RouteTable.getInstTime(Slot) + ROUTE_TIMEOUT) <= this.CurrentTick) {
+        Route = Slot;
+
         /**
          * If this entry is already marked as broken drop it from the route
-         * table.
+         * table. It is put right back as a broken route though, which moves
+         * it to the end of the table.
          */
-        if (TempRouteEntry.getHopCount() == INFINITY_HOPS) {
-          RouteTableIter.remove();
+        if (RouteTable.getHopCount(Route) == INFINITY_HOPS) {
+          Route = RouteTable.moveToEnd(Route);
         }
 
-        TempRouteEntry.setHopCount(INFINITY_HOPS);
-        TempRouteEntry.setInstTime(CurrentTick);
-        TempRouteEntry.setSeqNum(TempRouteEntry.getSeqNum() + 1);
-
-        this.RouteTable.put(TempRouteEntry.getDestIP(), TempRouteEntry);
+        RouteTable.setHopCount(Route, INFINITY_HOPS);
+        RouteTable.setInstTime(Route, CurrentTick);
+        RouteTable.setSeqNum(Route, RouteTable.getSeqNum(Route) + 1);
 
         /**
          * Since the Route Table was modified, set the last update time to -1 to
@@ -172,7 +173,7 @@ public class Dsdv extends Node {
          * Add this destination to the list of Destination that need to be check
          * for as next hops.
          */
-        DestList.add(TempRouteEntry.getDestIP());
+        DestList.add(RouteTable.getDestIP(Route));
       }
     }
 
@@ -181,22 +182,17 @@ public class Dsdv extends Node {
      * the routes us an entry in the DestList as their next hop. If any are
      * found mark them as broken just like was done above.
      */
-    RouteTableIter = RouteTable.values().iterator();
-
-    while (RouteTableIter.hasNext()) {
-      TempRouteEntry = RouteTableIter.next();
+    for (Slot = RouteTable.first(); Slot >= 0; Slot = RouteTable.next(Slot)) {
 
       /**
        * If this entry has a next hop that is in the list of links that were
        * just marked as broken then mark it broken.
        */
-      if (DestList.contains(TempRouteEntry.getNextHopIP())) {
+      if (DestList.contains(RouteTable.getNextHopIP(Slot))) {
 
-        TempRouteEntry.setHopCount(INFINITY_HOPS);
-        TempRouteEntry.setInstTime(CurrentTick);
-        TempRouteEntry.setSeqNum(TempRouteEntry.getSeqNum() + 1);
-
-        this.RouteTable.put(TempRouteEntry.getDestIP(), TempRouteEntry);
+        RouteTable.setHopCount(Slot, INFINITY_HOPS);
+        RouteTable.setInstTime(Slot, CurrentTick);
+        RouteTable.setSeqNum(Slot, RouteTable.getSeqNum(Slot) + 1);
       }
     }
   }
@@ -209,14 +205,13 @@ public class Dsdv extends Node {
    */
   void incrSeqNum() {
 
-    RouteEntry TempRouteEntry;
+    int Slot;
 
     this.LastSeqNum++;
 
-    TempRouteEntry = this.RouteTable.get(this.att.id);
-    TempRouteEntry.setSeqNum(this.LastSeqNum);
-    TempRouteEntry.setInstTime(this.CurrentTick);
-    this.RouteTable.put(this.att.id, TempRouteEntry);
+    Slot = this.RouteTable.find(this.att.id);
+    this.RouteTable.setSeqNum(Slot, this.LastSeqNum);
+    this.RouteTable.setInstTime(Slot, this.CurrentTick);
 
   }
 
@@ -314,42 +309,37 @@ public class Dsdv extends Node {
      * Message object that will be passed to sendMessage.
      */
     Message Msg;
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
     /**
      * Message Properties
      */
-    String MsgType = "RTUP";
     String MsgFlags = "";
     int MsgDestCount = 0;
-    String MsgDestEntries = ""; /* DESTID1|SEQ1|HOPCOUNT1|... */
+    /**
+     * Destination entries of the message being built.
+     */
+    String MsgDestIDs[] = new String[MAX_NPDU];
+    int MsgDestSeqNums[] = new int[MAX_NPDU];
+    int MsgDestHopCounts[] = new int[MAX_NPDU];
 
     /**
-     * Iterator and RouteEntry for going through the values in the RouteTable.
+     * Slot of the route in the RouteTable being looked at.
      */
-    Iterator<RouteEntry> RouteTableIter;
-    RouteEntry TempRouteEntry;
+    int Slot;
 
-    OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-        + "Starting a Full Update Message"));
+    debug(this.att.id, "Starting a Full Update Message");
 
     /**
-     * Get Iterator for RouteTable and then traverse it looking for entries that
-     * are newer than tick.
+     * Traverse the RouteTable looking for entries that are newer than tick.
      */
-    RouteTableIter = RouteTable.values().iterator();
-
-    while (RouteTableIter.hasNext()) {
-      TempRouteEntry = RouteTableIter.next();
+    for (Slot = RouteTable.first(); Slot >= 0; Slot = RouteTable.next(Slot)) {
 
       /**
        * Add this route entry to the Destination Entries List.
        */
+      MsgDestIDs[MsgDestCount] = RouteTable.getDestIP(Slot);
+      MsgDestSeqNums[MsgDestCount] = RouteTable.getSeqNum(Slot);
+      MsgDestHopCounts[MsgDestCount] = RouteTable.getHopCount(Slot);
       MsgDestCount++;
-      MsgDestEntries = MsgDestEntries + '|' + TempRouteEntry.getDestIP() + '|'
-          + TempRouteEntry.getSeqNum() + '|' + TempRouteEntry.getHopCount();
 
       /**
        * If the update message is full then send it and start a new message.
@@ -357,12 +347,11 @@ public class Dsdv extends Node {
       if (MsgDestCount == MAX_NPDU) {
 
         /**
-         * Build the Message string. Note: MsgDestEntries starts with a '|' so
-         * one is not inserted here.
+         * Build the Message. The update takes the arrays over, so new ones
+         * are needed for the next message.
          */
-        MsgStr = MsgType + '|' + MsgFlags + '|' + MsgDestCount + MsgDestEntries;
-
-        Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
+        Msg = new Message(Message.BCAST_STRING, this.att.id, new RouteUpdate(
+            MsgFlags, MsgDestIDs, MsgDestSeqNums, MsgDestHopCounts));
 
         sendMessage(Msg);
 
@@ -375,7 +364,9 @@ public class Dsdv extends Node {
          * Reset the message properties before continuing the loop.
          */
         MsgDestCount = 0;
-        MsgDestEntries = "";
+        MsgDestIDs = new String[MAX_NPDU];
+        MsgDestSeqNums = new int[MAX_NPDU];
+        MsgDestHopCounts = new int[MAX_NPDU];
       }
     }
 
@@ -384,12 +375,12 @@ public class Dsdv extends Node {
      */
     if (MsgDestCount > 0) {
       /**
-       * Build the Message string. Note: MsgDestEntries starts with a '|' so one
-       * is not inserted here.
+       * Build the Message.
        */
-      MsgStr = MsgType + '|' + MsgFlags + '|' + MsgDestCount + MsgDestEntries;
-
-      Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
+      Msg = new Message(Message.BCAST_STRING, this.att.id, new RouteUpdate(
+          MsgFlags, Arrays.copyOf(MsgDestIDs, MsgDestCount), Arrays.copyOf(
+              MsgDestSeqNums, MsgDestCount), Arrays.copyOf(MsgDestHopCounts,
+              MsgDestCount)));
 
       sendMessage(Msg);
 
@@ -415,51 +406,46 @@ public class Dsdv extends Node {
      * Message object that will be passed to sendMessage.
      */
     Message Msg;
-    /**
-     * MsgStr will hold the message that is sent into the network.
-     */
-    String MsgStr = "";
     /**
      * Message Properties
      */
-    String MsgType = "RTUP";
     String MsgFlags = "";
     int MsgDestCount = 0;
-    String MsgDestEntries = ""; /* DESTID1|SEQ1|HOPCOUNT1|... */
-
     /**
-     * Iterator and RouteEntry for going through the values in the RouteTable.
+     * Destination entries of the message. At most every route is included.
      */
-    Iterator<RouteEntry> RouteTableIter;
-    RouteEntry TempRouteEntry;
+    String MsgDestIDs[] = new String[RouteTable.size()];
+    int MsgDestSeqNums[] = new int[RouteTable.size()];
+    int MsgDestHopCounts[] = new int[RouteTable.size()];
 
     /**
-     * Get Iterator for RouteTable and then traverse it looking for entries that
-     * are newer than tick.
+     * Slot of the route in the RouteTable being looked at.
      */
-    RouteTableIter = RouteTable.values().iterator();
+    int Slot;
 
-    while (RouteTableIter.hasNext()) {
-      TempRouteEntry = RouteTableIter.next();
+    /**
+     * Traverse the RouteTable looking for entries that are newer than tick.
+     */
+    for (Slot = RouteTable.first(); Slot >= 0; Slot = RouteTable.next(Slot)) {
 
       /**
        * If this entry has been updated since LastFullUpdate then include it.
        */
-      if (TempRouteEntry.getInstTime() > this.LastFullUpdate) {
+      if (RouteTable.getInstTime(Slot) > this.LastFullUpdate) {
+        MsgDestIDs[MsgDestCount] = RouteTable.getDestIP(Slot);
+        MsgDestSeqNums[MsgDestCount] = RouteTable.getSeqNum(Slot);
+        MsgDestHopCounts[MsgDestCount] = RouteTable.getHopCount(Slot);
         MsgDestCount++;
-        MsgDestEntries = MsgDestEntries + '|' + TempRouteEntry.getDestIP()
-            + '|' + TempRouteEntry.getSeqNum() + '|'
-            + TempRouteEntry.getHopCount();
       }
     }
 
     /**
-     * Build the Message string. Note: MsgDestEntries starts with a '|' so one
-     * is not inserted here.
+     * Build the Message.
      */
-    MsgStr = MsgType + '|' + MsgFlags + '|' + MsgDestCount + MsgDestEntries;
-
-    Msg = new Message(Message.BCAST_STRING, this.att.id, MsgStr);
+    Msg = new Message(Message.BCAST_STRING, this.att.id, new RouteUpdate(
+        MsgFlags, Arrays.copyOf(MsgDestIDs, MsgDestCount), Arrays.copyOf(
+            MsgDestSeqNums, MsgDestCount), Arrays.copyOf(MsgDestHopCounts,
+            MsgDestCount)));
 
     sendMessage(Msg);
 
@@ -478,7 +464,7 @@ public class Dsdv extends Node {
    */
   void receiveMessage(Message message) {
 
-    String MsgType;
+    RouteUpdate Update;
 
     /**
      * Check to see if this node sent the message. If it did then ignore the
@@ -489,24 +475,34 @@ public class Dsdv extends Node {
     }
 
     /**
-     * Get the message type.
-     * 
-     * Message type is always the first token in the message string. Split on
-     * the '|' and get the first item in the resultant Array of Strings.
+     * Route updates carry their entries as a payload. Anything else is a
+     * narrative message.
      */
-    MsgType = message.message.split("\\|")[0];
-
-    // TODO: Replace this terrible list of if statements with a switch statement
-    // once Java 7 is released. Java 7 supposedly has the ability to switch on
-    // strings.
-
-    if (MsgType.equals("RTUP")) {
-      receiveUpdates(message);
-    } else if (MsgType.equals("NARR")) {
+    Update = RouteUpdate.of(message);
+    if (Update != null) {
+      receiveUpdates(message, Update);
+    } else if (isNarrative(message)) {
       receiveNarrative(message);
     }
   }
 
+  /**
+   * Returns true if the message is a narrative message.
+   * 
+   * Message type is always the first token in the message string. Narrative
+   * messages are rare compared to route updates, which are recognized by their
+   * payload without looking at the string.
+   * 
+   * @param message
+   */
+  private static boolean isNarrative(Message message) {
+    if (message.getPayload() != null) {
+      return false;
+    }
+    String MsgStr = message.getMessage();
+    return MsgStr != null && MsgStr.startsWith("NARR|");
+  }
+
   /**
    * Receive Narrative Message.
    * 
@@ -544,9 +540,9 @@ public class Dsdv extends Node {
     String MsgText;
 
     /**
-     * Route Table Entry used to get the destination ID info in our Route Table.
+     * Slot of the destination ID info in our Route Table.
      */
-    RouteEntry DestEntry;
+    int DestSlot;
 
     /**
      * Array to hold Message Fields
@@ -556,7 +552,7 @@ public class Dsdv extends Node {
     /**
      * Split Message into fields based on '|' delimiters and store in MsgArray.
      */
-    MsgArray = message.message.split("\\|");
+    MsgArray = message.getMessage().split("\\|");
 
     /**
      * Store message fields into local variables. Yes this is not really needed
@@ -594,7 +590,7 @@ public class Dsdv extends Node {
       /**
        * Get the Route Entry.
        */
-      DestEntry = RouteTable.get(MsgDestID);
+      DestSlot = RouteTable.find(MsgDestID);
 
       /**
        * Create the message string that will be sent.
@@ -606,11 +602,10 @@ public class Dsdv extends Node {
        * The destination is in our RouteTable. Create the message to be sent.
        */
 
-      Msg = new Message(DestEntry.getNextHopIP(), this.att.id, MsgStr);
+      Msg = new Message(RouteTable.getNextHopIP(DestSlot), this.att.id, MsgStr);
       sendMessage(Msg);
 
-      OutputHandler.dispatch(DARSEvent.outDebug(this.att.id
-          + " Forwarded Narrative Message: " + MsgStr));
+      debug(this.att.id, " Forwarded Narrative Message: ", MsgStr);
     } else {
       /**
        * This node does not have a route to the desired destination and thus
@@ -629,8 +624,13 @@ public class Dsdv extends Node {
    * Process an update message and update the route table as needed.
    * 
    * @author kresss
+   * 
+   * @param message
+   *          The update message that was received.
+   * @param Update
+   *          The route update carried by the message.
    */
-  void receiveUpdates(Message message) {
+  void receiveUpdates(Message message, RouteUpdate Update) {
     /**
      * Updates Message format.
      * 
@@ -663,10 +663,6 @@ public class Dsdv extends Node {
     /**
      * Message Properties
      */
-    @SuppressWarnings("unused")
-    String MsgType;
-    @SuppressWarnings("unused")
-    String MsgFlags;
     int MsgDestCount;
 
     /**
@@ -678,56 +674,28 @@ public class Dsdv extends Node {
     int MsgDestEntryHopCount;
 
     /**
-     * RouteEntry for building new and update old route entries.
+     * Slot of the route entry being updated.
      */
-    RouteEntry TempRouteEntry;
+    int Slot;
 
-    /**
-     * Array to hold Message Fields
-     */
-    String MsgArray[];
-
-    /**
-     * Split Message into fields based on '|' delimiters and store in MsgArray.
-     */
-    MsgArray = message.message.split("\\|");
-
-    /**
-     * Store message fields into local variables. Yes this is not really needed
-     * but I (SAK) think it makes the code more readable.
-     */
-    MsgType = MsgArray[0];
-    MsgFlags = MsgArray[1];
-    MsgDestCount = Integer.parseInt(MsgArray[2]);
+    MsgDestCount = Update.size();
 
     for (int i = 0; i < MsgDestCount; i++) {
 
       /**
-       * MsgArray Index is calculated by the following formula.
-       * 
-       * i * n + b + j where
-       * 
-       * i = Index of the Destination in DestEntryList
-       * 
-       * n = Number of fields in a DestEntryList Entry(ID, Seq, HopCount)
-       * 
-       * b = Number of fields before the DestEntryList
-       * 
-       * j = Index of the desired field in the DestEntry(ID = 0, Seq = 1,
-       * HopCount = 2)
-       * 
+       * Take the i'th destination entry of the update. Add 1 to the hop count
+       * for the hop to this node.
        */
-      MsgDestEntryID = MsgArray[i * 3 + 3];
-      MsgDestEntrySeq = Integer.parseInt(MsgArray[i * 3 + 4]);
-      MsgDestEntryHopCount = Integer.parseInt(MsgArray[i * 3 + 5]) + 1;
+      MsgDestEntryID = Update.DestIDs[i];
+      MsgDestEntrySeq = Update.SeqNums[i];
+      MsgDestEntryHopCount = Update.HopCounts[i] + 1;
 
       /**
        * If the destination is not already in the route table, add it.
        */
       if (!this.RouteTable.containsKey(MsgDestEntryID)) {
-        TempRouteEntry = new RouteEntry(MsgDestEntryID, MsgDestEntrySeq,
+        this.RouteTable.put(MsgDestEntryID, MsgDestEntrySeq,
             MsgDestEntryHopCount, message.originId, this.CurrentTick);
-        this.RouteTable.put(MsgDestEntryID, TempRouteEntry);
 
         /**
          * Set the last update time to -1 to force an update message to be sent
@@ -738,12 +706,12 @@ public class Dsdv extends Node {
         /**
          * Update the existing route entry if it needs it.
          */
-        TempRouteEntry = this.RouteTable.get(MsgDestEntryID);
+        Slot = this.RouteTable.find(MsgDestEntryID);
 
         /**
          * If the update's sequence number is newer than update ours.
          */
-        if (TempRouteEntry.getSeqNum() < MsgDestEntrySeq) {
+        if (RouteTable.getSeqNum(Slot) < MsgDestEntrySeq) {
           /**
            * SAK - THIS IS A DEVIATION FROM WHAT IS WRITTEN IN THE DSDV
            * PAPERS!!!!!!
@@ -753,8 +721,8 @@ public class Dsdv extends Node {
            * network.
            * 
            */
-          if ((TempRouteEntry.getHopCount() < MsgDestEntryHopCount)
-              || (!TempRouteEntry.getNextHopIP().endsWith(message.originId))) {
+          if ((RouteTable.getHopCount(Slot) < MsgDestEntryHopCount)
+              || (!RouteTable.getNextHopIP(Slot).endsWith(message.originId))) {
             /**
              * Set the last update time to -1 to force an update message to be
              * sent out advertising our new information.
@@ -762,25 +730,22 @@ public class Dsdv extends Node {
             this.LastUpdate = -1;
           }
 
-          TempRouteEntry.setHopCount(MsgDestEntryHopCount);
-          TempRouteEntry.setNextHopIP(message.originId);
-          TempRouteEntry.setSeqNum(MsgDestEntrySeq);
-          TempRouteEntry.setInstTime(this.CurrentTick);
-
-          this.RouteTable.put(MsgDestEntryID, TempRouteEntry);
+          RouteTable.setHopCount(Slot, MsgDestEntryHopCount);
+          RouteTable.setNextHopIP(Slot, message.originId);
+          RouteTable.setSeqNum(Slot, MsgDestEntrySeq);
+          RouteTable.setInstTime(Slot, this.CurrentTick);
 
         } else {
           /**
            * If the sequence number in the update is the same as ours and the
            * hop count is less then update.
            */
-          if ((TempRouteEntry.getSeqNum() == MsgDestEntrySeq)
-              && (TempRouteEntry.getHopCount() > MsgDestEntryHopCount)) {
-            TempRouteEntry.setHopCount(MsgDestEntryHopCount);
-            TempRouteEntry.setNextHopIP(message.originId);
-            TempRouteEntry.setInstTime(this.CurrentTick);
+          if ((RouteTable.getSeqNum(Slot) == MsgDestEntrySeq)
+              && (RouteTable.getHopCount(Slot) > MsgDestEntryHopCount)) {
+            RouteTable.setHopCount(Slot, MsgDestEntryHopCount);
+            RouteTable.setNextHopIP(Slot, message.originId);
+            RouteTable.setInstTime(Slot, this.CurrentTick);
 
-            this.RouteTable.put(MsgDestEntryID, TempRouteEntry);
             /**
              * Set the last update time to -1 to force an update message to be
              * sent out advertising our new information.
@@ -815,24 +780,19 @@ public class Dsdv extends Node {
     int count = 0;
 
     /**
-     * Iterator and RouteEntry for going through the values in the RouteTable.
+     * Slot of the route in the RouteTable being looked at.
      */
-    Iterator<RouteEntry> RouteTableIter;
-    RouteEntry TempRouteEntry;
+    int Slot;
 
     /**
-     * Get Iterator for RouteTable and then traverse it looking for entries that
-     * are newer than tick.
+     * Traverse the RouteTable looking for entries that are newer than tick.
      */
-    RouteTableIter = RouteTable.values().iterator();
-
-    while (RouteTableIter.hasNext()) {
-      TempRouteEntry = RouteTableIter.next();
+    for (Slot = RouteTable.first(); Slot >= 0; Slot = RouteTable.next(Slot)) {
 
       /**
        * If this entry has been updated since tick then count it.
        */
-      if (TempRouteEntry.getInstTime() > tick) {
+      if (RouteTable.getInstTime(Slot) > tick) {
         count++;
       }
     }
@@ -862,8 +822,8 @@ public class Dsdv extends Node {
      * This kind of creates a functionality similar to AODV's Hello message as
      * the node sends out its first Update Message.
      */
-    this.RouteTable.put(this.att.id, new RouteEntry(this.att.id,
-        this.LastSeqNum, 0, this.att.id, this.CurrentTick));
+    this.RouteTable.put(this.att.id, this.LastSeqNum, 0, this.att.id,
+        this.CurrentTick);
 
   }
 
@@ -890,7 +850,6 @@ public class Dsdv extends Node {
   public Message messageToNetwork() {
 
     Message Msg;
-    String MsgType;
 
     try {
       Msg = txQueue.remove();
@@ -898,26 +857,13 @@ public class Dsdv extends Node {
       return (null);
     }
 
-    /**
-     * Get the message type.
-     * 
-     * Message type is always the first token in the message string. Split on
-     * the '|' and get the first item in the resultant Array of Strings.
-     */
-    MsgType = Msg.message.split("\\|")[0];
-
-    // TODO: Replace this terrible list of if statements with a switch
-    // statement once Java 7 is released. Java 7 supposedly has the ability
-    // to switch on strings.
-
     /**
      * Switch on the Message type to send the DARS in events.
      */
-    if (MsgType.equals("RTUP")) {
-      OutputHandler.dispatch(DARSEvent.outControlMsgTransmitted(this.att.id,
-          Msg));
-    } else if (MsgType.equals("NARR")) {
-      OutputHandler.dispatch(DARSEvent.outNarrMsgTransmitted(this.att.id, Msg));
+    if (RouteUpdate.of(Msg) != null) {
+      dispatchMessage(EventType.OUT_CONTROLMSG_TRANSMITTED, Msg);
+    } else if (isNarrative(Msg)) {
+      dispatchMessage(EventType.OUT_NARRMSG_TRANSMITTED, Msg);
     }
 
     return (Msg);
@@ -940,8 +886,6 @@ public class Dsdv extends Node {
   @Override
   public void messageToNode(Message message) {
 
-    String MsgType;
-
     try {
       rxQueue.add(message);
     } catch (IllegalStateException exception) {
@@ -952,24 +896,10 @@ public class Dsdv extends Node {
       return;
     }
 
-    /**
-     * Get the message type.
-     * 
-     * Message type is always the first token in the message string. Split on
-     * the '|' and get the first item in the resultant Array of Strings.
-     */
-    MsgType = message.message.split("\\|")[0];
-
-    // TODO: Replace this terrible list of if statements with a switch statement
-    // once Java 7 is released. Java 7 supposedly has the ability to switch on
-    // strings.
-
-    if (MsgType.equals("RTUP")) {
-      OutputHandler.dispatch(DARSEvent.outControlMsgReceived(this.att.id,
-          message));
-    } else if (MsgType.equals("NARR")) {
-      OutputHandler
-          .dispatch(DARSEvent.outNarrMsgReceived(this.att.id, message));
+    if (RouteUpdate.of(message) != null) {
+      dispatchMessage(EventType.OUT_CONTROLMSG_RECEIVED, message);
+    } else if (isNarrative(message)) {
+      dispatchMessage(EventType.OUT_NARRMSG_RECEIVED, message);
     }
 
   }
@@ -1015,9 +945,9 @@ public class Dsdv extends Node {
     String MsgDestID = destinationID;
 
     /**
-     * Route Table Entry used to get the destination ID info in our Route Table.
+     * Slot of the destination ID info in our Route Table.
      */
-    RouteEntry DestEntry;
+    int DestSlot;
 
     /**
      * Check to make sure that the sourceID is this node.
@@ -1043,14 +973,14 @@ public class Dsdv extends Node {
       /**
        * Get the Route Entry.
        */
-      DestEntry = RouteTable.get(destinationID);
+      DestSlot = RouteTable.find(destinationID);
       /**
        * The destination is in our RouteTable.
        */
-      Msg = new Message(DestEntry.getNextHopIP(), this.att.id, MsgStr);
+      Msg = new Message(RouteTable.getNextHopIP(DestSlot), this.att.id, MsgStr);
       sendMessage(Msg);
 
-      OutputHandler.dispatch(DARSEvent.outDebug(MsgStr));
+      debug(MsgStr);
       /**
        * Done processing this request.
        */
@@ -1091,6 +1021,50 @@ public class Dsdv extends Node {
 
   }
 
+  /**
+   * Count the ticks until the next update is due. A tick with received
+   * messages is never idle.
+   */
+  @Override
+  public int getIdleTicks() {
+    if (!this.rxQueue.isEmpty() || !this.txQueue.isEmpty()) {
+      return 0;
+    }
+    return Math.max(this.LastUpdate + UPDATE_INTERVAL - this.CurrentTick - 1,
+        0);
+  }
+
+  /**
+   * Nothing happens in an idle tick but the count going up.
+   */
+  @Override
+  public void skipTicks(int ticks) {
+    this.CurrentTick += ticks;
+  }
+
+  /**
+   * DSDV keeps no wait queue; it always has a route.
+   */
+  @Override
+  public int getQueueLength(QueueType type) {
+    switch (type) {
+    case TRANSMIT:
+      return this.txQueue.size();
+    case RECEIVE:
+      return this.rxQueue.size();
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the number of entries in the route table, whether or not the
+   * routes are valid.
+   */
+  @Override
+  public int getRouteCount() {
+    return this.RouteTable.size();
+  }
+
   /**
    * getNodeDialog
    * 
@@ -1123,6 +1097,52 @@ public class Dsdv extends Node {
     dsdvDlg.updateInformation(this.CurrentTick, this.RouteTable);
   }
 
+  /**
+   * writeState
+   * 
+   * Write the DSDV state of this node for a snapshot of the simulation.
+   * 
+   * @param out
+   */
+  @Override
+  public void writeState(DataOutput out) throws IOException {
+    out.writeInt(this.CurrentTick);
+    out.writeInt(this.LastSeqNum);
+    out.writeInt(this.LastUpdate);
+    out.writeInt(this.LastFullUpdate);
+
+    /**
+     * Updates are built by walking the Route Table, so it is written in that
+     * order.
+     */
+    this.RouteTable.writeTo(out);
+
+    Snapshot.writeMessages(out, this.txQueue);
+    Snapshot.writeMessages(out, this.rxQueue);
+  }
+
+  /**
+   * readState
+   * 
+   * Read the state written by writeState().
+   * 
+   * @param in
+   */
+  @Override
+  public void readState(DataInput in) throws IOException {
+    this.CurrentTick = in.readInt();
+    this.LastSeqNum = in.readInt();
+    this.LastUpdate = in.readInt();
+    this.LastFullUpdate = in.readInt();
+
+    this.RouteTable.readFrom(in);
+
+    this.txQueue.clear();
+    Snapshot.readMessages(in, this.txQueue);
+    this.rxQueue.clear();
+    Snapshot.readMessages(in, this.rxQueue);
+  }
+
   /**
    * **************************************************************************
    * *** Public Member Functions - Implement Node Interface
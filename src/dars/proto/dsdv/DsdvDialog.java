@@ -3,8 +3,6 @@ package dars.proto.dsdv;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.GridLayout;
-import java.util.HashMap;
-import java.util.Iterator;
 
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -14,8 +12,6 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
 
-import dars.proto.dsdv.RouteEntry;
-
 public class DsdvDialog extends JDialog {
 
   /**
@@ -56,7 +52,7 @@ public class DsdvDialog extends JDialog {
                                                  };
 
   public DsdvDialog(JFrame frame, String SourceId, int timeTick,
-      HashMap<String, RouteEntry> routeTable) {
+      RouteTable routeTable) {
     super(frame, "Node Attributes: " + SourceId);
 
     // Set the default dimension of the node attributes window
@@ -110,16 +106,13 @@ public class DsdvDialog extends JDialog {
     this.setLocationRelativeTo(frame);
   }
 
-  void updateInformation(int currentTick, HashMap<String, RouteEntry> routeTable) {
+  void updateInformation(int currentTick, RouteTable routeTable) {
     formatRouteTable(routeTable, currentTick);
     String timeTick = "" + currentTick;
     TimeLabel.setText(timeTick);
   }
 
-  private void formatRouteTable(HashMap<String, RouteEntry> routeTable,
-      int currentTick) {
-    Iterator<RouteEntry> iter = routeTable.values().iterator();
-    RouteEntry entry;
+  private void formatRouteTable(RouteTable routeTable, int currentTick) {
     String destinationIP, hopCount, nextHop, sequenceNum, insttime;
 
     // Clean the table out to refresh the table
@@ -128,14 +121,12 @@ public class DsdvDialog extends JDialog {
     }
 
     // Add all the rows back in
-    while (iter.hasNext()) {
-      entry = iter.next();
-
-      destinationIP = entry.getDestIP();
-      hopCount = "" + entry.getHopCount();
-      nextHop = entry.getNextHopIP();
-      sequenceNum = "" + entry.getSeqNum();
-      insttime = "" + entry.getInstTime();
+    for (int slot = routeTable.first(); slot >= 0; slot = routeTable.next(slot)) {
+      destinationIP = routeTable.getDestIP(slot);
+      hopCount = "" + routeTable.getHopCount(slot);
+      nextHop = routeTable.getNextHopIP(slot);
+      sequenceNum = "" + routeTable.getSeqNum(slot);
+      insttime = "" + routeTable.getInstTime(slot);
 
       model.addRow(new String[] { destinationIP, hopCount, nextHop,
           sequenceNum, insttime });
@@ -0,0 +1,205 @@
+package dars.proto.dsdv;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import dars.NodeId;
+import dars.Snapshot;
+import dars.proto.RouteIndex;
+
+/**
+ * DSDV Node Routing Table
+ *
+ * Every DSDV node ends up with a route to every other node, so the routes are
+ * not kept as objects: each field of a route is an int column indexed by the
+ * slot of its destination, see RouteIndex. A route is read and changed
+ * through its slot, which find() returns.
+ *
+ * Routes are walked in slot order:
+ *
+ * for (int slot = table.first(); slot >= 0; slot = table.next(slot))
+ *
+ * While walking, routes may be changed, removed and moved to the end, but
+ * putting a new destination may move the slots.
+ */
+public class RouteTable extends RouteIndex {
+
+  /**
+   * Destination Sequence Numbers
+   */
+  private int[] seqNums   = new int[MIN_CAPACITY];
+  /**
+   * Hop Counts to the Destination Nodes
+   */
+  private int[] hopCounts = new int[MIN_CAPACITY];
+  /**
+   * Handles of the Next Hop Nodes on the paths to the Destination Nodes, see
+   * NodeId.
+   */
+  private int[] nextHops  = new int[MIN_CAPACITY];
+  /**
+   * Times that the routes were installed into the table.
+   */
+  private int[] instTimes = new int[MIN_CAPACITY];
+
+  /**
+   * Returns the slot of the route to the destination, or -1 if there is none.
+   */
+  public int find(String destinationId) {
+    return slotOf(NodeId.parse(destinationId));
+  }
+
+  /**
+   * Returns the slot of the first route, or -1 if the table is empty.
+   */
+  public int first() {
+    return nextSlot(0);
+  }
+
+  /**
+   * Returns the slot of the route after the one in the given slot, or -1 if
+   * it is the last.
+   */
+  public int next(int slot) {
+    return nextSlot(slot + 1);
+  }
+
+  /**
+   * Set the route to the destination, adding it if there is none.
+   *
+   * @return the slot of the route.
+   */
+  int put(String destinationId, int seqNum, int hopCount, String nextHopId,
+      int instTime) {
+    int destination = NodeId.parse(destinationId);
+    if (destination == NodeId.NONE) {
+      throw new IllegalArgumentException("Not a node id: " + destinationId);
+    }
+    int slot = slotOf(destination);
+    if (slot < 0) {
+      slot = addSlot(destination);
+    }
+    seqNums[slot] = seqNum;
+    hopCounts[slot] = hopCount;
+    nextHops[slot] = NodeId.parse(nextHopId);
+    instTimes[slot] = instTime;
+    return slot;
+  }
+
+  /**
+   * Remove the route in the slot and put it back, so it is walked last. The
+   * other routes stay in their slots.
+   *
+   * @return the new slot of the route.
+   */
+  int moveToEnd(int slot) {
+    return moveSlotToEnd(slot);
+  }
+
+  /**
+   * @return the handle of the destination, see NodeId.
+   */
+  public int getDest(int slot) {
+    return keyAt(slot);
+  }
+
+  public String getDestIP(int slot) {
+    return toId(keyAt(slot));
+  }
+
+  public int getSeqNum(int slot) {
+    return seqNums[slot];
+  }
+
+  void setSeqNum(int slot, int seqNum) {
+    seqNums[slot] = seqNum;
+  }
+
+  public int getHopCount(int slot) {
+    return hopCounts[slot];
+  }
+
+  void setHopCount(int slot, int hopCount) {
+    hopCounts[slot] = hopCount;
+  }
+
+  /**
+   * @return the handle of the next hop, or NodeId.NONE if it is not known.
+   */
+  public int getNextHop(int slot) {
+    return nextHops[slot];
+  }
+
+  public String getNextHopIP(int slot) {
+    return toId(nextHops[slot]);
+  }
+
+  void setNextHopIP(int slot, String nextHopIP) {
+    nextHops[slot] = NodeId.parse(nextHopIP);
+  }
+
+  public int getInstTime(int slot) {
+    return instTimes[slot];
+  }
+
+  void setInstTime(int slot, int instTime) {
+    instTimes[slot] = instTime;
+  }
+
+  /**
+   * Write the routes for a snapshot of the simulation, in walk order.
+   *
+   * @param out
+   */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(size());
+    for (int slot = first(); slot >= 0; slot = next(slot)) {
+      Snapshot.writeString(out, getDestIP(slot));
+      out.writeInt(seqNums[slot]);
+      out.writeInt(hopCounts[slot]);
+      Snapshot.writeString(out, getNextHopIP(slot));
+      out.writeInt(instTimes[slot]);
+    }
+  }
+
+  /**
+   * Replace the routes with the ones written by writeTo().
+   *
+   * @param in
+   */
+  void readFrom(DataInput in) throws IOException {
+    clear();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      put(Snapshot.readString(in), in.readInt(), in.readInt(),
+          Snapshot.readString(in), in.readInt());
+    }
+  }
+
+  @Override
+  protected void resizeSlots(int capacity) {
+    seqNums = Arrays.copyOf(seqNums, capacity);
+    hopCounts = Arrays.copyOf(hopCounts, capacity);
+    nextHops = Arrays.copyOf(nextHops, capacity);
+    instTimes = Arrays.copyOf(instTimes, capacity);
+  }
+
+  @Override
+  protected void moveSlot(int from, int to) {
+    seqNums[to] = seqNums[from];
+    hopCounts[to] = hopCounts[from];
+    nextHops[to] = nextHops[from];
+    instTimes[to] = instTimes[from];
+  }
+
+  @Override
+  protected void clearSlot(int slot) {
+    // Nothing refers to other objects.
+  }
+
+  private static String toId(int handle) {
+    return handle == NodeId.NONE ? "" : NodeId.toString(handle);
+  }
+}
@@ -0,0 +1,122 @@
+package dars.proto.dsdv;
+
+import dars.Message;
+import dars.MessagePayload;
+
+/**
+ * DSDV Route Update
+ *
+ * Structured form of a RTUP message. The destination entries are kept as
+ * parallel arrays of destination ID, sequence number and hop count. One update
+ * is broadcast to every neighbor of the sender and is shared by all of them,
+ * so it is never modified once it has been sent.
+ *
+ * The string form is only rendered when the log or the GUI needs it and is the
+ * same as the wire format the protocol has always used.
+ *
+ * TYPE|FLAGS|DESTCOUNT|DESTID1|SEQ1|HOPCOUNT1|...|DESTIDX|SEQX|HOPCOUNTX
+ */
+final class RouteUpdate implements MessagePayload {
+
+  final String   Flags;
+  final String[] DestIDs;
+  final int[]    SeqNums;
+  /**
+   * Hop count from the destination to the sender of the update. The receiver
+   * adds 1.
+   */
+  final int[]    HopCounts;
+
+  RouteUpdate(String flags, String[] destIDs, int[] seqNums, int[] hopCounts) {
+    Flags = flags;
+    DestIDs = destIDs;
+    SeqNums = seqNums;
+    HopCounts = hopCounts;
+  }
+
+  /**
+   * Returns the number of destination entries in the update.
+   */
+  int size() {
+    return DestIDs.length;
+  }
+
+  /**
+   * Returns the route update carried by a message.
+   *
+   * Updates sent by DSDV nodes always carry their payload. A message that only
+   * has a message string is parsed once and the update is attached to it for
+   * the other nodes that receive it.
+   *
+   * @param message
+   *
+   * @return the update, or null if the message is not a RTUP message.
+   */
+  static RouteUpdate of(Message message) {
+    if (message.getPayload() instanceof RouteUpdate) {
+      return (RouteUpdate) message.getPayload();
+    }
+    if (message.getPayload() != null) {
+      return null;
+    }
+    String msg = message.getMessage();
+    if (msg == null || !msg.startsWith("RTUP|")) {
+      return null;
+    }
+    RouteUpdate update = parse(msg);
+    if (update != null) {
+      message.setPayload(update);
+    }
+    return update;
+  }
+
+  /**
+   * Parse a RTUP message string.
+   *
+   * @param msg
+   *
+   * @return the update, or null if the string is malformed.
+   */
+  static RouteUpdate parse(String msg) {
+    String MsgArray[] = msg.split("\\|");
+    try {
+      int count = Integer.parseInt(MsgArray[2]);
+      // Every destination takes three fields. The count is checked before it
+      // sizes the arrays, in a long so that a huge count can not wrap around.
+      if (count < 0 || (long) count * 3 + 3 != MsgArray.length) {
+        return null;
+      }
+      String[] ids = new String[count];
+      int[] seqNums = new int[count];
+      int[] hopCounts = new int[count];
+      for (int i = 0; i < count; i++) {
+        ids[i] = MsgArray[i * 3 + 3];
+        seqNums[i] = Integer.parseInt(MsgArray[i * 3 + 4]);
+        hopCounts[i] = Integer.parseInt(MsgArray[i * 3 + 5]);
+      }
+      return new RouteUpdate(MsgArray[1], ids, seqNums, hopCounts);
+    } catch (NumberFormatException e) {
+      return null;
+    } catch (ArrayIndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Render the update in the RTUP message format.
+   */
+  public String render() {
+    StringBuilder sb = new StringBuilder(16 + DestIDs.length * 12);
+    sb.append("RTUP|").append(Flags).append('|').append(DestIDs.length);
+    for (int i = 0; i < DestIDs.length; i++) {
+      sb.append('|').append(DestIDs[i]).append('|').append(SeqNums[i])
+          .append('|').append(HopCounts[i]);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return render();
+  }
+}
@@ -1,32 +1,73 @@
 package dars.replayer;
-import java.util.Iterator;
-import java.util.Queue;
+
+import java.io.IOException;
 
 import javax.swing.JOptionPane;
 
 import dars.InputHandler;
 import dars.OutputConsumer;
 import dars.OutputHandler;
+import dars.SimEngine;
+import dars.SimEngine.RunMode;
 import dars.Utilities;
 import dars.event.DARSEvent;
 import dars.event.DARSEvent.EventType;
+import dars.logger.EventStream;
 
 public class Replayer implements OutputConsumer {
 
   public interface ReplayerListener {
-    void replayerStarted(Queue<DARSEvent> Q, Replayer instance);
+    /**
+     * @param lastQuantum
+     *          the quantum of the last event of the replay, or -1 if the
+     *          replay has no events.
+     */
+    void replayerStarted(long lastQuantum, Replayer instance);
     void replayerFinished(boolean aborted);
+    /**
+     * Called before the replay starts running ahead to the given quantum,
+     * see fastForwardTo(). Output that only shows what is going on, such as
+     * animations, can be skipped until replayerFastForwardFinished().
+     * 
+     * Both calls are made with the replayer locked, possibly on the
+     * simulation thread, so they must not wait on other threads.
+     */
+    void replayerFastForwardStarted(long targetQuantum);
+    /**
+     * @param quantum
+     *          the quantum the simulation is at now.
+     */
+    void replayerFastForwardFinished(long quantum);
   }
-  private Queue<DARSEvent> replayEvents;
+  private EventStream replayEvents;
   private ReplayerListener replayerListener;
   private final ReplayMode mode;
+  private final SimEngine engine;
+  private final long lastQuantum;
+  
+  //The quantum being fast forwarded to, or -1 when not fast forwarding.
+  private volatile long fastForwardTarget = -1;
+  private RunMode runModeBeforeFastForward;
 
   public ReplayMode getMode() {
     return mode;
   }
   
-  public Replayer(Queue<DARSEvent> replayEvents, ReplayerListener rl, ReplayMode mode) {
+  /**
+   * @param replayEvents
+   *          the replay events, see Parser.openReplay(). They are read as the
+   *          replay goes and the stream is closed when it ends.
+   * @param lastQuantum
+   *          the quantum of the last event, see
+   *          Parser.findLastReplayQuantum().
+   * @param engine
+   *          the engine the replay runs in, which is run unthrottled while
+   *          fast forwarding.
+   */
+  public Replayer(EventStream replayEvents, long lastQuantum, SimEngine engine, ReplayerListener rl, ReplayMode mode) {
     this.mode = mode;
+    this.engine = engine;
+    this.lastQuantum = lastQuantum;
     
     //Add this as an output consumer
     OutputHandler.addOutputConsumer(this);
@@ -34,32 +75,32 @@ public class Replayer implements OutputConsumer {
     this.replayerListener = rl;
     
     //Fire off events at the zero quantum.
-    dispatchEventsAtQuantum(replayEvents, 0);
-    rl.replayerStarted(replayEvents,this);
+    dispatchEventsAtQuantum(0);
+    rl.replayerStarted(lastQuantum,this);
+    abortOnReadError();
     
   }
   
-  private void dispatchEventsAtQuantum(Queue<DARSEvent> Q, long quantum) {
-     Iterator<DARSEvent> iter = Q.iterator();
-     while(iter.hasNext()) {
-       DARSEvent d = iter.next();
+  private void dispatchEventsAtQuantum(long quantum) {
+     DARSEvent d;
+     while(isRunning && (d = replayEvents.peek()) != null) {
        
        //If this quantum is greater than specified quantum, break out
-       //This assumes the list is ordered. If it isn't, change this routine!
+       //This assumes the log is ordered. If it isn't, change this routine!
        if(d.currentQuantum > quantum) {
          return;
        }
 
-       //If this quantum is = to the specified quantum, pull it off the Q and dispatch it
+       //If this quantum is = to the specified quantum, pull it off the stream and dispatch it
        if(d.currentQuantum == quantum) {
+         replayEvents.next();
+         
          //If this is the STOP SIM event, finish and break out
          if(d.eventType == EventType.IN_STOP_SIM) {
-           iter.remove();
            finish();
            break;
          }
          
-         iter.remove();
          InputHandler.dispatch(d);
          continue;
        }
@@ -70,11 +111,67 @@ public class Replayer implements OutputConsumer {
      }
   }
   
+  //Abort the replay if the log could not be read to the end.
+  private void abortOnReadError() {
+    IOException error = replayEvents.getError();
+    if(!isRunning || error == null) {
+      return;
+    }
+    Utilities.showError("The replay stopped at quantum " + engine.getTime()
+        + ", the log could not be read: " + error.getMessage());
+    abort();
+  }
+  
+  public long getLastQuantum() {
+    return lastQuantum;
+  }
+  
+  /**
+   * Run the replay ahead to the given quantum as fast as the engine can go.
+   * 
+   * The engine runs unthrottled and the listener is told so it can stop
+   * rendering. Once the simulation reaches the quantum, or the replay runs
+   * out of events, the engine goes back to the run mode it had and the
+   * listener is told to render again. The simulation itself runs exactly as
+   * it would have at the normal pace.
+   * 
+   * @return false if the replay is not running or is already past the
+   *         quantum.
+   */
+  public synchronized boolean fastForwardTo(long quantum) {
+    if(!isRunning || quantum <= engine.getTime()) {
+      return false;
+    }
+    if(fastForwardTarget < 0) {
+      //Let the listener stop rendering before the quanta speed up.
+      replayerListener.replayerFastForwardStarted(quantum);
+      runModeBeforeFastForward = engine.getRunMode();
+      engine.setRunMode(RunMode.UNTHROTTLED);
+    }
+    fastForwardTarget = quantum;
+    return true;
+  }
+  
+  public boolean isFastForwarding() {
+    return fastForwardTarget >= 0;
+  }
+  
+  private synchronized void endFastForward() {
+    if(fastForwardTarget < 0) {
+      return;
+    }
+    fastForwardTarget = -1;
+    engine.setRunMode(runModeBeforeFastForward);
+    replayerListener.replayerFastForwardFinished(engine.getTime());
+  }
+  
   private void finish() {
     if(!isRunning) {
       return;
     }
+    endFastForward();
     isRunning = false;
+    replayEvents.close();
     //Signal that the replayer is finished.
     replayerListener.replayerFinished(false);
     OutputHandler.removeOutputConsumer(this);
@@ -84,7 +181,9 @@ public class Replayer implements OutputConsumer {
     if(!isRunning) {
       return;
     }
+    endFastForward();
     isRunning = false;
+    replayEvents.close();
     //Signal that the replayer is finished with aborted flag.
     replayerListener.replayerFinished(true);
     OutputHandler.removeOutputConsumer(this);
@@ -100,7 +199,18 @@ public class Replayer implements OutputConsumer {
   public void consumeOutput(DARSEvent e) {
     switch(e.eventType) {
     case OUT_QUANTUM_ELAPSED:
-      dispatchEventsAtQuantum(this.replayEvents, e.currentQuantum-1);
+      dispatchEventsAtQuantum(e.currentQuantum-1);
+      abortOnReadError();
+      if(!isRunning) {
+        break;
+      }
+      
+      //Stop fast forwarding at the target, or when there is nothing left to
+      //replay.
+      long target = fastForwardTarget;
+      if(target >= 0 && (e.currentQuantum >= target || !replayEvents.hasNext())) {
+        endFastForward();
+      }
       break;
     }
   }